@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.inject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+
+import junit.framework.TestCase;
+
+public class MildConcurrentKeysTest
+    extends TestCase
+{
+    public void testSoftKeys()
+    {
+        testKeys( Soft.<String, String> concurrentKeys() );
+    }
+
+    public void testWeakKeys()
+    {
+        testKeys( Weak.<String, String> concurrentKeys() );
+    }
+
+    public void testIdentityKeys()
+    {
+        final ConcurrentMap<String, String> names = Weak.concurrentKeys();
+
+        final String a1 = new String( "A" ), a2 = new String( "A" );
+
+        assertNull( names.putIfAbsent( a1, "1" ) );
+        assertNull( names.putIfAbsent( a2, "2" ) );
+
+        assertEquals( 2, names.size() );
+        assertEquals( "1", names.get( a1 ) );
+        assertEquals( "2", names.get( a2 ) );
+        assertNull( names.get( "A" ) );
+
+        assertFalse( names.replace( a1, "2", "3" ) );
+        assertTrue( names.replace( a1, "1", "3" ) );
+        assertEquals( "3", names.replace( a1, "1" ) );
+        assertEquals( "1", names.putIfAbsent( a1, "4" ) );
+
+        assertFalse( names.remove( a2, "1" ) );
+        assertTrue( names.remove( a2, "2" ) );
+        assertFalse( names.containsKey( a2 ) );
+        assertTrue( names.containsValue( "1" ) );
+        assertFalse( names.containsValue( "2" ) );
+    }
+
+    public void testResize()
+    {
+        final ConcurrentMap<String, Integer> names = Weak.concurrentKeys( 4, 1 );
+        final List<String> strongRefs = new ArrayList<String>();
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            final String name = "Name" + i;
+            strongRefs.add( name );
+            assertNull( names.put( name, Integer.valueOf( i ) ) );
+        }
+
+        assertEquals( 1000, names.size() );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertEquals( Integer.valueOf( i ), names.get( strongRefs.get( i ) ) );
+        }
+
+        for ( final Iterator<Entry<String, Integer>> itr = names.entrySet().iterator(); itr.hasNext(); )
+        {
+            final Entry<String, Integer> e = itr.next();
+            if ( e.getValue().intValue() % 2 == 0 )
+            {
+                itr.remove();
+            }
+            else
+            {
+                e.setValue( Integer.valueOf( -e.getValue().intValue() ) );
+            }
+        }
+
+        assertEquals( 500, names.size() );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertEquals( i % 2 == 0 ? null : Integer.valueOf( -i ), names.get( strongRefs.get( i ) ) );
+        }
+
+        names.clear();
+
+        assertTrue( names.isEmpty() );
+    }
+
+    public void testReap()
+    {
+        final ConcurrentMap<String, String> names = Weak.concurrentKeys();
+        ( (MildReaper.Reapable) names ).useReaper();
+
+        String a = new String( "A" );
+        final String b = new String( "B" );
+
+        names.put( a, "1" );
+        names.put( b, "2" );
+
+        assertEquals( 0, ( (MildReaper.Reapable) names ).reap( 16 ) );
+
+        a = null; // clear so element can be evicted
+        int reclaimed = 0;
+        for ( int i = 0; i < 1024 && 0 == reclaimed; i++ )
+        {
+            System.gc();
+            reclaimed = ( (MildReaper.Reapable) names ).reap( 16 );
+        }
+
+        assertEquals( 1, reclaimed );
+        assertEquals( 1, names.size() );
+        assertEquals( "2", names.get( b ) );
+    }
+
+    private static void testKeys( final Map<String, String> names )
+    {
+        String a = new String( "A" ), b = new String( "B" ), c = new String( "C" );
+
+        assertTrue( names.isEmpty() );
+        assertEquals( 0, names.size() );
+
+        names.put( a, "1" );
+
+        assertFalse( names.isEmpty() );
+        assertEquals( 1, names.size() );
+
+        names.put( b, "2" );
+
+        assertFalse( names.isEmpty() );
+        assertEquals( 2, names.size() );
+
+        names.put( c, "3" );
+
+        assertFalse( names.isEmpty() );
+        assertEquals( 3, names.size() );
+
+        assertEquals( "2", names.remove( b ) );
+        assertEquals( 2, names.size() );
+
+        names.put( b = new String( "b2b" ), "4" );
+
+        int count = 0;
+        for ( final String key : names.keySet() )
+        {
+            assertTrue( a == key || b == key || c == key );
+            count++;
+        }
+
+        assertEquals( 3, count );
+
+        int size;
+
+        size = names.size();
+        c = null; // clear so element can be evicted
+        gc( names, size );
+
+        assertEquals( 2, names.size() );
+        assertEquals( "1", names.get( a ) );
+        assertEquals( "4", names.get( b ) );
+
+        size = names.size();
+        a = null; // clear so element can be evicted
+        gc( names, size );
+
+        assertEquals( 1, names.size() );
+        assertEquals( "4", names.values().iterator().next() );
+
+        size = names.size();
+        b = null; // clear so element can be evicted
+        gc( names, size );
+
+        assertFalse( names.keySet().iterator().hasNext() );
+    }
+
+    private static int gc( final Map<?, ?> map, final int size )
+    {
+        /*
+         * Keep forcing GC until the collection compacts itself
+         */
+        int gcCount = 0, hash = 0;
+        do
+        {
+            try
+            {
+                final List<byte[]> buf = new LinkedList<byte[]>();
+                for ( int i = 0; i < 1024 * 1024; i++ )
+                {
+                    // try to trigger aggressive GC
+                    buf.add( new byte[1024 * 1024] );
+                }
+                hash += buf.hashCode(); // so JIT doesn't optimize this away
+            }
+            catch ( final OutOfMemoryError e )
+            {
+                // ignore...
+            }
+
+            System.gc();
+            gcCount++;
+        }
+        while ( map.size() == size && gcCount < 1024 );
+
+        return hash;
+    }
+}
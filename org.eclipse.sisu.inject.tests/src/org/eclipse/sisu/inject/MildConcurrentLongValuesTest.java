@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.inject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+public class MildConcurrentLongValuesTest
+    extends TestCase
+{
+    public void testSoftValues()
+    {
+        testValues( Soft.<String> concurrentLongValues() );
+    }
+
+    public void testWeakValues()
+    {
+        testValues( Weak.<String> concurrentLongValues() );
+    }
+
+    public void testResize()
+    {
+        final MildConcurrentLongValues<String> names = Weak.concurrentLongValues( 4 );
+        final List<String> strongRefs = new ArrayList<String>();
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            final String name = "Name" + i;
+            strongRefs.add( name );
+            assertNull( names.putIfAbsent( (long) i << 32 | i, name ) );
+        }
+
+        assertEquals( 1000, names.size() );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertSame( strongRefs.get( i ), names.get( (long) i << 32 | i ) );
+            assertSame( strongRefs.get( i ), names.putIfAbsent( (long) i << 32 | i, "other" ) );
+        }
+
+        for ( int i = 0; i < 1000; i += 2 )
+        {
+            assertSame( strongRefs.get( i ), names.remove( (long) i << 32 | i ) );
+        }
+
+        assertEquals( 500, names.size() );
+
+        int count = 0;
+        for ( final String name : names.values() )
+        {
+            assertTrue( strongRefs.indexOf( name ) % 2 == 1 );
+            count++;
+        }
+
+        assertEquals( 500, count );
+
+        names.clear();
+
+        assertTrue( names.isEmpty() );
+        assertNull( names.get( 1L << 32 | 1 ) );
+    }
+
+    public void testReap()
+    {
+        final MildConcurrentLongValues<String> names = Weak.concurrentLongValues();
+        names.useReaper();
+
+        String a = new String( "A" );
+        final String b = new String( "B" );
+
+        names.put( 1, a );
+        names.put( 2, b );
+
+        assertEquals( 0, names.reap( 16 ) );
+
+        a = null; // clear so element can be evicted
+        int reclaimed = 0;
+        for ( int i = 0; i < 1024 && 0 == reclaimed; i++ )
+        {
+            System.gc();
+            reclaimed = names.reap( 16 );
+        }
+
+        assertEquals( 1, reclaimed );
+        assertEquals( 1, names.size() );
+        assertNull( names.get( 1 ) );
+        assertSame( b, names.get( 2 ) );
+    }
+
+    private static void testValues( final MildConcurrentLongValues<String> names )
+    {
+        String a = new String( "A" ), b = new String( "B" ), c = new String( "C" );
+
+        assertTrue( names.isEmpty() );
+        assertEquals( 0, names.size() );
+
+        names.put( 1, a );
+
+        assertFalse( names.isEmpty() );
+        assertEquals( 1, names.size() );
+
+        names.put( 2, b );
+
+        assertFalse( names.isEmpty() );
+        assertEquals( 2, names.size() );
+
+        names.put( 3, c );
+
+        assertFalse( names.isEmpty() );
+        assertEquals( 3, names.size() );
+
+        assertTrue( names.containsKey( 2 ) );
+        assertFalse( names.containsKey( 4 ) );
+
+        assertSame( b, names.get( 2 ) );
+        assertSame( b, names.remove( 2 ) );
+        assertNull( names.get( 2 ) );
+        assertNull( names.remove( 2 ) );
+
+        assertNull( names.put( 2, b = new String( "b2b" ) ) );
+        assertSame( b, names.putIfAbsent( 2, "X" ) );
+
+        Iterator<String> itr = names.values().iterator();
+
+        int count = 0;
+        while ( itr.hasNext() )
+        {
+            assertTrue( "A|C|b2b".contains( itr.next() ) );
+            count++;
+        }
+
+        assertEquals( 3, count );
+
+        try
+        {
+            itr.next();
+            fail( "Expected NoSuchElementException" );
+        }
+        catch ( final NoSuchElementException e )
+        {
+        }
+
+        itr = null;
+        int size;
+
+        size = names.size();
+        c = null; // clear so element can be evicted
+        gc( names, size );
+
+        assertSame( a, names.get( 1 ) );
+        assertSame( b, names.get( 2 ) );
+        assertNull( names.get( 3 ) );
+
+        size = names.size();
+        a = null; // clear so element can be evicted
+        gc( names, size );
+
+        assertNull( names.get( 1 ) );
+        assertSame( b, names.get( 2 ) );
+
+        size = names.size();
+        b = null; // clear so element can be evicted
+        gc( names, size );
+
+        assertFalse( names.values().iterator().hasNext() );
+    }
+
+    private static int gc( final MildConcurrentLongValues<?> map, final int size )
+    {
+        /*
+         * Keep forcing GC until the collection compacts itself
+         */
+        int gcCount = 0, hash = 0;
+        do
+        {
+            try
+            {
+                final List<byte[]> buf = new LinkedList<byte[]>();
+                for ( int i = 0; i < 1024 * 1024; i++ )
+                {
+                    // try to trigger aggressive GC
+                    buf.add( new byte[1024 * 1024] );
+                }
+                hash += buf.hashCode(); // so JIT doesn't optimize this away
+            }
+            catch ( final OutOfMemoryError e )
+            {
+                // ignore...
+            }
+
+            System.gc();
+            gcCount++;
+        }
+        while ( map.size() == size && gcCount < 1024 );
+
+        return hash;
+    }
+}
@@ -0,0 +1,431 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.launch;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.sisu.inject.BindingPublisher;
+import org.eclipse.sisu.inject.DefaultBeanLocator;
+import org.eclipse.sisu.inject.MutableBeanLocator;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+
+import junit.framework.TestCase;
+
+public class SisuTrackerTest
+    extends TestCase
+{
+    static final List<Long> published = Collections.synchronizedList( new ArrayList<Long>() );
+
+    static final List<Long> unpublished = Collections.synchronizedList( new ArrayList<Long>() );
+
+    static final AtomicInteger preparing = new AtomicInteger();
+
+    static final AtomicInteger maxPreparing = new AtomicInteger();
+
+    static final AtomicInteger prepared = new AtomicInteger();
+
+    static volatile boolean calledUnderLock;
+
+    static volatile CountDownLatch blocker;
+
+    private TestTracker tracker;
+
+    @Override
+    protected void setUp()
+    {
+        published.clear();
+        unpublished.clear();
+        preparing.set( 0 );
+        maxPreparing.set( 0 );
+        prepared.set( 0 );
+        calledUnderLock = false;
+        blocker = new CountDownLatch( 0 );
+
+        final MutableBeanLocator locator = proxy( MutableBeanLocator.class, new FakeLocator() );
+        tracker = new TestTracker( proxy( BundleContext.class, new FakeContext() ), locator );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        tracker.close();
+    }
+
+    public void testParallelPreparation()
+        throws Exception
+    {
+        // later bundles take less time to prepare, but must still be published in bundle id order
+        for ( long id = 1001; id <= 1008; id++ )
+        {
+            tracker.addingBundle( bundle( id, Bundle.ACTIVE ), null );
+        }
+        awaitPublished( 8 );
+
+        final List<Long> expected = new ArrayList<Long>();
+        for ( long id = 1001; id <= 1008; id++ )
+        {
+            expected.add( Long.valueOf( id ) );
+        }
+        assertEquals( expected, published );
+        assertTrue( maxPreparing.get() > 1 );
+
+        for ( long id = 1001; id <= 1008; id++ )
+        {
+            tracker.removedBundle( bundle( id, Bundle.RESOLVED ), null, null );
+        }
+        assertEquals( expected, unpublished );
+
+        assertFalse( calledUnderLock );
+    }
+
+    public void testStoppedDuringPreparation()
+        throws Exception
+    {
+        blocker = new CountDownLatch( 1 );
+
+        tracker.addingBundle( bundle( 2001, Bundle.ACTIVE ), null ); // blocked
+        tracker.addingBundle( bundle( 2002, Bundle.ACTIVE ), null ); // waits for 2001
+
+        Thread.sleep( 100 );
+        assertTrue( published.isEmpty() );
+
+        tracker.removedBundle( bundle( 2001, Bundle.RESOLVED ), null, null );
+        awaitPublished( 1 );
+        blocker.countDown();
+
+        // whatever the stopped bundle prepared is removed, never published
+        awaitUnpublished( 1 );
+        assertEquals( Collections.singletonList( Long.valueOf( 2001 ) ), unpublished );
+
+        assertEquals( Collections.singletonList( Long.valueOf( 2002 ) ), published );
+        tracker.removedBundle( bundle( 2002, Bundle.RESOLVED ), null, null );
+        assertEquals( Arrays.asList( Long.valueOf( 2001 ), Long.valueOf( 2002 ) ), unpublished );
+
+        // bundle can be tracked again once it restarts
+        tracker.addingBundle( bundle( 2001, Bundle.ACTIVE ), null );
+        awaitPublished( 2 );
+        assertEquals( Long.valueOf( 2001 ), published.get( 1 ) );
+        tracker.removedBundle( bundle( 2001, Bundle.RESOLVED ), null, null );
+
+        assertFalse( calledUnderLock );
+    }
+
+    public void testDefaultPlanInBackground()
+        throws Exception
+    {
+        blocker = new CountDownLatch( 1 );
+
+        final DefaultBeanLocator locator = new DefaultBeanLocator();
+        final PlanTracker planTracker = new PlanTracker( proxy( BundleContext.class, new FakeContext() ), locator );
+        try
+        {
+            planTracker.addingBundle( bundle( 3001, Bundle.ACTIVE, "javax.inject" ), null ); // blocked
+            planTracker.addingBundle( bundle( 3002, Bundle.ACTIVE, "javax.inject" ), null ); // waits for 3001
+
+            awaitPrepared( 1 );
+            Thread.sleep( 100 );
+
+            // injectors must not be auto-published out of order
+            assertEquals( 0, count( locator.publishers() ) );
+
+            planTracker.removedBundle( bundle( 3001, Bundle.RESOLVED, "javax.inject" ), null, null );
+            assertEquals( 1, count( locator.publishers() ) );
+
+            blocker.countDown();
+            awaitPrepared( 2 );
+            Thread.sleep( 100 );
+
+            // stopped bundle is never published, even though its injector has been created
+            assertEquals( 1, count( locator.publishers() ) );
+
+            planTracker.removedBundle( bundle( 3002, Bundle.RESOLVED, "javax.inject" ), null, null );
+            assertEquals( 0, count( locator.publishers() ) );
+        }
+        finally
+        {
+            planTracker.close();
+        }
+    }
+
+    static void awaitPrepared( final int count )
+        throws InterruptedException
+    {
+        for ( int i = 0; i < 500 && prepared.get() < count; i++ )
+        {
+            Thread.sleep( 10 );
+        }
+        assertEquals( count, prepared.get() );
+    }
+
+    static int count( final Iterable<?> iterable )
+    {
+        int count = 0;
+        for ( @SuppressWarnings( "unused" )
+        final Object o : iterable )
+        {
+            count++;
+        }
+        return count;
+    }
+
+    static void awaitPublished( final int count )
+        throws InterruptedException
+    {
+        for ( int i = 0; i < 500 && published.size() < count; i++ )
+        {
+            Thread.sleep( 10 );
+        }
+        assertEquals( count, published.size() );
+    }
+
+    static void awaitUnpublished( final int count )
+        throws InterruptedException
+    {
+        for ( int i = 0; i < 500 && unpublished.size() < count; i++ )
+        {
+            Thread.sleep( 10 );
+        }
+        assertEquals( count, unpublished.size() );
+    }
+
+    static Bundle bundle( final long id, final int state )
+    {
+        return bundle( id, state, null );
+    }
+
+    static Bundle bundle( final long id, final int state, final String imports )
+    {
+        final BundleContext bundleContext = proxy( BundleContext.class, new FakeContext() );
+        return proxy( Bundle.class, new InvocationHandler()
+        {
+            public Object invoke( final Object proxy, final Method method, final Object[] args )
+            {
+                final String name = method.getName();
+                if ( "getBundleId".equals( name ) )
+                {
+                    return Long.valueOf( id );
+                }
+                if ( "getState".equals( name ) )
+                {
+                    return Integer.valueOf( state );
+                }
+                if ( "getSymbolicName".equals( name ) )
+                {
+                    return "test.bundle." + id;
+                }
+                if ( "getHeaders".equals( name ) )
+                {
+                    final Hashtable<String, String> headers = new Hashtable<String, String>();
+                    if ( null != imports )
+                    {
+                        headers.put( Constants.IMPORT_PACKAGE, imports );
+                    }
+                    return headers;
+                }
+                if ( "getBundleContext".equals( name ) )
+                {
+                    return bundleContext;
+                }
+                return null;
+            }
+        } );
+    }
+
+    static <T> T proxy( final Class<T> clazz, final InvocationHandler handler )
+    {
+        return clazz.cast( Proxy.newProxyInstance( clazz.getClassLoader(), new Class<?>[] { clazz }, handler ) );
+    }
+
+    static final class TestTracker
+        extends SisuTracker
+    {
+        TestTracker( final BundleContext context, final MutableBeanLocator locator )
+        {
+            super( context, Bundle.ACTIVE, locator );
+        }
+
+        @Override
+        protected List<BundlePlan> discoverPlans()
+        {
+            return Collections.<BundlePlan> singletonList( new BundlePlan()
+            {
+                public BindingPublisher prepare( final Bundle bundle )
+                {
+                    final int count = preparing.incrementAndGet();
+                    try
+                    {
+                        for ( int max = maxPreparing.get(); count > max; max = maxPreparing.get() )
+                        {
+                            maxPreparing.compareAndSet( max, count );
+                        }
+                        final long id = bundle.getBundleId();
+                        if ( 2001 == id )
+                        {
+                            blocker.await( 5, TimeUnit.SECONDS );
+                        }
+                        else if ( id < 2000 )
+                        {
+                            Thread.sleep( ( 1009 - id ) * 10 );
+                        }
+                        return proxy( BindingPublisher.class, new FakePublisher( id ) );
+                    }
+                    catch ( final InterruptedException e )
+                    {
+                        return null;
+                    }
+                    finally
+                    {
+                        preparing.decrementAndGet();
+                    }
+                }
+            } );
+        }
+
+        boolean holdsPreparationsLock()
+        {
+            try
+            {
+                final Field field = SisuTracker.class.getDeclaredField( "preparations" );
+                field.setAccessible( true );
+                return Thread.holdsLock( field.get( this ) );
+            }
+            catch ( final Exception e )
+            {
+                throw new AssertionError( e.toString() );
+            }
+        }
+    }
+
+    /**
+     * Tracker using the default plans, where preparing bundle 3001 blocks after its injector has been created.
+     */
+    static final class PlanTracker
+        extends SisuTracker
+    {
+        PlanTracker( final BundleContext context, final MutableBeanLocator locator )
+        {
+            super( context, Bundle.ACTIVE, locator );
+        }
+
+        @Override
+        protected List<BundlePlan> discoverPlans()
+        {
+            final List<BundlePlan> plans = new ArrayList<BundlePlan>();
+            for ( final BundlePlan plan : super.discoverPlans() )
+            {
+                plans.add( new BundlePlan()
+                {
+                    public BindingPublisher prepare( final Bundle bundle )
+                    {
+                        final BindingPublisher publisher = plan.prepare( bundle );
+                        try
+                        {
+                            if ( 3001 == bundle.getBundleId() )
+                            {
+                                blocker.await( 5, TimeUnit.SECONDS );
+                            }
+                            return publisher;
+                        }
+                        catch ( final InterruptedException e )
+                        {
+                            return publisher;
+                        }
+                        finally
+                        {
+                            prepared.incrementAndGet();
+                        }
+                    }
+                } );
+            }
+            return plans;
+        }
+    }
+
+    static final class FakeContext
+        implements InvocationHandler
+    {
+        public Object invoke( final Object proxy, final Method method, final Object[] args )
+        {
+            final String name = method.getName();
+            if ( "getProperty".equals( name ) && "sisu.extender.threads".equals( args[0] ) )
+            {
+                return "4";
+            }
+            if ( "getBundle".equals( name ) && null == args )
+            {
+                return bundle( 0, Bundle.ACTIVE );
+            }
+            return null;
+        }
+    }
+
+    static final class FakePublisher
+        implements InvocationHandler
+    {
+        final Long id;
+
+        FakePublisher( final long id )
+        {
+            this.id = Long.valueOf( id );
+        }
+
+        public Object invoke( final Object proxy, final Method method, final Object[] args )
+        {
+            final String name = method.getName();
+            if ( "equals".equals( name ) )
+            {
+                return Boolean.valueOf( proxy == args[0] );
+            }
+            if ( "hashCode".equals( name ) )
+            {
+                return Integer.valueOf( id.hashCode() );
+            }
+            if ( "toString".equals( name ) )
+            {
+                return "Publisher" + id;
+            }
+            return null;
+        }
+    }
+
+    final class FakeLocator
+        implements InvocationHandler
+    {
+        public Object invoke( final Object proxy, final Method method, final Object[] args )
+        {
+            final String name = method.getName();
+            if ( "add".equals( name ) || "remove".equals( name ) )
+            {
+                if ( tracker.holdsPreparationsLock() )
+                {
+                    calledUnderLock = true;
+                }
+                final Long id = ( (FakePublisher) Proxy.getInvocationHandler( args[0] ) ).id;
+                ( "add".equals( name ) ? published : unpublished ).add( id );
+                return Boolean.TRUE;
+            }
+            return null;
+        }
+    }
+}
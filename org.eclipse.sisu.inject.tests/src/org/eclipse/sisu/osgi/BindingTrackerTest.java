@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.osgi;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.eclipse.sisu.inject.BindingSubscriber;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import com.google.inject.Binding;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Named;
+
+import junit.framework.TestCase;
+
+public class BindingTrackerTest
+    extends TestCase
+{
+    static final long LATENCY = 200;
+
+    final List<String> events = Collections.synchronizedList( new ArrayList<String>() );
+
+    final FakeRegistry registry = new FakeRegistry();
+
+    final BundleContext context = proxy( BundleContext.class, registry );
+
+    public void testBatchDelivery()
+        throws InterruptedException
+    {
+        final BindingTracker<Object> tracker = newTracker( LATENCY );
+        final Subscriber subscriber = new Subscriber( "S", Runnable.class );
+        tracker.subscribe( subscriber );
+
+        registry.register( "A", Runnable.class );
+        registry.register( "B", Runnable.class );
+        assertTrue( events.isEmpty() );
+
+        awaitEvents( 2 );
+        assertEquals( Arrays.asList( "S+A@0", "S+B@0" ), events );
+
+        tracker.unsubscribe( subscriber );
+    }
+
+    public void testAddedAndRemovedInOneWindow()
+        throws InterruptedException
+    {
+        final BindingTracker<Object> tracker = newTracker( LATENCY );
+        final Subscriber subscriber = new Subscriber( "S", Runnable.class );
+        tracker.subscribe( subscriber );
+
+        registry.unregister( registry.register( "A", Runnable.class ) );
+        registry.register( "B", Runnable.class );
+
+        awaitEvents( 2 );
+        Thread.sleep( LATENCY );
+        assertEquals( Arrays.asList( "release A", "S+B@0" ), events );
+
+        tracker.unsubscribe( subscriber );
+    }
+
+    public void testSubscriberJoiningMidWindow()
+        throws InterruptedException
+    {
+        registry.register( "A", Runnable.class );
+
+        final BindingTracker<Object> tracker = newTracker( LATENCY );
+        final Subscriber subscriberS = new Subscriber( "S", Runnable.class );
+        tracker.subscribe( subscriberS ); // opens the tracker, which finds A
+        assertEquals( Arrays.asList( "S+A@0" ), events );
+
+        registry.register( "B", Runnable.class );
+        final Subscriber subscriberT = new Subscriber( "T", Runnable.class );
+        tracker.subscribe( subscriberT ); // brings S up to date before T joins
+        assertEquals( Arrays.asList( "S+A@0", "S+B@0", "T+A@0", "T+B@0" ), events );
+
+        Thread.sleep( 2 * LATENCY );
+        assertEquals( 4, events.size() );
+
+        tracker.unsubscribe( subscriberS );
+        tracker.unsubscribe( subscriberT );
+    }
+
+    public void testRemovalBeforeRelease()
+        throws InterruptedException
+    {
+        final BindingTracker<Object> tracker = newTracker( LATENCY );
+        final Subscriber subscriber = new Subscriber( "S", Runnable.class );
+        tracker.subscribe( subscriber );
+
+        final ServiceReference<?> reference = registry.register( "A", Runnable.class );
+        awaitEvents( 1 );
+
+        registry.unregister( reference );
+        assertEquals( Arrays.asList( "S+A@0", "S-A", "release A" ), events );
+
+        tracker.unsubscribe( subscriber );
+    }
+
+    public void testModifiedRanking()
+    {
+        final BindingTracker<Object> tracker = newTracker( 0 );
+        final Subscriber subscriber = new Subscriber( "S", Runnable.class );
+        tracker.subscribe( subscriber );
+
+        final ServiceReference<?> reference =
+            registry.register( "A", Runnable.class, Constants.SERVICE_RANKING, Integer.valueOf( 5 ) );
+        registry.modify( reference, Constants.SERVICE_RANKING, Integer.valueOf( 7 ) );
+        assertEquals( Arrays.asList( "S+A@5", "S-A", "S+A@7" ), events );
+
+        tracker.unsubscribe( subscriber );
+    }
+
+    public void testModifiedName()
+    {
+        final BindingTracker<Object> tracker = newTracker( 0 );
+        final Subscriber subscriber = new Subscriber( "S", Runnable.class );
+        tracker.subscribe( subscriber );
+
+        final ServiceReference<?> reference = registry.register( "A", Runnable.class );
+        registry.modify( reference, "name", "foo" );
+        registry.modify( reference, "name", null );
+        assertEquals( Arrays.asList( "S+A@0", "S-A", "S+A/foo@0", "S-A", "S+A@0" ), events );
+
+        tracker.unsubscribe( subscriber );
+    }
+
+    public void testUnchangedModification()
+    {
+        final BindingTracker<Object> tracker = newTracker( 0 );
+        final Subscriber subscriber = new Subscriber( "S", Runnable.class );
+        tracker.subscribe( subscriber );
+
+        final ServiceReference<?> reference = registry.register( "A", Runnable.class, "name", "foo" );
+        registry.modify( reference, "description", "unrelated" );
+        registry.modify( reference, "name", "foo" );
+        assertEquals( Arrays.asList( "S+A/foo@0" ), events );
+
+        tracker.unsubscribe( subscriber );
+    }
+
+    public void testOnlyCompatibleBindingsDelivered()
+    {
+        // same service name, but loaded as different types from different bundles
+        registry.register( "A", Runnable.class );
+        registry.register( "B", Comparable.class );
+        registry.register( "C", Runnable.class );
+
+        final BindingTracker<Object> tracker = newTracker( 0 );
+        final Subscriber subscriberS = new Subscriber( "S", Runnable.class );
+        final Subscriber subscriberT = new Subscriber( "T", Comparable.class );
+        tracker.subscribe( subscriberS );
+        tracker.subscribe( subscriberT );
+        assertEquals( Arrays.asList( "S+A@0", "S+C@0", "T+B@0" ), events );
+
+        tracker.unsubscribe( subscriberS );
+        tracker.unsubscribe( subscriberT );
+    }
+
+    BindingTracker<Object> newTracker( final long latency )
+    {
+        return new BindingTracker<Object>( context, Integer.MAX_VALUE, Runnable.class.getName(), latency );
+    }
+
+    void awaitEvents( final int count )
+        throws InterruptedException
+    {
+        for ( int i = 0; i < 500 && events.size() < count; i++ )
+        {
+            Thread.sleep( 10 );
+        }
+        assertEquals( count, events.size() );
+    }
+
+    static <T> T proxy( final Class<T> clazz, final InvocationHandler handler )
+    {
+        return clazz.cast( Proxy.newProxyInstance( clazz.getClassLoader(), new Class<?>[] { clazz }, handler ) );
+    }
+
+    /**
+     * Records the bindings it sees as: subscriber, +/-, service id, optional name, and rank.
+     */
+    final class Subscriber
+        implements BindingSubscriber<Object>
+    {
+        private final String id;
+
+        private final TypeLiteral<Object> type;
+
+        @SuppressWarnings( { "unchecked", "rawtypes" } )
+        Subscriber( final String id, final Class<?> type )
+        {
+            this.id = id;
+            this.type = (TypeLiteral) TypeLiteral.get( type );
+        }
+
+        public TypeLiteral<Object> type()
+        {
+            return type;
+        }
+
+        public void add( final Binding<Object> binding, final int rank )
+        {
+            final Named name = (Named) binding.getKey().getAnnotation();
+            events.add( id + '+' + binding.getProvider().get() + ( null != name ? '/' + name.value() : "" ) + '@'
+                + rank );
+        }
+
+        public void remove( final Binding<Object> binding )
+        {
+            events.add( id + '-' + binding.getProvider().get() );
+        }
+
+        public Iterable<Binding<Object>> bindings()
+        {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Minimal service registry that sends service events to the last registered listener.
+     */
+    final class FakeRegistry
+        implements InvocationHandler
+    {
+        private final List<ServiceReference<?>> references = new ArrayList<ServiceReference<?>>();
+
+        private ServiceListener listener;
+
+        ServiceReference<?> register( final String id, final Class<?> type, final Object... properties )
+        {
+            final FakeService service = new FakeService( id, type );
+            for ( int i = 0; i < properties.length; i += 2 )
+            {
+                service.properties.put( (String) properties[i], properties[i + 1] );
+            }
+            final ServiceReference<?> reference = proxy( ServiceReference.class, service );
+            references.add( reference );
+            fire( ServiceEvent.REGISTERED, reference );
+            return reference;
+        }
+
+        void modify( final ServiceReference<?> reference, final String key, final Object value )
+        {
+            final Hashtable<String, Object> properties = service( reference ).properties;
+            if ( null != value )
+            {
+                properties.put( key, value );
+            }
+            else
+            {
+                properties.remove( key );
+            }
+            fire( ServiceEvent.MODIFIED, reference );
+        }
+
+        void unregister( final ServiceReference<?> reference )
+        {
+            references.remove( reference );
+            fire( ServiceEvent.UNREGISTERING, reference );
+        }
+
+        public Object invoke( final Object proxy, final Method method, final Object[] args )
+            throws Exception
+        {
+            final String name = method.getName();
+            if ( "createFilter".equals( name ) )
+            {
+                return FrameworkUtil.createFilter( (String) args[0] );
+            }
+            if ( "addServiceListener".equals( name ) )
+            {
+                listener = (ServiceListener) args[0];
+            }
+            else if ( "removeServiceListener".equals( name ) )
+            {
+                listener = null;
+            }
+            else if ( "getAllServiceReferences".equals( name ) || "getServiceReferences".equals( name ) )
+            {
+                return references.isEmpty() ? null : references.toArray( new ServiceReference<?>[0] );
+            }
+            else if ( "getService".equals( name ) )
+            {
+                return service( (ServiceReference<?>) args[0] ).id;
+            }
+            else if ( "ungetService".equals( name ) )
+            {
+                events.add( "release " + service( (ServiceReference<?>) args[0] ).id );
+                return Boolean.TRUE;
+            }
+            return null;
+        }
+
+        private void fire( final int type, final ServiceReference<?> reference )
+        {
+            if ( null != listener )
+            {
+                listener.serviceChanged( new ServiceEvent( type, reference ) );
+            }
+        }
+
+        private FakeService service( final ServiceReference<?> reference )
+        {
+            return (FakeService) Proxy.getInvocationHandler( reference );
+        }
+    }
+
+    /**
+     * Service whose type is loaded from its own bundle, so services of the same name can have different types.
+     */
+    static final class FakeService
+        implements InvocationHandler
+    {
+        final Hashtable<String, Object> properties = new Hashtable<String, Object>();
+
+        final String id;
+
+        private final Bundle bundle;
+
+        FakeService( final String id, final Class<?> type )
+        {
+            this.id = id;
+            bundle = proxy( Bundle.class, new InvocationHandler()
+            {
+                public Object invoke( final Object proxy, final Method method, final Object[] args )
+                {
+                    return "loadClass".equals( method.getName() ) ? type : null;
+                }
+            } );
+        }
+
+        public Object invoke( final Object proxy, final Method method, final Object[] args )
+        {
+            final String name = method.getName();
+            if ( "getProperty".equals( name ) )
+            {
+                return properties.get( args[0] );
+            }
+            if ( "getPropertyKeys".equals( name ) )
+            {
+                return properties.keySet().toArray( new String[0] );
+            }
+            if ( "getBundle".equals( name ) )
+            {
+                return bundle;
+            }
+            if ( "compareTo".equals( name ) )
+            {
+                return Integer.valueOf( 0 );
+            }
+            if ( "equals".equals( name ) )
+            {
+                return Boolean.valueOf( proxy == args[0] );
+            }
+            if ( "hashCode".equals( name ) )
+            {
+                return Integer.valueOf( System.identityHashCode( proxy ) );
+            }
+            return id;
+        }
+    }
+}
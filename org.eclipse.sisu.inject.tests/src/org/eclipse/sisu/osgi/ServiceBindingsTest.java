@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.osgi;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+public class ServiceBindingsTest
+    extends TestCase
+{
+    private static final Pattern GLOB_SYNTAX = Pattern.compile( "(?:\\w+|\\*)(?:\\.?(?:\\w+|\\*))*" );
+
+    private static final String[] NAMES = { "", "Foo", "Bar", "org", "orgx", "org.Foo", "orgx.Foo", "org.foo.Foo",
+        "org.foo.Bar", "org.bar.Foo", "com.acme.Foo", "com.acme.Bar", "abc", "ac", "abbc", "aXbYc", "a.b.c", "acb",
+        "abcd", "xabc", "bad-glob", "org..x" };
+
+    public void testStar()
+        throws Exception
+    {
+        assertSameDecisions( "*", "" );
+        assertSameDecisions( "*", "*" );
+        assertSameDecisions( "**", "" );
+    }
+
+    public void testPackagePrefix()
+        throws Exception
+    {
+        assertSameDecisions( "org.*", "" );
+        assertSameDecisions( "org", "" );
+        assertSameDecisions( "org*", "" );
+        assertSameDecisions( "org,org.*", "" );
+    }
+
+    public void testSimpleNameSuffix()
+        throws Exception
+    {
+        assertSameDecisions( "*.Foo", "" );
+        assertSameDecisions( "*Foo", "" );
+        assertSameDecisions( "*", "*.Foo" );
+    }
+
+    public void testMultipleStars()
+        throws Exception
+    {
+        assertSameDecisions( "a*b*c", "" );
+        assertSameDecisions( "*a*b*c*", "" );
+        assertSameDecisions( "a*c,a*b*c", "" );
+    }
+
+    public void testAllowAndIgnoreOverlap()
+        throws Exception
+    {
+        assertSameDecisions( "org.*,com.*", "org.foo.*,*.Bar" );
+        assertSameDecisions( "org.foo.*", "org.*" );
+        assertSameDecisions( "*.Foo", "org.*.Foo" );
+        assertSameDecisions( "org.foo.Foo", "org.foo.Foo" );
+    }
+
+    public void testMalformedGlobs()
+        throws Exception
+    {
+        assertSameDecisions( "org.*, bad-glob, org..x, .org, org.", "" );
+        assertSameDecisions( "*", "bad-glob,*..Foo,~x" );
+        assertSameDecisions( " , ", " , " );
+    }
+
+    public void testRepeatedDecisions()
+        throws Exception
+    {
+        final ServiceBindings bindings = new ServiceBindings( null, "org.*", "org.foo.*", 0 );
+        final String name = String.class.getName();
+        assertFalse( shouldTrack( bindings, name ) );
+        assertFalse( shouldTrack( bindings, name ) );
+        assertTrue( shouldTrack( bindings, "org.Foo" ) );
+        assertFalse( shouldTrack( bindings, "org.foo.Foo" ) );
+    }
+
+    private static void assertSameDecisions( final String allow, final String ignore )
+        throws Exception
+    {
+        final ServiceBindings bindings = new ServiceBindings( null, allow, ignore, 0 );
+        final Pattern[] allowed = regexGlobs( allow );
+        final Pattern[] ignored = regexGlobs( ignore );
+        for ( final String name : NAMES )
+        {
+            assertEquals( "allow=" + allow + " ignore=" + ignore + " name=" + name,
+                          regexDecision( allowed, ignored, name ), shouldTrack( bindings, name ) );
+        }
+    }
+
+    private static boolean shouldTrack( final ServiceBindings bindings, final String name )
+        throws Exception
+    {
+        final Method method = ServiceBindings.class.getDeclaredMethod( "shouldTrack", String.class );
+        method.setAccessible( true );
+        return ( (Boolean) method.invoke( bindings, name ) ).booleanValue();
+    }
+
+    /**
+     * Translation of globs to regular expressions, as used before the trie.
+     */
+    private static Pattern[] regexGlobs( final String globs )
+    {
+        final List<Pattern> patterns = new ArrayList<Pattern>();
+        for ( final String glob : globs.split( "\\s*,\\s*" ) )
+        {
+            if ( GLOB_SYNTAX.matcher( glob ).matches() )
+            {
+                patterns.add( Pattern.compile( glob.replace( ".", "\\." ).replace( "*", ".*" ) ) );
+            }
+        }
+        return patterns.toArray( new Pattern[patterns.size()] );
+    }
+
+    private static boolean regexDecision( final Pattern[] allowed, final Pattern[] ignored, final String name )
+    {
+        for ( final Pattern allow : allowed )
+        {
+            if ( allow.matcher( name ).matches() )
+            {
+                for ( final Pattern ignore : ignored )
+                {
+                    if ( ignore.matcher( name ).matches() )
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.sisu.space.QualifiedScanningTest.C;
+import org.eclipse.sisu.space.QualifiedScanningTest.D;
+
+import junit.framework.TestCase;
+
+public class ClassPathIndexerTest
+    extends TestCase
+{
+    private File tempDir;
+
+    private File classesDir;
+
+    private File targetDir;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        tempDir = File.createTempFile( "sisu", "indexer" );
+        tempDir.delete();
+        classesDir = new File( tempDir, "classes" );
+        targetDir = new File( tempDir, "target" );
+        copyClass( C.class );
+        copyClass( D.class );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        delete( tempDir );
+    }
+
+    public void testMergedIndex()
+        throws IOException
+    {
+        final URL classesURL = classesDir.toURI().toURL();
+        new ClassPathIndexer( targetDir, 2 ).indexMerged( new URL[] { classesURL } );
+
+        final List<String> names = readLines( new File( targetDir, "META-INF/sisu/javax.inject.Named" ) );
+        assertEquals( 2, names.size() );
+        assertTrue( names.contains( C.class.getName() ) );
+        assertTrue( names.contains( D.class.getName() ) );
+
+        final List<String> inputs = readLines( new File( targetDir, "META-INF/sisu/javax.inject.Named.inputs" ) );
+        assertEquals( 2, inputs.size() );
+        assertTrue( inputs.get( 1 ).startsWith( "classes\t" ) );
+
+        final URL[] classPath = { targetDir.toURI().toURL(), classesURL };
+        assertTrue( ClassPathIndexer.isValid( new URLClassSpace( getClass().getClassLoader(), classPath ) ) );
+
+        // touching files without changing them is fine
+        final File classFile = new File( classesDir, resourceName( C.class ) );
+        assertTrue( classFile.setLastModified( classFile.lastModified() - 60000 ) );
+        assertTrue( ClassPathIndexer.isValid( new URLClassSpace( getClass().getClassLoader(), classPath ) ) );
+
+        final OutputStream out = new FileOutputStream( new File( classesDir, "extra.txt" ) );
+        out.write( 42 );
+        out.close();
+        assertFalse( ClassPathIndexer.isValid( new URLClassSpace( getClass().getClassLoader(), classPath ) ) );
+
+        // re-indexing replaces the old index
+        new ClassPathIndexer( targetDir, 1 ).indexMerged( new URL[] { classesURL } );
+        assertTrue( ClassPathIndexer.isValid( new URLClassSpace( getClass().getClassLoader(), classPath ) ) );
+
+        final URL[] otherClassPath = { targetDir.toURI().toURL() };
+        assertFalse( ClassPathIndexer.isValid( new URLClassSpace( getClass().getClassLoader(), otherClassPath ) ) );
+    }
+
+    public void testIndexEach()
+        throws IOException
+    {
+        final File otherDir = new File( tempDir, "other/classes" );
+        otherDir.mkdirs();
+
+        new ClassPathIndexer( targetDir, 2 ).indexEach( new URL[] { classesDir.toURI().toURL(),
+            otherDir.toURI().toURL() } );
+
+        final List<String> names = readLines( new File( targetDir, "classes/META-INF/sisu/javax.inject.Named" ) );
+        assertEquals( 2, names.size() );
+        assertTrue( names.contains( C.class.getName() ) );
+        assertTrue( names.contains( D.class.getName() ) );
+
+        assertFalse( new File( targetDir, "classes-2/META-INF/sisu/javax.inject.Named" ).exists() );
+        assertFalse( new File( targetDir, "classes/META-INF/sisu/javax.inject.Named.inputs" ).exists() );
+    }
+
+    private void copyClass( final Class<?> clazz )
+        throws IOException
+    {
+        final File file = new File( classesDir, resourceName( clazz ) );
+        file.getParentFile().mkdirs();
+        final InputStream in = clazz.getClassLoader().getResourceAsStream( resourceName( clazz ) );
+        try
+        {
+            final OutputStream out = new FileOutputStream( file );
+            try
+            {
+                final byte[] buf = new byte[4096];
+                for ( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+                {
+                    out.write( buf, 0, n );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static List<String> readLines( final File file )
+        throws IOException
+    {
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try
+        {
+            for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                lines.add( line );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static String resourceName( final Class<?> clazz )
+    {
+        return clazz.getName().replace( '.', '/' ) + ".class";
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] files = file.listFiles();
+        if ( null != files )
+        {
+            for ( final File f : files )
+            {
+                delete( f );
+            }
+        }
+        file.delete();
+    }
+}
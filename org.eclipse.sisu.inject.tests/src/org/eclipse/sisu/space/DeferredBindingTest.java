@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.sisu.BeanEntry;
+import org.eclipse.sisu.inject.BeanLocator;
+import org.eclipse.sisu.inject.DeferredClass;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+
+import junit.framework.TestCase;
+
+public class DeferredBindingTest
+    extends TestCase
+{
+    static final class RecordingClassSpace
+        implements ClassSpace
+    {
+        final Set<String> loaded = Collections.synchronizedSet( new HashSet<String>() );
+
+        private final ClassSpace space;
+
+        RecordingClassSpace( final ClassSpace space )
+        {
+            this.space = space;
+        }
+
+        public Class<?> loadClass( final String name )
+        {
+            loaded.add( name );
+            return space.loadClass( name );
+        }
+
+        public DeferredClass<?> deferLoadClass( final String name )
+        {
+            return new NamedClass<Object>( this, name );
+        }
+
+        public URL getResource( final String name )
+        {
+            return space.getResource( name );
+        }
+
+        public Enumeration<URL> getResources( final String name )
+        {
+            return space.getResources( name );
+        }
+
+        public Enumeration<URL> findEntries( final String path, final String glob, final boolean recurse )
+        {
+            return space.findEntries( path, glob, recurse );
+        }
+    }
+
+    public void testDeferredBinding()
+    {
+        final RecordingClassSpace space = newSpace();
+
+        final Injector injector =
+            Guice.createInjector( new SpaceModule( space ).with( SpaceModule.Strategy.DEFERRED ) );
+
+        final String moduleName = QualifiedModuleTest.CustomModule.class.getName();
+        final String typedName = QualifiedProviderTest.CountingRunnable.class.getName();
+        final String wildcardName = QualifiedScanningTest.C.class.getName();
+
+        assertTrue( space.loaded.contains( moduleName ) );
+        assertFalse( space.loaded.contains( typedName ) );
+        assertFalse( space.loaded.contains( wildcardName ) );
+
+        final Runnable runnable = injector.getInstance( Key.get( Runnable.class, Names.named( "counting" ) ) );
+        assertTrue( runnable instanceof QualifiedProviderTest.CountingRunnable );
+        assertTrue( space.loaded.contains( typedName ) );
+
+        final BeanLocator locator = injector.getInstance( BeanLocator.class );
+        final Key<Object> wildcardKey = Key.get( Object.class, Names.named( wildcardName ) );
+        final BeanEntry<?, ?> bean = locator.locate( wildcardKey ).iterator().next();
+        assertEquals( wildcardName, bean.getImplementationClass().getName() );
+        assertTrue( space.loaded.contains( wildcardName ) );
+    }
+
+    public void testDeferredIndexBinding()
+    {
+        final RecordingClassSpace space = newSpace();
+        final IndexedType type = IndexedType.fromClass( QualifiedProviderTest.CountingRunnable.class );
+
+        final Injector injector = Guice.createInjector( new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                final QualifiedTypeBinder binder = new QualifiedTypeBinder( binder(), true );
+                new QualifiedTypeVisitor( binder ).visitIndex( space, Collections.singleton( type ) );
+            }
+        } );
+
+        assertFalse( space.loaded.contains( type.clazzName ) );
+        assertNotNull( injector.getInstance( Key.get( Runnable.class, Names.named( "counting" ) ) ) );
+        assertTrue( space.loaded.contains( type.clazzName ) );
+    }
+
+    public void testScannedFactsMatchReflection()
+    {
+        final ClassSpace space = newSpace();
+        final ScannedType scannedType = new ScannedType();
+        final List<String> checked = new ArrayList<String>();
+
+        new SpaceScanner( space ).accept( new SpaceVisitor()
+        {
+            public void enterSpace( final ClassSpace _space )
+            {
+                scannedType.enterSpace();
+            }
+
+            public ClassVisitor visitClass( final URL url )
+            {
+                return new ClassVisitor()
+                {
+                    private boolean concrete;
+
+                    public void enterClass( final int modifiers, final String name, final String _extends,
+                                            final String[] _implements )
+                    {
+                        concrete = ( modifiers & NON_INSTANTIABLE ) == 0;
+                        scannedType.enterClass( modifiers, name, _extends, _implements );
+                    }
+
+                    public AnnotationVisitor visitAnnotation( final String desc )
+                    {
+                        return scannedType.visitAnnotation( desc );
+                    }
+
+                    public void leaveClass()
+                    {
+                        final IndexedType scanned = scannedType.toIndexedType( space );
+                        if ( concrete && null != scanned )
+                        {
+                            final IndexedType reflected = IndexedType.fromClass( space.loadClass( scanned.clazzName ) );
+                            assertEquals( scanned.clazzName, reflected.flags, scanned.flags );
+                            assertEquals( scanned.clazzName, reflected.name, scanned.name );
+                            assertEquals( scanned.clazzName, toList( reflected.types ), toList( scanned.types ) );
+                            checked.add( scanned.clazzName );
+                        }
+                    }
+                };
+            }
+
+            public void leaveSpace()
+            {
+                // no-op
+            }
+        } );
+
+        assertTrue( checked.contains( QualifiedProviderTest.CountingRunnable.class.getName() ) );
+        assertTrue( checked.contains( QualifiedTypesTest.B02.class.getName() ) );
+    }
+
+    private static List<String> toList( final String[] types )
+    {
+        return null != types ? Arrays.asList( types ) : null;
+    }
+
+    private RecordingClassSpace newSpace()
+    {
+        final URL[] urls = { getClass().getResource( "" ) };
+        return new RecordingClassSpace( new URLClassSpace( getClass().getClassLoader(), urls ) );
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.sisu.space.QualifiedScanningTest.A;
+import org.eclipse.sisu.space.QualifiedScanningTest.C;
+import org.eclipse.sisu.space.QualifiedScanningTest.D;
+
+import junit.framework.TestCase;
+
+public class IncrementalScannerTest
+    extends TestCase
+{
+    static class TestListener
+        implements IncrementalScanner.Listener
+    {
+        final List<String> events = new ArrayList<String>();
+
+        public void added( final Class<?> clazz, final Object source )
+        {
+            events.add( "+" + clazz.getName() );
+        }
+
+        public void removed( final String clazzName, final Object source )
+        {
+            events.add( "-" + clazzName );
+        }
+    }
+
+    private File classDir;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        classDir = File.createTempFile( "sisu", "classes" );
+        classDir.delete();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        delete( classDir );
+    }
+
+    public void testIncrementalScanning()
+        throws IOException
+    {
+        final ClassSpace space = new URLClassSpace( getClass().getClassLoader() );
+        final IncrementalScanner scanner = new IncrementalScanner( classDir.toURI().toURL() );
+
+        final File fileA = copyClass( A.class );
+        final File fileC = copyClass( C.class );
+
+        TestListener listener = new TestListener();
+        assertTrue( scanner.rescan( space, listener ) );
+        assertEquals( Arrays.asList( "+" + C.class.getName() ), listener.events );
+
+        listener = new TestListener();
+        assertFalse( scanner.rescan( space, listener ) );
+        assertTrue( listener.events.isEmpty() );
+
+        final File fileD = copyClass( D.class );
+        assertTrue( fileA.setLastModified( fileA.lastModified() - 60000 ) );
+
+        listener = new TestListener();
+        assertTrue( scanner.rescan( space, listener ) );
+        assertEquals( Arrays.asList( "+" + D.class.getName() ), listener.events );
+
+        assertTrue( fileC.setLastModified( fileC.lastModified() - 60000 ) );
+        assertTrue( fileD.delete() );
+
+        listener = new TestListener();
+        assertTrue( scanner.rescan( space, listener ) );
+        assertEquals( 3, listener.events.size() );
+        assertTrue( listener.events.contains( "-" + C.class.getName() ) );
+        assertTrue( listener.events.contains( "-" + D.class.getName() ) );
+        assertEquals( "+" + C.class.getName(), listener.events.get( 2 ) );
+    }
+
+    private File copyClass( final Class<?> clazz )
+        throws IOException
+    {
+        final String path = clazz.getName().replace( '.', '/' ) + ".class";
+        final File file = new File( classDir, path );
+        file.getParentFile().mkdirs();
+        final InputStream in = clazz.getClassLoader().getResourceAsStream( path );
+        try
+        {
+            final OutputStream out = new FileOutputStream( file );
+            try
+            {
+                final byte[] buf = new byte[4096];
+                for ( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+                {
+                    out.write( buf, 0, n );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return file;
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] files = file.listFiles();
+        if ( null != files )
+        {
+            for ( final File f : files )
+            {
+                delete( f );
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.sisu.space.QualifiedScanningTest.C;
+import org.eclipse.sisu.space.QualifiedScanningTest.D;
+
+import junit.framework.TestCase;
+
+public class IndexedClassFinderTest
+    extends TestCase
+{
+    private static final IndexedClassFinder LOCAL_INDEX =
+        new IndexedClassFinder( "META-INF/sisu/javax.inject.Named", false );
+
+    private File indexDir;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        indexDir = File.createTempFile( "sisu", "index" );
+        indexDir.delete();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        delete( indexDir );
+    }
+
+    public void testParseLine()
+    {
+        assertEquals( "a.B", IndexedClassFinder.parseLine( "a.B" ) );
+        assertEquals( "a.B", IndexedClassFinder.parseLine( "  a.B  " ) );
+        assertEquals( "a.B", IndexedClassFinder.parseLine( "\ta.B # comment" ) );
+        assertEquals( "a.B", IndexedClassFinder.parseLine( "a.B#comment" ) );
+        assertNull( IndexedClassFinder.parseLine( "" ) );
+        assertNull( IndexedClassFinder.parseLine( "   " ) );
+        assertNull( IndexedClassFinder.parseLine( "# a.B" ) );
+        assertNull( IndexedClassFinder.parseLine( "  #a.B" ) );
+    }
+
+    public void testClassesNextToIndex()
+        throws IOException
+    {
+        // D is copied next to the index, C is only available from the class loader
+        copyClass( D.class );
+        writeIndex( "# comment", C.class.getName(), "  " + D.class.getName() + " # next to index", "missing.Type" );
+
+        final ClassSpace space =
+            new URLClassSpace( getClass().getClassLoader(), new URL[] { indexDir.toURI().toURL() } );
+        final List<URL> urls = Collections.list( LOCAL_INDEX.findClasses( space ) );
+
+        assertEquals( 2, urls.size() );
+        assertEquals( getClass().getClassLoader().getResource( resourceName( C.class ) ), urls.get( 0 ) );
+        assertEquals( new URL( indexDir.toURI().toURL(), resourceName( D.class ) ), urls.get( 1 ) );
+
+        final List<String> names = new ArrayList<String>();
+        for ( final String name : LOCAL_INDEX.indexedNames( space ) )
+        {
+            names.add( name );
+        }
+        assertEquals( 3, names.size() );
+        assertEquals( "missing.Type", names.get( 2 ) );
+    }
+
+    public void testStaleBinaryIndex()
+        throws IOException
+    {
+        writeIndex( C.class.getName() );
+        writeBinaryIndex( Arrays.asList( C.class.getName() ), IndexedType.fromClass( C.class ) );
+
+        final ClassSpace space =
+            new URLClassSpace( getClass().getClassLoader(), new URL[] { indexDir.toURI().toURL() } );
+        assertTrue( LOCAL_INDEX.indexedTypes( space ).iterator().next().isKnown() );
+
+        // plain text index was updated without its binary index
+        writeIndex( C.class.getName(), D.class.getName() );
+        final List<IndexedType> types = new ArrayList<IndexedType>( LOCAL_INDEX.indexedTypes( space ) );
+        assertEquals( 2, types.size() );
+        assertEquals( C.class.getName(), types.get( 0 ).clazzName );
+        assertFalse( types.get( 0 ).isKnown() );
+        assertEquals( D.class.getName(), types.get( 1 ).clazzName );
+    }
+
+    private void writeBinaryIndex( final List<String> names, final IndexedType... entries )
+        throws IOException
+    {
+        final File index = new File( indexDir, "META-INF/sisu/javax.inject.Named" + IndexedType.BINARY_SUFFIX );
+        index.getParentFile().mkdirs();
+        final DataOutputStream out = new DataOutputStream( new FileOutputStream( index ) );
+        try
+        {
+            IndexedType.writeIndex( out, names, Arrays.asList( entries ) );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private void writeIndex( final String... lines )
+        throws IOException
+    {
+        final File index = new File( indexDir, "META-INF/sisu/javax.inject.Named" );
+        index.getParentFile().mkdirs();
+        final OutputStream out = new FileOutputStream( index );
+        try
+        {
+            for ( final String line : lines )
+            {
+                out.write( ( line + '\n' ).getBytes( "UTF-8" ) );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private void copyClass( final Class<?> clazz )
+        throws IOException
+    {
+        final File file = new File( indexDir, resourceName( clazz ) );
+        file.getParentFile().mkdirs();
+        final InputStream in = clazz.getClassLoader().getResourceAsStream( resourceName( clazz ) );
+        try
+        {
+            final OutputStream out = new FileOutputStream( file );
+            try
+            {
+                final byte[] buf = new byte[4096];
+                for ( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+                {
+                    out.write( buf, 0, n );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static String resourceName( final Class<?> clazz )
+    {
+        return clazz.getName().replace( '.', '/' ) + ".class";
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] files = file.listFiles();
+        if ( null != files )
+        {
+            for ( final File f : files )
+            {
+                delete( f );
+            }
+        }
+        file.delete();
+    }
+}
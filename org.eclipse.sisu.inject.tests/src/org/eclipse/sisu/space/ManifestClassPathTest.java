@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+public class ManifestClassPathTest
+    extends TestCase
+{
+    private File libDir;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        libDir = File.createTempFile( "sisu", "lib" );
+        libDir.delete();
+        libDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        for ( final File f : libDir.listFiles() )
+        {
+            f.delete();
+        }
+        libDir.delete();
+    }
+
+    public void testExpansionOrder()
+        throws IOException
+    {
+        createJar( "a.jar", "b.jar c.jar" );
+        createJar( "b.jar", "d.jar" );
+        createJar( "c.jar", "b.jar e.jar" );
+        createJar( "d.jar", "a.jar" );
+        createJar( "e.jar", null );
+        createJar( "f.jar", "e.jar missing.jar" );
+
+        final URL[] path = { jarURL( "a.jar" ), jarURL( "f.jar" ), jarURL( "c.jar" ) };
+
+        assertEquals( Arrays.asList( "a.jar", "f.jar", "c.jar", "b.jar", "e.jar", "missing.jar", "d.jar" ),
+                      names( new URLClassSpace( getClass().getClassLoader(), path ).getURLs() ) );
+
+        // same result when manifests are remembered
+        assertEquals( Arrays.asList( "a.jar", "f.jar", "c.jar", "b.jar", "e.jar", "missing.jar", "d.jar" ),
+                      names( new URLClassSpace( getClass().getClassLoader(), path ).getURLs() ) );
+    }
+
+    public void testChangedManifest()
+        throws IOException
+    {
+        createJar( "a.jar", "b.jar" );
+        createJar( "b.jar", null );
+        createJar( "c.jar", null );
+
+        final URL[] path = { jarURL( "a.jar" ) };
+
+        assertEquals( Arrays.asList( "a.jar", "b.jar" ),
+                      names( new URLClassSpace( getClass().getClassLoader(), path ).getURLs() ) );
+
+        final long lastModified = new File( libDir, "a.jar" ).lastModified();
+        createJar( "a.jar", "c.jar" );
+        assertTrue( new File( libDir, "a.jar" ).setLastModified( lastModified - 60000 ) );
+
+        assertEquals( Arrays.asList( "a.jar", "c.jar" ),
+                      names( new URLClassSpace( getClass().getClassLoader(), path ).getURLs() ) );
+    }
+
+    private URL jarURL( final String name )
+        throws IOException
+    {
+        return new File( libDir, name ).toURI().toURL();
+    }
+
+    private void createJar( final String name, final String classPath )
+        throws IOException
+    {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        if ( null != classPath )
+        {
+            manifest.getMainAttributes().put( Attributes.Name.CLASS_PATH, classPath );
+        }
+        new JarOutputStream( new FileOutputStream( new File( libDir, name ) ), manifest ).close();
+    }
+
+    private static List<String> names( final URL[] urls )
+    {
+        final List<String> names = new ArrayList<String>();
+        for ( final URL url : urls )
+        {
+            names.add( url.getPath().substring( url.getPath().lastIndexOf( '/' ) + 1 ) );
+        }
+        return names;
+    }
+}
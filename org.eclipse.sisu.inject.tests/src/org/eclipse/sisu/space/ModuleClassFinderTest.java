@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+public class ModuleClassFinderTest
+    extends TestCase
+{
+    private File jar;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        jar = File.createTempFile( "sisu", ".jar" );
+        jar.deleteOnExit();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        jar.delete();
+    }
+
+    public void testClassPathIsScanned()
+        throws IOException
+    {
+        writeJar( false, "a/B.class", "a/C.class" );
+
+        final ClassSpace space = new URLClassSpace( getClass().getClassLoader(), new URL[] { jar.toURI().toURL() } );
+        final List<URL> expected = Collections.list( new DefaultClassFinder().findClasses( space ) );
+        final List<URL> actual = Collections.list( new ModuleClassFinder().findClasses( space ) );
+
+        assertEquals( 2, expected.size() );
+        assertEquals( expected, actual );
+    }
+
+    public void testMultiReleaseJar()
+        throws IOException
+    {
+        writeJar( true, "a/B.class", "a/C.class", "META-INF/versions/9/a/B.class", "META-INF/versions/9/a/D.class",
+                  "META-INF/versions/99999/a/C.class", "META-INF/versions/bad/a/E.class" );
+
+        final List<String> names = new ArrayList<String>();
+        for ( final Iterator<String> i = new ZipEntryIterator( jar.toURI().toURL() ); i.hasNext(); )
+        {
+            names.add( i.next() );
+        }
+
+        if ( ZipEntryIterator.RUNTIME_RELEASE < 9 )
+        {
+            assertTrue( names.contains( "META-INF/versions/9/a/B.class" ) );
+            return;
+        }
+
+        assertEquals( "[META-INF/MANIFEST.MF, a/B.class, a/C.class, a/D.class]", names.toString() );
+
+        final ClassSpace space = new URLClassSpace( getClass().getClassLoader(), new URL[] { jar.toURI().toURL() } );
+        final List<String> paths = new ArrayList<String>();
+        for ( final URL url : Collections.list( new ModuleClassFinder().findClasses( space ) ) )
+        {
+            paths.add( url.getPath().substring( url.getPath().indexOf( "!/" ) + 2 ) );
+        }
+        assertEquals( "[META-INF/versions/9/a/B.class, a/C.class, META-INF/versions/9/a/D.class]", paths.toString() );
+    }
+
+    private void writeJar( final boolean multiRelease, final String... names )
+        throws IOException
+    {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        if ( multiRelease )
+        {
+            manifest.getMainAttributes().putValue( "Multi-Release", "true" );
+        }
+        final JarOutputStream out = new JarOutputStream( new FileOutputStream( jar ), manifest );
+        try
+        {
+            for ( final String name : names )
+            {
+                out.putNextEntry( new ZipEntry( name ) );
+                out.write( name.getBytes( "UTF-8" ) );
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
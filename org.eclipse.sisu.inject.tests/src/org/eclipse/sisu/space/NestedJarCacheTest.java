@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+public class NestedJarCacheTest
+    extends TestCase
+{
+    public void testNestedEntries()
+        throws IOException
+    {
+        final File jar = createOuterJar( 1 );
+        final URL nestedURL = new URL( "jar:" + jar.toURI().toURL() + "!/lib/inner.jar" );
+
+        final List<String> contents = new ArrayList<String>();
+        final Enumeration<URL> e = new ResourceEnumeration( "a", "*.txt", true, new URL[] { nestedURL } );
+        while ( e.hasMoreElements() )
+        {
+            contents.add( read( e.nextElement() ) );
+        }
+        assertEquals( 3, contents.size() );
+        assertTrue( contents.contains( "1:a/One.txt" ) );
+        assertTrue( contents.contains( "1:a/b/Two.txt" ) );
+        assertTrue( contents.contains( "1:a/b/c/Three.txt" ) );
+
+        try
+        {
+            read( new URL( nestedURL, "#a/Missing.txt", new ResourceEnumeration.NestedJarHandler() ) );
+            fail( "Expected IOException" );
+        }
+        catch ( final IOException ioe )
+        {
+        }
+    }
+
+    public void testIndexedCopyIsReused()
+        throws IOException
+    {
+        final File jar = createOuterJar( 1 );
+        final URL nestedURL = new URL( "jar:" + jar.toURI().toURL() + "!/lib/inner.jar" );
+
+        final NestedJarCache cache = new NestedJarCache();
+        assertSame( cache.zipFile( nestedURL ), cache.zipFile( nestedURL ) );
+    }
+
+    public void testIndexedCopyIsRefreshed()
+        throws IOException
+    {
+        final File jar = createOuterJar( 1 );
+        final URL nestedURL = new URL( "jar:" + jar.toURI().toURL() + "!/lib/inner.jar" );
+        final URL entryURL = new URL( nestedURL, "#a/One.txt", new ResourceEnumeration.NestedJarHandler() );
+
+        assertEquals( "1:a/One.txt", read( entryURL ) );
+
+        writeOuterJar( jar, 2 );
+        assertTrue( jar.setLastModified( jar.lastModified() - 60000 ) );
+
+        assertEquals( "2:a/One.txt", read( entryURL ) );
+    }
+
+    private static File createOuterJar( final int version )
+        throws IOException
+    {
+        final File jar = File.createTempFile( "sisu", ".jar" );
+        jar.deleteOnExit();
+        writeOuterJar( jar, version );
+        return jar;
+    }
+
+    private static void writeOuterJar( final File jar, final int version )
+        throws IOException
+    {
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            out.putNextEntry( new ZipEntry( "lib/inner.jar" ) );
+            out.write( createInnerJar( version, "a/One.txt", "a/b/Two.txt", "a/b/c/Three.txt", "b/Four.txt" ) );
+            out.closeEntry();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static byte[] createInnerJar( final int version, final String... names )
+        throws IOException
+    {
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        final ZipOutputStream out = new ZipOutputStream( buf );
+        try
+        {
+            for ( final String name : names )
+            {
+                out.putNextEntry( new ZipEntry( name ) );
+                out.write( ( version + ":" + name ).getBytes( "UTF-8" ) );
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return buf.toByteArray();
+    }
+
+    private static String read( final URL url )
+        throws IOException
+    {
+        final InputStream in = Streams.open( url );
+        try
+        {
+            final OutputStream buf = new ByteArrayOutputStream();
+            for ( int b = in.read(); b >= 0; b = in.read() )
+            {
+                buf.write( b );
+            }
+            return buf.toString();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -10,7 +10,9 @@
  *******************************************************************************/
 package org.eclipse.sisu.space;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.MalformedURLException;
@@ -144,6 +146,36 @@ public class QualifiedScanningTest
         assertTrue( listener.clazzes.contains( E.class ) );
     }
 
+    public void testParallelScanning()
+    {
+        final ClassSpace space =
+            new URLClassSpace( getClass().getClassLoader(), new URL[] { getClass().getResource( "" ) } );
+
+        final TestListener sequentialListener = new TestListener();
+        new SpaceScanner( space, SpaceModule.LOCAL_SCAN, 1 ).accept( new QualifiedTypeVisitor( sequentialListener ) );
+
+        final TestListener parallelListener = new TestListener();
+        new SpaceScanner( space, SpaceModule.LOCAL_SCAN, 4 ).accept( new QualifiedTypeVisitor( parallelListener ) );
+
+        assertEquals( 37, parallelListener.clazzes.size() );
+        assertEquals( sequentialListener.clazzes, parallelListener.clazzes );
+        assertEquals( sequentialListener.sources, parallelListener.sources );
+    }
+
+    public void testPrefilter()
+        throws IOException
+    {
+        assertTrue( QualifierCache.mayBeQualified( classBytes( C.class ) ) );
+        assertTrue( QualifierCache.mayBeQualified( classBytes( D.class ) ) );
+
+        assertFalse( QualifierCache.mayBeQualified( classBytes( A.class ) ) );
+        assertFalse( QualifierCache.mayBeQualified( classBytes( B.class ) ) );
+        assertFalse( QualifierCache.mayBeQualified( classBytes( F.class ) ) );
+        assertFalse( QualifierCache.mayBeQualified( classBytes( G.class ) ) ); // only JSR330 scope annotation
+
+        assertTrue( QualifierCache.mayBeQualified( new byte[] { 1, 2, 3 } ) ); // leave broken classes to ASM
+    }
+
     public void testFilteredScanning()
     {
         final TestListener listener = new TestListener();
@@ -265,6 +297,58 @@ public class QualifiedScanningTest
         assertFalse( SpaceModule.LOCAL_INDEX.findClasses( brokenResourceSpace ).hasMoreElements() );
     }
 
+    public void testBrokenReplay()
+    {
+        final ClassSpace space =
+            new URLClassSpace( getClass().getClassLoader(), new URL[] { getClass().getResource( "" ) } );
+
+        for ( final int threads : new int[] { 1, 4 } )
+        {
+            final List<String> visited = new ArrayList<String>();
+            new SpaceScanner( space, SpaceModule.LOCAL_SCAN, threads ).accept( new SpaceVisitor()
+            {
+                public void enterSpace( final ClassSpace _space )
+                {
+                    // no-op
+                }
+
+                public ClassVisitor visitClass( final URL url )
+                {
+                    return new ClassVisitor()
+                    {
+                        public void enterClass( final int modifiers, final String name, final String _extends,
+                                                final String[] _implements )
+                        {
+                            if ( name.endsWith( "$C" ) )
+                            {
+                                throw new TypeNotPresentException( name, null );
+                            }
+                            visited.add( name );
+                        }
+
+                        public AnnotationVisitor visitAnnotation( final String desc )
+                        {
+                            return null;
+                        }
+
+                        public void leaveClass()
+                        {
+                            // no-op
+                        }
+                    };
+                }
+
+                public void leaveSpace()
+                {
+                    // no-op
+                }
+            } );
+
+            assertTrue( visited.contains( D.class.getName().replace( '.', '/' ) ) );
+            assertFalse( visited.contains( C.class.getName().replace( '.', '/' ) ) );
+        }
+    }
+
     public void testSourceDetection()
         throws MalformedURLException
     {
@@ -353,4 +437,24 @@ public class QualifiedScanningTest
         new SpaceScanner( space ).accept( new QualifiedTypeVisitor( listener ) );
         assertEquals( 0, listener.clazzes.size() );
     }
+
+    static byte[] classBytes( final Class<?> clazz )
+        throws IOException
+    {
+        final String name = clazz.getName();
+        final InputStream in = clazz.getResourceAsStream( name.substring( name.lastIndexOf( '.' ) + 1 ) + ".class" );
+        try
+        {
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            for ( int b = in.read(); b >= 0; b = in.read() )
+            {
+                buf.write( b );
+            }
+            return buf.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
 }
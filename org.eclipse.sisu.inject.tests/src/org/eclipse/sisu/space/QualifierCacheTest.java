@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.eclipse.sisu.space.QualifiedScanningTest.C;
+import org.eclipse.sisu.space.QualifiedScanningTest.D;
+import org.eclipse.sisu.space.QualifiedScanningTest.G;
+import org.eclipse.sisu.space.QualifiedScanningTest.Legacy;
+import org.eclipse.sisu.space.QualifiedScanningTest.TestListener;
+
+import junit.framework.TestCase;
+
+public class QualifierCacheTest
+    extends TestCase
+{
+    private static final String LEGACY_DESC = SpaceScanner.jvmDescriptor( Legacy.class );
+
+    private static final String SINGLETON_DESC = "Ljavax/inject/Singleton;";
+
+    @Retention( RetentionPolicy.RUNTIME )
+    @interface Marker
+    {
+    }
+
+    @Marker
+    static class Marked
+    {
+    }
+
+    private ClassSpace space;
+
+    @Override
+    protected void setUp()
+    {
+        space = new URLClassSpace( getClass().getClassLoader(), new URL[] { getClass().getResource( "" ) } );
+    }
+
+    public void testBatchResolution()
+    {
+        final TestListener listener = new TestListener();
+        final QualifiedTypeVisitor visitor = new QualifiedTypeVisitor( listener );
+
+        visitor.enterSpace( space );
+
+        visitClass( visitor, D.class, LEGACY_DESC );
+        visitClass( visitor, G.class, SINGLETON_DESC );
+        visitClass( visitor, C.class, "Ljavax/inject/Named;" );
+
+        // unknown annotations are resolved after the scan, and types are reported in scanning order
+        assertTrue( listener.clazzes.isEmpty() );
+
+        visitor.leaveSpace();
+
+        assertEquals( Arrays.<Class<?>> asList( D.class, C.class ), listener.clazzes );
+    }
+
+    public void testSharedStore()
+        throws IOException
+    {
+        final QualifierStore store = new QualifierStore();
+        final QualifierCache cache = new QualifierCache( store );
+
+        assertNull( cache.lookup( space, LEGACY_DESC ) );
+
+        final Map<String, Boolean> results = cache.resolve( space, Arrays.asList( LEGACY_DESC, SINGLETON_DESC ) );
+        assertEquals( Boolean.TRUE, results.get( LEGACY_DESC ) );
+        assertEquals( Boolean.FALSE, results.get( SINGLETON_DESC ) );
+
+        assertEquals( Boolean.TRUE, cache.lookup( space, LEGACY_DESC ) );
+        assertNull( cache.lookup( new URLClassSpace( getClass().getClassLoader() ), LEGACY_DESC ) );
+
+        final String location = QualifierStore.locationOf( space.getResource( Legacy.class.getName().replace( '.', '/' )
+            + ".class" ) );
+
+        assertEquals( Boolean.TRUE, store.get( location ) );
+        assertTrue( store.isDirty() );
+
+        final File cacheDir = File.createTempFile( "sisu", "cache" );
+        cacheDir.delete();
+        try
+        {
+            new ScanCache( cacheDir ).storeQualifiers( store );
+            assertFalse( store.isDirty() );
+
+            final QualifierStore persistedStore = new QualifierStore();
+            new ScanCache( cacheDir ).loadQualifiers( persistedStore );
+
+            assertEquals( Boolean.TRUE, persistedStore.get( location ) );
+            assertFalse( persistedStore.isDirty() );
+        }
+        finally
+        {
+            for ( final File f : cacheDir.listFiles() )
+            {
+                f.delete();
+            }
+            cacheDir.delete();
+        }
+    }
+
+    public void testPrefilterIgnoresOtherSpaces()
+        throws IOException
+    {
+        final String markerDesc = SpaceScanner.jvmDescriptor( Marker.class );
+        assertFalse( new QualifierCache().qualify( space, markerDesc ) );
+
+        // not a qualifier here, but the same descriptor could be a qualifier in another space
+        assertTrue( QualifierCache.mayBeQualified( QualifiedScanningTest.classBytes( Marked.class ) ) );
+    }
+
+    private static void visitClass( final QualifiedTypeVisitor visitor, final Class<?> clazz, final String desc )
+    {
+        final String name = clazz.getName().replace( '.', '/' );
+        visitor.visitClass( clazz.getClassLoader().getResource( name + ".class" ) );
+        visitor.enterClass( 0, name, "java/lang/Object", null );
+        visitor.visitAnnotation( desc );
+        visitor.leaveClass();
+    }
+}
@@ -0,0 +1,536 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+import junit.framework.TestCase;
+
+public class ScanCacheTest
+    extends TestCase
+{
+    @Retention( RetentionPolicy.RUNTIME )
+    @interface Values
+    {
+        int[] ints();
+
+        long[] longs();
+
+        boolean[] booleans();
+
+        char[] chars();
+
+        byte[] bytes();
+
+        short[] shorts();
+
+        float[] floats();
+
+        double[] doubles();
+
+        String[] strings();
+    }
+
+    @Values( ints = { 1, -2 }, longs = 3, booleans = { true, false }, chars = 'x', bytes = { 4, 5 }, shorts = 6,
+             floats = 7.5f, doubles = { 8.25, 9 }, strings = { "a", "b" } )
+    static class ArrayValues
+    {
+    }
+
+    private File cacheDir;
+
+    private File jar;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        cacheDir = File.createTempFile( "sisu", "cache" );
+        cacheDir.delete();
+        jar = File.createTempFile( "sisu", ".jar" );
+        copyClassesToJar( jar );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        final File[] files = cacheDir.listFiles();
+        if ( null != files )
+        {
+            for ( final File f : files )
+            {
+                f.delete();
+            }
+        }
+        cacheDir.delete();
+        jar.delete();
+    }
+
+    public void testCachedScanning()
+        throws IOException
+    {
+        final ClassSpace space = new URLClassSpace( getClass().getClassLoader(), new URL[] { jar.toURI().toURL() } );
+
+        final List<Class<?>> expected = scan( new SpaceScanner( space ) );
+        assertEquals( 3, expected.size() );
+
+        final ScanCache cache = new ScanCache( cacheDir );
+
+        assertEquals( expected, scan( new SpaceScanner( space, cache ) ) );
+        assertEquals( 1, cachedScanCount() );
+        assertTrue( new File( cacheDir, ScanCache.QUALIFIERS_NAME ).isFile() );
+
+        final String fingerprint = cache.fingerprint( jar.toURI().toURL() );
+        assertNotNull( cache.load( fingerprint ) );
+
+        assertEquals( expected, scan( new SpaceScanner( space, cache ) ) );
+        assertEquals( 1, cachedScanCount() );
+
+        assertTrue( jar.setLastModified( jar.lastModified() - 60000 ) );
+        final String updatedFingerprint = cache.fingerprint( jar.toURI().toURL() );
+        assertFalse( fingerprint.equals( updatedFingerprint ) );
+        assertNull( cache.load( updatedFingerprint ) );
+
+        assertEquals( expected, scan( new SpaceScanner( space, cache ) ) );
+        assertEquals( 2, cachedScanCount() );
+    }
+
+    public void testIdleEntriesEvicted()
+    {
+        final ClassRecord[] records = {};
+        final long longAgo = System.currentTimeMillis() - 60L * 24 * 60 * 60 * 1000;
+
+        final ScanCache cache = new ScanCache( cacheDir );
+        cache.store( "idle", records );
+        cache.store( "used", records );
+        assertEquals( 2, cachedScanCount() );
+
+        for ( final File f : cacheDir.listFiles() )
+        {
+            assertTrue( f.setLastModified( longAgo ) );
+        }
+
+        final ScanCache nextRun = new ScanCache( cacheDir );
+        assertNotNull( nextRun.load( "used" ) );
+        nextRun.store( "new", records );
+        assertEquals( 2, cachedScanCount() );
+
+        assertNull( nextRun.load( "idle" ) );
+        assertNotNull( nextRun.load( "used" ) );
+        assertNotNull( nextRun.load( "new" ) );
+    }
+
+    public void testUncachedEntries()
+        throws IOException
+    {
+        final ScanCache cache = new ScanCache( cacheDir );
+
+        assertNull( cache.fingerprint( getClass().getResource( "" ) ) );
+        assertNull( cache.fingerprint( new URL( "file:/missing.jar" ) ) );
+        assertNull( cache.fingerprint( new URL( "jar:" + jar.toURI().toURL() + "!/nested.jar" ) ) );
+        assertNull( cache.load( "missing" ) );
+    }
+
+    public void testSharedResults()
+        throws IOException
+    {
+        final URL[] path = { jar.toURI().toURL() };
+        final ClassSpace space1 = new URLClassSpace( URLClassLoader.newInstance( path, getClass().getClassLoader() ) );
+        final ClassSpace space2 = new URLClassSpace( URLClassLoader.newInstance( path, getClass().getClassLoader() ) );
+
+        final List<URL> urls1 = visitedURLs( new SpaceScanner( space1 ) );
+        final List<URL> urls2 = visitedURLs( new SpaceScanner( space2 ) );
+
+        assertFalse( urls1.isEmpty() );
+        assertEquals( urls1, urls2 );
+        for ( int i = 0; i < urls1.size(); i++ )
+        {
+            assertSame( urls1.get( i ), urls2.get( i ) ); // replayed from the same results
+        }
+
+        assertTrue( jar.setLastModified( jar.lastModified() - 60000 ) );
+
+        final List<URL> urls3 = visitedURLs( new SpaceScanner( space2 ) );
+        assertEquals( urls1, urls3 );
+        assertNotSame( urls1.get( 0 ), urls3.get( 0 ) ); // changed jar was scanned again
+    }
+
+    public void testBundleResults()
+        throws IOException
+    {
+        final ScanCache cache = new ScanCache( cacheDir );
+
+        final ClassSpace space = new BundleClassSpace( fakeBundle( jar, 1000 ) );
+        final List<URL> urls = visitedURLs( new SpaceScanner( space, cache ) );
+        assertFalse( urls.isEmpty() );
+        assertEquals( 3, scan( new SpaceScanner( space, cache ) ).size() );
+        assertEquals( 1, cachedScanCount() );
+
+        // same bundle identity, but served from a different location: should replay rebased results
+        final File movedJar = File.createTempFile( "sisu", ".jar" );
+        try
+        {
+            copy( jar, movedJar );
+            assertTrue( jar.delete() );
+            final ClassSpace movedSpace = new BundleClassSpace( fakeBundle( movedJar, 1000 ) );
+            final List<URL> movedURLs = visitedURLs( new SpaceScanner( movedSpace, cache ) );
+            assertEquals( urls.size(), movedURLs.size() );
+            for ( int i = 0; i < urls.size(); i++ )
+            {
+                assertEquals( urls.get( i ).toString().replace( jar.toURI().toString(), movedJar.toURI().toString() ),
+                              movedURLs.get( i ).toString() );
+            }
+            assertEquals( 1, cachedScanCount() );
+
+            // updated bundle is scanned again, and its results replace the old ones
+            final ClassSpace updatedSpace = new BundleClassSpace( fakeBundle( movedJar, 2000 ) );
+            final List<URL> updatedURLs = visitedURLs( new SpaceScanner( updatedSpace, cache ) );
+            assertEquals( movedURLs, updatedURLs );
+            assertNotSame( movedURLs.get( 0 ), updatedURLs.get( 0 ) );
+            assertEquals( 1, cachedScanCount() );
+        }
+        finally
+        {
+            movedJar.delete();
+        }
+    }
+
+    public void testBundleFragments()
+        throws IOException
+    {
+        final String plainFingerprint = new BundleClassSpace( fakeBundle( jar, 1000 ) ).fingerprint();
+        assertEquals( "bundle:42|test.bundle|1.0.0|1000", plainFingerprint );
+
+        final String fingerprint =
+            new BundleClassSpace( fakeBundle( jar, 1000, fakeBundle( jar, 3000 ) ) ).fingerprint();
+        assertEquals( "bundle:42|test.bundle|1.0.0|1000+42|test.bundle|1.0.0|3000", fingerprint );
+
+        // updated fragment changes the fingerprint of its host
+        final String updatedFingerprint =
+            new BundleClassSpace( fakeBundle( jar, 1000, fakeBundle( jar, 4000 ) ) ).fingerprint();
+        assertFalse( fingerprint.equals( updatedFingerprint ) );
+    }
+
+    private static Bundle fakeBundle( final File file, final long lastModified )
+        throws IOException
+    {
+        return fakeBundle( file, lastModified, null );
+    }
+
+    private static Bundle fakeBundle( final File file, final long lastModified, final Bundle fragment )
+        throws IOException
+    {
+        final BundleWiring wiring;
+        if ( null != fragment )
+        {
+            final BundleWiring fragmentWiring = stub( BundleWiring.class, "getBundle", fragment );
+            final BundleWire wire = stub( BundleWire.class, "getRequirerWiring", fragmentWiring );
+            wiring = stub( BundleWiring.class, "getProvidedWires", Collections.singletonList( wire ) );
+        }
+        else
+        {
+            wiring = null;
+        }
+        return (Bundle) Proxy.newProxyInstance( Bundle.class.getClassLoader(), new Class<?>[] { Bundle.class },
+                                                new FakeBundle( file.toURI().toURL(), lastModified, wiring ) );
+    }
+
+    private static <T> T stub( final Class<T> clazz, final String methodName, final Object result )
+    {
+        final Object proxy = Proxy.newProxyInstance( clazz.getClassLoader(), new Class<?>[] { clazz }, //
+                                                     new Stub( methodName, result ) );
+        return clazz.cast( proxy );
+    }
+
+    private static void copy( final File from, final File to )
+        throws IOException
+    {
+        final InputStream in = new FileInputStream( from );
+        try
+        {
+            final FileOutputStream out = new FileOutputStream( to );
+            try
+            {
+                final byte[] buf = new byte[4096];
+                for ( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+                {
+                    out.write( buf, 0, n );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static List<URL> visitedURLs( final SpaceScanner scanner )
+    {
+        final List<URL> urls = new ArrayList<URL>();
+        scanner.accept( new SpaceVisitor()
+        {
+            public void enterSpace( final ClassSpace space )
+            {
+                // no-op
+            }
+
+            public ClassVisitor visitClass( final URL url )
+            {
+                urls.add( url );
+                return null;
+            }
+
+            public void leaveSpace()
+            {
+                // no-op
+            }
+        } );
+        return urls;
+    }
+
+    private static List<Class<?>> scan( final SpaceScanner scanner )
+    {
+        final List<Class<?>> clazzes = new ArrayList<Class<?>>();
+        scanner.accept( new QualifiedTypeVisitor( new QualifiedTypeListener()
+        {
+            public void hear( final Class<?> clazz, final Object source )
+            {
+                clazzes.add( clazz );
+            }
+        } ) );
+        return clazzes;
+    }
+
+    private int cachedScanCount()
+    {
+        int count = 0;
+        for ( final String name : cacheDir.list() )
+        {
+            if ( !ScanCache.QUALIFIERS_NAME.equals( name ) )
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void copyClassesToJar( final File file )
+        throws IOException
+    {
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            for ( final File f : FileEntryIterator.toFile( getClass().getResource( "" ) ).listFiles() )
+            {
+                if ( f.getName().startsWith( "QualifiedScanningTest" ) )
+                {
+                    out.putNextEntry( new ZipEntry( "org/eclipse/sisu/space/" + f.getName() ) );
+                    final InputStream in = new FileInputStream( f );
+                    try
+                    {
+                        final byte[] buf = new byte[4096];
+                        for ( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+                        {
+                            out.write( buf, 0, n );
+                        }
+                    }
+                    finally
+                    {
+                        in.close();
+                    }
+                    out.closeEntry();
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    public void testPrimitiveArrayValues()
+        throws IOException
+    {
+        final URL url = ArrayValues.class.getResource( "ScanCacheTest$ArrayValues.class" );
+        final ClassRecord record = new ClassRecord( url );
+        SpaceScanner.accept( record, url );
+
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream( buf );
+        record.writeTo( out );
+        out.close();
+
+        final ClassRecord copy =
+            ClassRecord.readFrom( new DataInputStream( new ByteArrayInputStream( buf.toByteArray() ) ) );
+
+        final List<Object> values = new ArrayList<Object>();
+        copy.replay( new ClassVisitor()
+        {
+            public void enterClass( final int modifiers, final String name, final String _extends,
+                                    final String[] _implements )
+            {
+                // no-op
+            }
+
+            public AnnotationVisitor visitAnnotation( final String desc )
+            {
+                return new AnnotationVisitor()
+                {
+                    public void enterAnnotation()
+                    {
+                        // no-op
+                    }
+
+                    public void visitElement( final String name, final Object value )
+                    {
+                        values.add( value );
+                    }
+
+                    public void leaveAnnotation()
+                    {
+                        // no-op
+                    }
+                };
+            }
+
+            public void leaveClass()
+            {
+                // no-op
+            }
+        } );
+
+        assertEquals( 9, values.size() );
+        assertTrue( Arrays.equals( new int[] { 1, -2 }, (int[]) values.get( 0 ) ) );
+        assertTrue( Arrays.equals( new long[] { 3 }, (long[]) values.get( 1 ) ) );
+        assertTrue( Arrays.equals( new boolean[] { true, false }, (boolean[]) values.get( 2 ) ) );
+        assertTrue( Arrays.equals( new char[] { 'x' }, (char[]) values.get( 3 ) ) );
+        assertTrue( Arrays.equals( new byte[] { 4, 5 }, (byte[]) values.get( 4 ) ) );
+        assertTrue( Arrays.equals( new short[] { 6 }, (short[]) values.get( 5 ) ) );
+        assertTrue( Arrays.equals( new float[] { 7.5f }, (float[]) values.get( 6 ) ) );
+        assertTrue( Arrays.equals( new double[] { 8.25, 9 }, (double[]) values.get( 7 ) ) );
+        assertTrue( Arrays.equals( new Object[] { "a", "b" }, (Object[]) values.get( 8 ) ) );
+    }
+
+    static final class Stub
+        implements InvocationHandler
+    {
+        private final String methodName;
+
+        private final Object result;
+
+        Stub( final String methodName, final Object result )
+        {
+            this.methodName = methodName;
+            this.result = result;
+        }
+
+        public Object invoke( final Object proxy, final Method method, final Object[] args )
+        {
+            return methodName.equals( method.getName() ) ? result : null;
+        }
+    }
+
+    static final class FakeBundle
+        implements InvocationHandler
+    {
+        private final URL file;
+
+        private final URL root;
+
+        private final long lastModified;
+
+        private final BundleWiring wiring;
+
+        FakeBundle( final URL file, final long lastModified, final BundleWiring wiring )
+            throws IOException
+        {
+            this.file = file;
+            this.root = new URL( "jar:" + file + "!/" );
+            this.lastModified = lastModified;
+            this.wiring = wiring;
+        }
+
+        public Object invoke( final Object proxy, final Method method, final Object[] args )
+            throws Exception
+        {
+            final String name = method.getName();
+            if ( "getEntry".equals( name ) )
+            {
+                return new URL( root, (String) args[0] );
+            }
+            if ( "findEntries".equals( name ) )
+            {
+                final boolean recurse = ( (Boolean) args[2] ).booleanValue();
+                return new ResourceEnumeration( (String) args[0], (String) args[1], recurse, new URL[] { file } );
+            }
+            if ( "loadClass".equals( name ) )
+            {
+                return ScanCacheTest.class.getClassLoader().loadClass( (String) args[0] );
+            }
+            if ( "getHeaders".equals( name ) )
+            {
+                return new Hashtable<String, String>();
+            }
+            if ( "getBundleId".equals( name ) )
+            {
+                return Long.valueOf( 42 );
+            }
+            if ( "getSymbolicName".equals( name ) )
+            {
+                return "test.bundle";
+            }
+            if ( "getVersion".equals( name ) )
+            {
+                return new Version( 1, 0, 0 );
+            }
+            if ( "getLastModified".equals( name ) )
+            {
+                return Long.valueOf( lastModified );
+            }
+            if ( "adapt".equals( name ) && BundleWiring.class.equals( args[0] ) )
+            {
+                return wiring;
+            }
+            return null;
+        }
+    }
+}
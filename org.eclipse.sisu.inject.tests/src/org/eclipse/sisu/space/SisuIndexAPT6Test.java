@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Named;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+public class SisuIndexAPT6Test
+    extends TestCase
+{
+    private File srcDir;
+
+    private File outDir;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        srcDir = tempDir( "src" );
+        outDir = tempDir( "out" );
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        delete( srcDir );
+        delete( outDir );
+    }
+
+    public void testMergedIndex()
+        throws IOException
+    {
+        writeSource( "A", true );
+        compile( "A" );
+        assertEquals( Arrays.asList( "test.A" ), readIndex() );
+
+        writeSource( "B", true );
+        compile( "B" );
+        assertEquals( Arrays.asList( "test.A", "test.B" ), readIndex() );
+    }
+
+    public void testRecompiledWithoutQualifier()
+        throws IOException
+    {
+        writeSource( "A", true );
+        writeSource( "B", true );
+        compile( "A", "B" );
+        assertEquals( Arrays.asList( "test.A", "test.B" ), readIndex() );
+
+        writeSource( "B", false );
+        compile( "A", "B" );
+        assertEquals( Arrays.asList( "test.A" ), readIndex() );
+    }
+
+    public void testDeletedClass()
+        throws IOException
+    {
+        writeSource( "A", true );
+        writeSource( "B", true );
+        compile( "A", "B" );
+        assertEquals( Arrays.asList( "test.A", "test.B" ), readIndex() );
+
+        assertTrue( new File( srcDir, "test/B.java" ).delete() );
+        assertTrue( new File( outDir, "test/B.class" ).delete() );
+
+        // missing classes are kept unless pruning is requested
+        compile( "A" );
+        assertEquals( Arrays.asList( "test.A", "test.B" ), readIndex() );
+
+        compile( "-Asisu.pruneMissing=true", "A" );
+        assertEquals( Arrays.asList( "test.A" ), readIndex() );
+    }
+
+    public void testIncrementalIndex()
+        throws IOException
+    {
+        writeSource( "A", true );
+        compile( "A" );
+        assertEquals( Arrays.asList( "test.A" ), readIndex() );
+
+        // incremental builds rewrite the index from the classes they were given
+        writeSource( "B", true );
+        compile( "-Asisu.incremental=true", "B" );
+        assertEquals( Arrays.asList( "test.B" ), readIndex() );
+    }
+
+    private void writeSource( final String name, final boolean qualified )
+        throws IOException
+    {
+        final File file = new File( srcDir, "test/" + name + ".java" );
+        file.getParentFile().mkdirs();
+        final Writer writer = new FileWriter( file );
+        try
+        {
+            writer.write( "package test;\n" );
+            writer.write( qualified ? "@javax.inject.Named\n" : "" );
+            writer.write( "public class " + name + " {}\n" );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private void compile( final String... args )
+        throws IOException
+    {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull( "Tests must run on a JDK", compiler );
+
+        final URL injectJar = Named.class.getProtectionDomain().getCodeSource().getLocation();
+        final List<String> options = new ArrayList<String>();
+        Collections.addAll( options, "-d", outDir.getPath() );
+        final String classPath = outDir.getPath() + File.pathSeparator + FileEntryIterator.toFile( injectJar );
+        Collections.addAll( options, "-classpath", classPath );
+
+        final List<File> sources = new ArrayList<File>();
+        for ( final String arg : args )
+        {
+            if ( arg.startsWith( "-" ) )
+            {
+                options.add( arg );
+            }
+            else
+            {
+                sources.add( new File( srcDir, "test/" + arg + ".java" ) );
+            }
+        }
+
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager( null, null, null );
+        try
+        {
+            final Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles( sources );
+            final JavaCompiler.CompilationTask task = compiler.getTask( null, fileManager, null, options, null, units );
+            task.setProcessors( Collections.singletonList( new SisuIndexAPT6() ) );
+            assertTrue( task.call().booleanValue() );
+        }
+        finally
+        {
+            fileManager.close();
+        }
+    }
+
+    private List<String> readIndex()
+        throws IOException
+    {
+        final List<String> names = new ArrayList<String>();
+        final BufferedReader reader =
+            new BufferedReader( new FileReader( new File( outDir, "META-INF/sisu/javax.inject.Named" ) ) );
+        try
+        {
+            for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                names.add( line );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return names;
+    }
+
+    private static File tempDir( final String prefix )
+        throws IOException
+    {
+        final File dir = File.createTempFile( prefix, "dir" );
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] files = file.listFiles();
+        if ( null != files )
+        {
+            for ( final File f : files )
+            {
+                delete( f );
+            }
+        }
+        file.delete();
+    }
+}
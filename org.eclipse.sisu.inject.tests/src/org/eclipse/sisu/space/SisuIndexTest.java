@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class SisuIndexTest
+    extends TestCase
+{
+    private static final IndexedClassFinder LOCAL_INDEX =
+        new IndexedClassFinder( "META-INF/sisu/javax.inject.Named", false );
+
+    private File targetDir;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        targetDir = File.createTempFile( "sisu", "index" );
+        targetDir.delete();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        delete( targetDir );
+    }
+
+    public void testBinaryIndex()
+        throws IOException
+    {
+        final URL packageURL = getClass().getResource( "" );
+        new SisuIndex( targetDir ).index( new URLClassSpace( getClass().getClassLoader(), new URL[] { packageURL } ) );
+
+        assertTrue( new File( targetDir, "META-INF/sisu/javax.inject.Named" ).isFile() );
+        assertTrue( new File( targetDir, "META-INF/sisu/javax.inject.Named.bin" ).isFile() );
+
+        final ClassSpace space =
+            new URLClassSpace( getClass().getClassLoader(), new URL[] { targetDir.toURI().toURL() } );
+
+        final Map<String, IndexedType> types = new HashMap<String, IndexedType>();
+        for ( final IndexedType type : LOCAL_INDEX.indexedTypes( space ) )
+        {
+            types.put( type.clazzName, type );
+        }
+
+        final IndexedType runnable = types.get( QualifiedProviderTest.CountingRunnable.class.getName() );
+        assertTrue( runnable.isKnown() );
+        assertEquals( "counting", runnable.name );
+        assertEquals( Arrays.asList( Runnable.class.getName() ), Arrays.asList( runnable.types ) );
+        assertEquals( IndexedType.KNOWN, runnable.flags );
+
+        final IndexedType item = types.get( BeanWatcherTest.CItem.class.getName() );
+        assertEquals( "", item.name );
+        assertNull( item.types );
+        assertTrue( ( item.flags & IndexedType.EAGER_SINGLETON ) != 0 );
+
+        final IndexedType module = types.get( QualifiedModuleTest.CustomModule.class.getName() );
+        assertEquals( IndexedType.KNOWN | IndexedType.MODULE, module.flags );
+
+        final List<String> names = new ArrayList<String>();
+        for ( final String name : LOCAL_INDEX.indexedNames( space ) )
+        {
+            names.add( name );
+        }
+        assertEquals( types.keySet(), new HashSet<String>( names ) );
+    }
+
+    public void testIndexedBinding()
+        throws IOException
+    {
+        final URL packageURL = getClass().getResource( "" );
+        final ClassSpace scanSpace = new URLClassSpace( getClass().getClassLoader(), new URL[] { packageURL } );
+        new SisuIndex( targetDir ).index( scanSpace );
+
+        final List<Class<?>> scanned = new ArrayList<Class<?>>();
+        new SpaceScanner( scanSpace ).accept( new QualifiedTypeVisitor( new QualifiedTypeListener()
+        {
+            public void hear( final Class<?> clazz, final Object source )
+            {
+                scanned.add( clazz );
+            }
+        } ) );
+
+        final ClassSpace indexSpace =
+            new URLClassSpace( getClass().getClassLoader(), new URL[] { targetDir.toURI().toURL() } );
+
+        final List<Class<?>> indexed = new ArrayList<Class<?>>();
+        final List<Object> sources = new ArrayList<Object>();
+        new QualifiedTypeVisitor( new QualifiedTypeListener()
+        {
+            public void hear( final Class<?> clazz, final Object source )
+            {
+                indexed.add( clazz );
+                sources.add( source );
+            }
+        } ).visitIndex( indexSpace, LOCAL_INDEX.indexedTypes( indexSpace ) );
+
+        assertEquals( new HashSet<Class<?>>( scanned ), new HashSet<Class<?>>( indexed ) );
+        assertTrue( ( (String) sources.get( 0 ) ).endsWith( targetDir.getName() + '/' ) );
+    }
+
+    private static void delete( final File file )
+    {
+        final File[] files = file.listFiles();
+        if ( null != files )
+        {
+            for ( final File f : files )
+            {
+                delete( f );
+            }
+        }
+        file.delete();
+    }
+}
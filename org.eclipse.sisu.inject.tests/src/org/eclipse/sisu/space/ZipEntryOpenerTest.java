@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+public class ZipEntryOpenerTest
+    extends TestCase
+{
+    public void testJarEntries()
+        throws IOException
+    {
+        final File jar = createJar( "a/One.txt", "a/b/Two.txt" );
+        final String base = "jar:" + jar.toURI().toURL() + "!/";
+
+        final ZipEntryOpener opener = new ZipEntryOpener();
+        try
+        {
+            assertEquals( "a/One.txt", read( opener, new URL( base + "a/One.txt" ) ) );
+            assertEquals( "a/b/Two.txt", read( opener, new URL( base + "a/b/Two.txt" ) ) );
+            try
+            {
+                read( opener, new URL( base + "a/Missing.txt" ) );
+                fail( "Expected IOException" );
+            }
+            catch ( final IOException e )
+            {
+            }
+        }
+        finally
+        {
+            opener.close();
+        }
+    }
+
+    public void testOtherResources()
+        throws IOException
+    {
+        final ZipEntryOpener opener = new ZipEntryOpener();
+        try
+        {
+            final URL url = getClass().getResource( "ZipEntryOpenerTest.class" );
+            assertTrue( read( opener, url ).length() > 0 );
+            try
+            {
+                read( opener, new URL( "jar:file:/missing.jar!/a/One.txt" ) );
+                fail( "Expected IOException" );
+            }
+            catch ( final IOException e )
+            {
+            }
+        }
+        finally
+        {
+            opener.close();
+        }
+    }
+
+    private static File createJar( final String... names )
+        throws IOException
+    {
+        final File jar = File.createTempFile( "sisu", ".jar" );
+        jar.deleteOnExit();
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            for ( final String name : names )
+            {
+                out.putNextEntry( new ZipEntry( name ) );
+                out.write( name.getBytes( "UTF-8" ) );
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return jar;
+    }
+
+    private static String read( final ZipEntryOpener opener, final URL url )
+        throws IOException
+    {
+        final InputStream in = opener.open( url );
+        try
+        {
+            final StringBuilder buf = new StringBuilder();
+            for ( int b = in.read(); b >= 0; b = in.read() )
+            {
+                buf.append( (char) b );
+            }
+            return buf.toString();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
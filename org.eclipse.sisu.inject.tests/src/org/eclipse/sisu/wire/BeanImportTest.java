@@ -16,6 +16,8 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -24,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -881,6 +884,10 @@ public class BeanImportTest
 
         assertEquals( 9.0, dynamicInstance.concreteProxy.fn( 7, 2 ) );
 
+        // proxies cache their targets until the located beans change
+        assertNotNull( cachedTarget( dynamicInstance.interfaceProxy ) );
+        assertNotNull( cachedTarget( dynamicInstance.concreteProxy ) );
+
         // add new Y binding that multiplies the arguments instead of adding them
         final Injector child1 = injector.createChildInjector( new ChildWireModule( injector, new AbstractModule()
         {
@@ -899,6 +906,8 @@ public class BeanImportTest
             }
         } ) );
 
+        assertNull( cachedTarget( dynamicInstance.interfaceProxy ) );
+
         // interface proxy should now delegate to multiplying implementation
         assertEquals( 365.31, dynamicInstance.interfaceProxy.fn( 12.3, 29.7 ) );
 
@@ -979,4 +988,19 @@ public class BeanImportTest
         assertTrue( dynamicInstance.interfaceProxy.equals( dynamicInstance.interfaceProxy ) );
         assertTrue( dynamicInstance.concreteProxy.equals( dynamicInstance.concreteProxy ) );
     }
+
+    private static Object cachedTarget( final Object proxy )
+    {
+        try
+        {
+            final Field field = proxy.getClass().getDeclaredField( DynamicGlue.TARGET_HANDLE );
+            assertTrue( Modifier.isPrivate( field.getModifiers() ) && Modifier.isTransient( field.getModifiers() ) );
+            field.setAccessible( true );
+            return ( (AtomicReference<?>) field.get( proxy ) ).get();
+        }
+        catch ( final Exception e )
+        {
+            throw new AssertionError( e.toString() );
+        }
+    }
 }
@@ -12,7 +12,6 @@ package org.eclipse.sisu.inject;
 
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 
@@ -39,14 +38,14 @@ public final class DefaultBeanLocator
 
     private final RankedSequence<BindingPublisher> publishers = new RankedSequence<BindingPublisher>();
 
-    private final ConcurrentMap<Long, RankedBindings> cachedBindings = Weak.concurrentValues( 256, 1 );
+    private final MildConcurrentLongValues<RankedBindings> cachedBindings = Weak.concurrentLongValues( 256 );
 
     // reverse mapping; can't use watcher as key since it may not be unique
     private final Map<WatchedBeans, Object> cachedWatchers = Weak.values();
 
     private final ImplicitBindings implicitBindings = new ImplicitBindings( publishers );
 
-    private final Long[] typeIdHolder = new Long[1];
+    private final long[] typeIdHolder = new long[1];
 
     // ----------------------------------------------------------------------
     // Public methods
@@ -129,7 +128,7 @@ public final class DefaultBeanLocator
         }
 
         // one last round of cleanup in case more was freed
-        ( (MildConcurrentValues) cachedBindings ).compact();
+        cachedBindings.compact();
 
         return true;
     }
@@ -158,8 +157,7 @@ public final class DefaultBeanLocator
      * @param idReturn Optional holder, returns the assigned type id
      * @return Associated bindings; {@code null} if this is a new type
      */
-    @SuppressWarnings( "boxing" )
-    private RankedBindings fetchBindings( final TypeLiteral type, final Long[] idReturn )
+    private RankedBindings fetchBindings( final TypeLiteral type, final long[] idReturn )
     {
         // type hash with loader hash is nominally unique, but handle collisions just in case
         final int loaderHash = System.identityHashCode( type.getRawType().getClassLoader() );
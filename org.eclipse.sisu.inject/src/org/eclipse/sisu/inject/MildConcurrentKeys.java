@@ -11,61 +11,748 @@
 package org.eclipse.sisu.inject;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Thread-safe {@link Map} whose keys are kept alive by soft/weak {@link Reference}s.
+ * Thread-safe {@link Map} whose keys are kept alive by soft/weak {@link Reference}s.<br>
+ * <br>
+ * Keys are compared by identity directly against the referents in the table, so queries don't need to wrap the
+ * probe key in a temporary {@link Reference}. Reads are lock-free; writes are serialized and only compact cleared
+ * keys once a threshold of writes has been reached.
  */
 final class MildConcurrentKeys<K, V>
-    extends MildKeys<K, V>
-    implements ConcurrentMap<K, V>
+    implements ConcurrentMap<K, V>, MildReaper.Reapable
 {
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private static final int COMPACT_THRESHOLD = 64;
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
 
-    private final ConcurrentMap<Reference<K>, V> concurrentMap;
+    final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+
+    private final boolean soft;
+
+    private volatile AtomicReferenceArray<Entry<K, V>> table;
+
+    private int count;
+
+    private int writesSinceCompact;
+
+    private volatile boolean reaped;
 
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
-    MildConcurrentKeys( final ConcurrentMap<Reference<K>, V> map, final boolean soft )
+    MildConcurrentKeys( final int capacity, final boolean soft )
     {
-        super( map, soft );
-        this.concurrentMap = map;
+        int size = 16;
+        while ( size < capacity && size < MAXIMUM_CAPACITY )
+        {
+            size <<= 1;
+        }
+        this.table = new AtomicReferenceArray<Entry<K, V>>( size );
+        this.soft = soft;
     }
 
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
 
-    public V putIfAbsent( final K key, final V value )
+    public boolean containsKey( final Object key )
     {
-        compact();
+        // skip compact for performance reasons
 
-        return concurrentMap.putIfAbsent( mildKey( key ), value );
+        return null != findEntry( key );
     }
 
-    public V replace( final K key, final V value )
+    public boolean containsValue( final Object value )
     {
-        compact();
+        // skip compact for performance reasons
 
-        return concurrentMap.replace( mildKey( key ), value );
+        for ( final Iterator<V> itr = new ValueItr(); itr.hasNext(); )
+        {
+            if ( itr.next().equals( value ) )
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
-    public boolean replace( final K key, final V oldValue, final V newValue )
+    public V get( final Object key )
     {
-        compact();
+        // skip compact for performance reasons
+
+        final Entry<K, V> e = findEntry( key );
+        return null != e ? e.getValue() : null;
+    }
+
+    public synchronized V put( final K key, final V value )
+    {
+        compactIfNeeded();
+
+        final Entry<K, V> e = findEntry( key );
+        if ( null != e )
+        {
+            return e.setValue( value );
+        }
+        addEntry( key, value );
+        return null;
+    }
+
+    public synchronized void putAll( final Map<? extends K, ? extends V> m )
+    {
+        for ( final Map.Entry<? extends K, ? extends V> e : m.entrySet() )
+        {
+            put( e.getKey(), e.getValue() );
+        }
+    }
+
+    public synchronized V putIfAbsent( final K key, final V value )
+    {
+        compactIfNeeded();
+
+        final Entry<K, V> e = findEntry( key );
+        if ( null != e )
+        {
+            return e.getValue();
+        }
+        addEntry( key, value );
+        return null;
+    }
+
+    public synchronized V replace( final K key, final V value )
+    {
+        compactIfNeeded();
+
+        final Entry<K, V> e = findEntry( key );
+        return null != e ? e.setValue( value ) : null;
+    }
+
+    public synchronized boolean replace( final K key, final V oldValue, final V newValue )
+    {
+        compactIfNeeded();
+
+        final Entry<K, V> e = findEntry( key );
+        if ( null != e && e.getValue().equals( oldValue ) )
+        {
+            e.setValue( newValue );
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized V remove( final Object key )
+    {
+        compactIfNeeded();
+
+        final Entry<K, V> e = findEntry( key );
+        if ( null != e )
+        {
+            removeEntry( e );
+            return e.getValue();
+        }
+        return null;
+    }
+
+    public synchronized boolean remove( final Object key, final Object value )
+    {
+        compactIfNeeded();
+
+        final Entry<K, V> e = findEntry( key );
+        if ( null != e && e.getValue().equals( value ) )
+        {
+            removeEntry( e );
+            return true;
+        }
+        return false;
+    }
 
-        return concurrentMap.replace( mildKey( key ), oldValue, newValue );
+    public synchronized void clear()
+    {
+        table = new AtomicReferenceArray<Entry<K, V>>( table.length() );
+        count = 0;
+
+        drainQueue();
+    }
+
+    public boolean isEmpty()
+    {
+        return 0 == size();
     }
 
-    public boolean remove( final Object key, final Object value )
+    public synchronized int size()
     {
         compact();
 
-        return concurrentMap.remove( tempKey( key ), value );
+        return count;
+    }
+
+    public Set<K> keySet()
+    {
+        return new AbstractSet<K>()
+        {
+            @Override
+            public Iterator<K> iterator()
+            {
+                return new KeyItr();
+            }
+
+            @Override
+            public int size()
+            {
+                return MildConcurrentKeys.this.size();
+            }
+        };
+    }
+
+    public Collection<V> values()
+    {
+        return new AbstractCollection<V>()
+        {
+            @Override
+            public Iterator<V> iterator()
+            {
+                return new ValueItr();
+            }
+
+            @Override
+            public int size()
+            {
+                return MildConcurrentKeys.this.size();
+            }
+        };
+    }
+
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return new EntryItr();
+            }
+
+            @Override
+            public int size()
+            {
+                return MildConcurrentKeys.this.size();
+            }
+        };
+    }
+
+    public void useReaper()
+    {
+        reaped = true;
+    }
+
+    public synchronized int reap( final int maxCount )
+    {
+        int reclaimed = 0;
+        Reference<? extends K> ref;
+        for ( int i = 0; i < maxCount && ( ref = queue.poll() ) != null; i++ )
+        {
+            if ( removeEntry( (Entry<?, ?>) ref ) )
+            {
+                reclaimed++;
+            }
+        }
+        return reclaimed;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Compacts the map by removing cleared keys.
+     */
+    synchronized void compact()
+    {
+        for ( Reference<? extends K> ref; ( ref = queue.poll() ) != null; )
+        {
+            removeEntry( (Entry<?, ?>) ref );
+        }
+        writesSinceCompact = 0;
+    }
+
+    /**
+     * Spreads the bits of the given hash code.
+     */
+    static int spread( final int hashCode )
+    {
+        int h = hashCode;
+        h ^= h >>> 20 ^ h >>> 12;
+        return h ^ h >>> 7 ^ h >>> 4;
+    }
+
+    /**
+     * Finds the entry whose key is the exact same instance as the given key; allocation-free.
+     */
+    private Entry<K, V> findEntry( final Object key )
+    {
+        if ( null == key )
+        {
+            return null;
+        }
+        final int hash = spread( key.hashCode() );
+        final AtomicReferenceArray<Entry<K, V>> tab = table;
+        for ( Entry<K, V> e = tab.get( hash & tab.length() - 1 ); null != e; e = e.next() )
+        {
+            if ( hash == e.hash() && key == e.get() )
+            {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Amortises compaction across a number of writes.
+     */
+    private void compactIfNeeded()
+    {
+        if ( !reaped && ++writesSinceCompact >= COMPACT_THRESHOLD )
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Discards any pending notifications of cleared keys.
+     */
+    private void drainQueue()
+    {
+        while ( null != queue.poll() )
+        {
+            // ignore, table has already been reset
+        }
+        writesSinceCompact = 0;
+    }
+
+    /**
+     * Adds a new entry at the head of its bucket, growing the table when necessary.
+     */
+    private void addEntry( final K key, final V value )
+    {
+        if ( null == value )
+        {
+            throw new NullPointerException();
+        }
+        if ( ++count > table.length() * 3 / 4 )
+        {
+            resize();
+        }
+        final int hash = spread( key.hashCode() );
+        final AtomicReferenceArray<Entry<K, V>> tab = table;
+        final int index = hash & tab.length() - 1;
+        tab.set( index, mildEntry( key, hash, value, tab.get( index ) ) );
+    }
+
+    /**
+     * Removes the exact given entry from the table, if it is still present.
+     */
+    private boolean removeEntry( final Entry<?, ?> entry )
+    {
+        final AtomicReferenceArray<Entry<K, V>> tab = table;
+        final int index = entry.hash() & tab.length() - 1;
+        final Entry<K, V> head = tab.get( index );
+        for ( Entry<K, V> e = head; null != e; e = e.next() )
+        {
+            if ( entry == e )
+            {
+                tab.set( index, unlink( head, e ) );
+                count--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a new bucket chain without the given entry; entries after it are shared, those before are cloned.
+     */
+    private Entry<K, V> unlink( final Entry<K, V> head, final Entry<K, V> entry )
+    {
+        Entry<K, V> newHead = entry.next();
+        for ( Entry<K, V> e = head; e != entry; e = e.next() )
+        {
+            final K key = e.get();
+            if ( null != key )
+            {
+                newHead = mildEntry( key, e.hash(), e.getValue(), newHead );
+            }
+            else
+            {
+                count--; // collected while we were cloning
+            }
+        }
+        return newHead;
+    }
+
+    /**
+     * Doubles the table size; collected entries are dropped as part of the rehash.
+     */
+    private void resize()
+    {
+        final AtomicReferenceArray<Entry<K, V>> oldTab = table;
+        final int oldLength = oldTab.length();
+        if ( oldLength >= MAXIMUM_CAPACITY )
+        {
+            return;
+        }
+        final AtomicReferenceArray<Entry<K, V>> newTab = new AtomicReferenceArray<Entry<K, V>>( oldLength << 1 );
+        int newCount = 1; // includes the pending entry
+        for ( int i = 0; i < oldLength; i++ )
+        {
+            for ( Entry<K, V> e = oldTab.get( i ); null != e; e = e.next() )
+            {
+                final K key = e.get();
+                if ( null != key )
+                {
+                    final int index = e.hash() & newTab.length() - 1;
+                    newTab.set( index, mildEntry( key, e.hash(), e.getValue(), newTab.get( index ) ) );
+                    newCount++;
+                }
+            }
+        }
+        table = newTab;
+        count = newCount;
+        drainQueue(); // old entries are no longer in the table
+    }
+
+    /**
+     * @return Soft or weak {@link Entry} for the given key-value mapping.
+     */
+    private Entry<K, V> mildEntry( final K key, final int hash, final V value, final Entry<K, V> next )
+    {
+        return soft ? new Soft<K, V>( key, hash, value, queue, next ) : new Weak<K, V>( key, hash, value, queue, next );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Represents a {@link Reference} to a key that is also an entry in a bucket chain.
+     */
+    interface Entry<K, V>
+    {
+        K get();
+
+        int hash();
+
+        V getValue();
+
+        V setValue( V value );
+
+        Entry<K, V> next();
+    }
+
+    /**
+     * Soft key {@link Entry}.
+     */
+    private static final class Soft<K, V>
+        extends SoftReference<K>
+        implements Entry<K, V>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final int hash;
+
+        private final Entry<K, V> next;
+
+        private volatile V value;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        Soft( final K key, final int hash, final V value, final ReferenceQueue<K> queue, final Entry<K, V> next )
+        {
+            super( key, queue );
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public int hash()
+        {
+            return hash;
+        }
+
+        public V getValue()
+        {
+            return value;
+        }
+
+        public V setValue( final V newValue )
+        {
+            if ( null == newValue )
+            {
+                throw new NullPointerException();
+            }
+            final V oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public Entry<K, V> next()
+        {
+            return next;
+        }
+    }
+
+    /**
+     * Weak key {@link Entry}.
+     */
+    private static final class Weak<K, V>
+        extends WeakReference<K>
+        implements Entry<K, V>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final int hash;
+
+        private final Entry<K, V> next;
+
+        private volatile V value;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        Weak( final K key, final int hash, final V value, final ReferenceQueue<K> queue, final Entry<K, V> next )
+        {
+            super( key, queue );
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public int hash()
+        {
+            return hash;
+        }
+
+        public V getValue()
+        {
+            return value;
+        }
+
+        public V setValue( final V newValue )
+        {
+            if ( null == newValue )
+            {
+                throw new NullPointerException();
+            }
+            final V oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public Entry<K, V> next()
+        {
+            return next;
+        }
+    }
+
+    /**
+     * Weakly-consistent {@link Iterator} over reachable entries in a snapshot of the table.
+     */
+    abstract class AbstractItr<T>
+        implements Iterator<T>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final AtomicReferenceArray<Entry<K, V>> tab = table;
+
+        private int index;
+
+        private Entry<K, V> nextEntry;
+
+        private K nextKey;
+
+        private Entry<K, V> lastEntry;
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public final boolean hasNext()
+        {
+            // find next entry that is still reachable
+            while ( null == nextKey )
+            {
+                while ( null == nextEntry && index < tab.length() )
+                {
+                    nextEntry = tab.get( index++ );
+                }
+                if ( null == nextEntry )
+                {
+                    return false;
+                }
+                nextKey = nextEntry.get();
+                if ( null == nextKey )
+                {
+                    nextEntry = nextEntry.next();
+                }
+            }
+            return true;
+        }
+
+        public final T next()
+        {
+            if ( hasNext() )
+            {
+                // populated by hasNext()
+                final T element = element( nextEntry, nextKey );
+                lastEntry = nextEntry;
+                nextEntry = nextEntry.next();
+                nextKey = null;
+                return element;
+            }
+            throw new NoSuchElementException();
+        }
+
+        public final void remove()
+        {
+            if ( null != lastEntry )
+            {
+                synchronized ( MildConcurrentKeys.this )
+                {
+                    removeEntry( lastEntry );
+                }
+                lastEntry = null;
+            }
+            else
+            {
+                throw new IllegalStateException();
+            }
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        abstract T element( Entry<K, V> entry, K key );
+    }
+
+    /**
+     * {@link Iterator} that iterates over reachable keys in the map.
+     */
+    final class KeyItr
+        extends AbstractItr<K>
+    {
+        @Override
+        K element( final Entry<K, V> entry, final K key )
+        {
+            return key;
+        }
+    }
+
+    /**
+     * {@link Iterator} that iterates over values with reachable keys in the map.
+     */
+    final class ValueItr
+        extends AbstractItr<V>
+    {
+        @Override
+        V element( final Entry<K, V> entry, final K key )
+        {
+            return entry.getValue();
+        }
+    }
+
+    /**
+     * {@link Iterator} that iterates over reachable entries in the map.
+     */
+    final class EntryItr
+        extends AbstractItr<Map.Entry<K, V>>
+    {
+        @Override
+        Map.Entry<K, V> element( final Entry<K, V> entry, final K key )
+        {
+            return new StrongEntry( entry, key );
+        }
+    }
+
+    /**
+     * {@link Map.Entry} that delegates to the original entry, but maintains a strong reference to the key.
+     */
+    final class StrongEntry
+        implements Map.Entry<K, V>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final Entry<K, V> entry;
+
+        private final K key;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        StrongEntry( final Entry<K, V> entry, final K key )
+        {
+            this.entry = entry;
+            this.key = key;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public K getKey()
+        {
+            return key;
+        }
+
+        public V getValue()
+        {
+            return entry.getValue();
+        }
+
+        public V setValue( final V value )
+        {
+            // entry may have been replaced while unlinking another entry, so go through the map
+            return put( key, value );
+        }
     }
 }
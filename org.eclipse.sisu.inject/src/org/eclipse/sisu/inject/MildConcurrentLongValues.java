@@ -0,0 +1,574 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.inject;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread-safe map from primitive {@code long} keys to values kept alive by soft/weak {@link Reference}s.<br>
+ * <br>
+ * Each entry is its own {@link Reference}, so no boxed keys or wrapper objects are created on lookup. Reads are
+ * lock-free; writes are serialized and only compact cleared entries once a threshold of writes has been reached.
+ */
+public final class MildConcurrentLongValues<V>
+    implements MildReaper.Reapable
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private static final int COMPACT_THRESHOLD = 64;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+
+    private final boolean soft;
+
+    private volatile AtomicReferenceArray<Entry<V>> table;
+
+    private int count;
+
+    private int writesSinceCompact;
+
+    private volatile boolean reaped;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    MildConcurrentLongValues( final int capacity, final boolean soft )
+    {
+        int size = 16;
+        while ( size < capacity && size < MAXIMUM_CAPACITY )
+        {
+            size <<= 1;
+        }
+        this.table = new AtomicReferenceArray<Entry<V>>( size );
+        this.soft = soft;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @param key The key
+     * @return Value mapped to the key; {@code null} if there is no mapping or the value has been collected
+     */
+    public V get( final long key )
+    {
+        // skip compact for performance reasons
+
+        final AtomicReferenceArray<Entry<V>> tab = table;
+        for ( Entry<V> e = tab.get( indexFor( key, tab.length() ) ); null != e; e = e.next() )
+        {
+            if ( key == e.key() )
+            {
+                final V value = e.get();
+                if ( null != value )
+                {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key The key
+     * @return {@code true} if the key maps to a value that is still reachable; otherwise {@code false}
+     */
+    public boolean containsKey( final long key )
+    {
+        return null != get( key );
+    }
+
+    /**
+     * @param key The key
+     * @param value The value
+     * @return Previous value mapped to the key; {@code null} if there was none
+     */
+    public synchronized V put( final long key, final V value )
+    {
+        compactIfNeeded();
+
+        final V oldValue = removeEntry( key );
+        addEntry( key, value );
+        return oldValue;
+    }
+
+    /**
+     * @param key The key
+     * @param value The value
+     * @return Existing value mapped to the key; {@code null} if the given value was added
+     */
+    public synchronized V putIfAbsent( final long key, final V value )
+    {
+        compactIfNeeded();
+
+        final V oldValue = get( key );
+        if ( null == oldValue )
+        {
+            removeEntry( key ); // clear out any collected entry
+            addEntry( key, value );
+        }
+        return oldValue;
+    }
+
+    /**
+     * @param key The key
+     * @return Value that was mapped to the key; {@code null} if there was none
+     */
+    public synchronized V remove( final long key )
+    {
+        compactIfNeeded();
+
+        return removeEntry( key );
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    public synchronized void clear()
+    {
+        table = new AtomicReferenceArray<Entry<V>>( table.length() );
+        count = 0;
+
+        drainQueue();
+    }
+
+    /**
+     * @return Number of mappings, including any cleared values that have not yet been compacted
+     */
+    public synchronized int size()
+    {
+        compact();
+
+        return count;
+    }
+
+    /**
+     * @return {@code true} if there are no mappings; otherwise {@code false}
+     */
+    public boolean isEmpty()
+    {
+        return 0 == size();
+    }
+
+    /**
+     * @return Weakly-consistent view of the values that are still reachable
+     */
+    public Collection<V> values()
+    {
+        return new AbstractCollection<V>()
+        {
+            @Override
+            public Iterator<V> iterator()
+            {
+                return new ValueItr( table );
+            }
+
+            @Override
+            public int size()
+            {
+                return MildConcurrentLongValues.this.size();
+            }
+        };
+    }
+
+    /**
+     * Hands compaction over to the background {@link MildReaper}; writes no longer compact inline.
+     */
+    public void useReaper()
+    {
+        reaped = true;
+    }
+
+    /**
+     * Removes up to the given number of cleared values.
+     * 
+     * @param maxCount The maximum number of entries to reap
+     * @return Number of entries reclaimed
+     */
+    public synchronized int reap( final int maxCount )
+    {
+        int reclaimed = 0;
+        Reference<? extends V> ref;
+        for ( int i = 0; i < maxCount && ( ref = queue.poll() ) != null; i++ )
+        {
+            if ( removeEntry( (Entry<?>) ref ) )
+            {
+                reclaimed++;
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Compacts the map by removing cleared values.
+     */
+    public synchronized void compact()
+    {
+        for ( Reference<? extends V> ref; ( ref = queue.poll() ) != null; )
+        {
+            removeEntry( (Entry<?>) ref );
+        }
+        writesSinceCompact = 0;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Spreads the bits of the given key into a table index.
+     */
+    static int indexFor( final long key, final int length )
+    {
+        int h = (int) ( key ^ key >>> 32 );
+        h ^= h >>> 20 ^ h >>> 12;
+        h ^= h >>> 7 ^ h >>> 4;
+        return h & length - 1;
+    }
+
+    /**
+     * Amortises compaction across a number of writes.
+     */
+    private void compactIfNeeded()
+    {
+        if ( !reaped && ++writesSinceCompact >= COMPACT_THRESHOLD )
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Discards any pending notifications of cleared values.
+     */
+    private void drainQueue()
+    {
+        while ( null != queue.poll() )
+        {
+            // ignore, table has already been reset
+        }
+        writesSinceCompact = 0;
+    }
+
+    /**
+     * Adds a new entry at the head of its bucket, growing the table when necessary.
+     */
+    private void addEntry( final long key, final V value )
+    {
+        if ( ++count > table.length() * 3 / 4 )
+        {
+            resize();
+        }
+        final AtomicReferenceArray<Entry<V>> tab = table;
+        final int index = indexFor( key, tab.length() );
+        tab.set( index, mildEntry( key, value, tab.get( index ) ) );
+    }
+
+    /**
+     * Removes any entry with the given key from the table; replaces the preceding part of the bucket chain.
+     */
+    private V removeEntry( final long key )
+    {
+        final AtomicReferenceArray<Entry<V>> tab = table;
+        final int index = indexFor( key, tab.length() );
+        final Entry<V> head = tab.get( index );
+        for ( Entry<V> e = head; null != e; e = e.next() )
+        {
+            if ( key == e.key() )
+            {
+                tab.set( index, unlink( head, e ) );
+                count--;
+                return e.get();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the exact given entry from the table, if it is still present.
+     */
+    private boolean removeEntry( final Entry<?> entry )
+    {
+        final AtomicReferenceArray<Entry<V>> tab = table;
+        final int index = indexFor( entry.key(), tab.length() );
+        final Entry<V> head = tab.get( index );
+        for ( Entry<V> e = head; null != e; e = e.next() )
+        {
+            if ( entry == e )
+            {
+                tab.set( index, unlink( head, e ) );
+                count--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a new bucket chain without the given entry; entries after it are shared, those before are cloned.
+     */
+    private Entry<V> unlink( final Entry<V> head, final Entry<V> entry )
+    {
+        Entry<V> newHead = entry.next();
+        for ( Entry<V> e = head; e != entry; e = e.next() )
+        {
+            final V value = e.get();
+            if ( null != value )
+            {
+                newHead = mildEntry( e.key(), value, newHead );
+            }
+            else
+            {
+                count--; // collected while we were cloning
+            }
+        }
+        return newHead;
+    }
+
+    /**
+     * Doubles the table size; collected entries are dropped as part of the rehash.
+     */
+    private void resize()
+    {
+        final AtomicReferenceArray<Entry<V>> oldTab = table;
+        final int oldLength = oldTab.length();
+        if ( oldLength >= MAXIMUM_CAPACITY )
+        {
+            return;
+        }
+        final AtomicReferenceArray<Entry<V>> newTab = new AtomicReferenceArray<Entry<V>>( oldLength << 1 );
+        int newCount = 1; // includes the pending entry
+        for ( int i = 0; i < oldLength; i++ )
+        {
+            for ( Entry<V> e = oldTab.get( i ); null != e; e = e.next() )
+            {
+                final V value = e.get();
+                if ( null != value )
+                {
+                    final int index = indexFor( e.key(), newTab.length() );
+                    newTab.set( index, mildEntry( e.key(), value, newTab.get( index ) ) );
+                    newCount++;
+                }
+            }
+        }
+        table = newTab;
+        count = newCount;
+        drainQueue(); // old entries are no longer in the table
+    }
+
+    /**
+     * @return Soft or weak {@link Entry} for the given key-value mapping.
+     */
+    private Entry<V> mildEntry( final long key, final V value, final Entry<V> next )
+    {
+        return soft ? new Soft<V>( key, value, queue, next ) : new Weak<V>( key, value, queue, next );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Represents a {@link Reference} to a value that is also an entry in a bucket chain.
+     */
+    interface Entry<V>
+    {
+        long key();
+
+        V get();
+
+        Entry<V> next();
+    }
+
+    /**
+     * Soft value {@link Entry}.
+     */
+    private static final class Soft<V>
+        extends SoftReference<V>
+        implements Entry<V>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final long key;
+
+        private final Entry<V> next;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        Soft( final long key, final V value, final ReferenceQueue<V> queue, final Entry<V> next )
+        {
+            super( value, queue );
+            this.key = key;
+            this.next = next;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public long key()
+        {
+            return key;
+        }
+
+        public Entry<V> next()
+        {
+            return next;
+        }
+    }
+
+    /**
+     * Weak value {@link Entry}.
+     */
+    private static final class Weak<V>
+        extends WeakReference<V>
+        implements Entry<V>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final long key;
+
+        private final Entry<V> next;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        Weak( final long key, final V value, final ReferenceQueue<V> queue, final Entry<V> next )
+        {
+            super( value, queue );
+            this.key = key;
+            this.next = next;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public long key()
+        {
+            return key;
+        }
+
+        public Entry<V> next()
+        {
+            return next;
+        }
+    }
+
+    /**
+     * {@link Iterator} that iterates over reachable values in a snapshot of the table.
+     */
+    final class ValueItr
+        implements Iterator<V>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final AtomicReferenceArray<Entry<V>> tab;
+
+        private int index;
+
+        private Entry<V> nextEntry;
+
+        private V nextValue;
+
+        private long nextKey;
+
+        private long lastKey;
+
+        private boolean haveValue;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        ValueItr( final AtomicReferenceArray<Entry<V>> tab )
+        {
+            this.tab = tab;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public boolean hasNext()
+        {
+            // find next value that is still reachable
+            while ( null == nextValue )
+            {
+                while ( null == nextEntry && index < tab.length() )
+                {
+                    nextEntry = tab.get( index++ );
+                }
+                if ( null == nextEntry )
+                {
+                    return false;
+                }
+                nextKey = nextEntry.key();
+                nextValue = nextEntry.get();
+                nextEntry = nextEntry.next();
+            }
+            return true;
+        }
+
+        public V next()
+        {
+            haveValue = hasNext();
+            if ( haveValue )
+            {
+                // populated by hasNext()
+                final V value = nextValue;
+                lastKey = nextKey;
+                nextValue = null;
+                return value;
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove()
+        {
+            if ( haveValue )
+            {
+                MildConcurrentLongValues.this.remove( lastKey );
+                haveValue = false;
+            }
+            else
+            {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
@@ -19,7 +19,7 @@ import java.util.concurrent.ConcurrentMap;
  */
 final class MildConcurrentValues<K, V>
     extends MildValues<K, V>
-    implements ConcurrentMap<K, V>
+    implements ConcurrentMap<K, V>, MildReaper.Reapable
 {
     // ----------------------------------------------------------------------
     // Implementation fields
@@ -27,6 +27,8 @@ final class MildConcurrentValues<K, V>
 
     private final ConcurrentMap<K, Reference<V>> concurrentMap;
 
+    private volatile boolean reaped;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
@@ -43,7 +45,7 @@ final class MildConcurrentValues<K, V>
 
     public V putIfAbsent( final K key, final V value )
     {
-        compact();
+        compactOnWrite();
 
         final Reference<V> ref = mildValue( key, value );
 
@@ -64,7 +66,7 @@ final class MildConcurrentValues<K, V>
 
     public V replace( final K key, final V value )
     {
-        compact();
+        compactOnWrite();
 
         final Reference<V> ref = concurrentMap.replace( key, mildValue( key, value ) );
         return null != ref ? ref.get() : null;
@@ -72,22 +74,51 @@ final class MildConcurrentValues<K, V>
 
     public boolean replace( final K key, final V oldValue, final V newValue )
     {
-        compact();
+        compactOnWrite();
 
         return concurrentMap.replace( key, tempValue( oldValue ), mildValue( key, newValue ) );
     }
 
     public boolean remove( final Object key, final Object value )
     {
-        compact(); // NOSONAR ignore nullable false-positive
+        compactOnWrite(); // NOSONAR ignore nullable false-positive
 
         return concurrentMap.remove( key, tempValue( value ) );
     }
 
+    public void useReaper()
+    {
+        reaped = true;
+    }
+
+    public int reap( final int maxCount )
+    {
+        int reclaimed = 0;
+        Reference<? extends V> ref;
+        for ( int i = 0; i < maxCount && ( ref = queue.poll() ) != null; i++ )
+        {
+            // only remove this specific key-value mapping; thread-safe
+            if ( concurrentMap.remove( ( (InverseMapping) ref ).key(), ref ) )
+            {
+                reclaimed++;
+            }
+        }
+        return reclaimed;
+    }
+
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
 
+    @Override
+    void compactOnWrite()
+    {
+        if ( !reaped )
+        {
+            compact();
+        }
+    }
+
     @Override
     void compact()
     {
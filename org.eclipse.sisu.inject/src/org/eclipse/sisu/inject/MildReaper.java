@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.inject;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional shared daemon that reaps cleared {@link Reference}s from thread-safe soft/weak collections.<br>
+ * <br>
+ * Enabled by setting the 'sisu.reaper' system property to {@code true}; collections created by the concurrent
+ * {@link Weak} and {@link Soft} factories then skip compaction on writes and are compacted off-thread instead.
+ * The 'sisu.reaper.interval' (milliseconds) and 'sisu.reaper.batch' properties control how often each collection
+ * is visited and the maximum number of entries reaped from it per visit.
+ */
+public final class MildReaper
+{
+    // ----------------------------------------------------------------------
+    // Static initialization
+    // ----------------------------------------------------------------------
+
+    static
+    {
+        boolean enabled;
+        long interval;
+        int batchSize;
+        try
+        {
+            enabled = Boolean.parseBoolean( System.getProperty( "sisu.reaper", "false" ) );
+            interval = Long.parseLong( System.getProperty( "sisu.reaper.interval", "1000" ) );
+            batchSize = Integer.parseInt( System.getProperty( "sisu.reaper.batch", "1024" ) );
+        }
+        catch ( final RuntimeException e )
+        {
+            enabled = false;
+            interval = 1000;
+            batchSize = 1024;
+        }
+        ENABLED = enabled;
+        INTERVAL = Math.max( interval, 1 );
+        BATCH_SIZE = Math.max( batchSize, 1 );
+    }
+
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final boolean ENABLED;
+
+    private static final long INTERVAL;
+
+    private static final int BATCH_SIZE;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private static final Collection<Reapable> collections = Weak.elements();
+
+    private static final AtomicLong reclaimedCount = new AtomicLong();
+
+    private static final AtomicLong passCount = new AtomicLong();
+
+    private static Thread reaperThread;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    private MildReaper()
+    {
+        // static utility class, not allowed to create instances
+    }
+
+    // ----------------------------------------------------------------------
+    // Utility methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @return {@code true} if collections are being reaped in the background; otherwise {@code false}
+     */
+    public static boolean isEnabled()
+    {
+        return ENABLED;
+    }
+
+    /**
+     * @return Total number of cleared entries reclaimed by the reaper
+     */
+    public static long reclaimedCount()
+    {
+        return reclaimedCount.get();
+    }
+
+    /**
+     * @return Total number of reaping passes made over the registered collections
+     */
+    public static long passCount()
+    {
+        return passCount.get();
+    }
+
+    /**
+     * @return Number of live collections currently registered with the reaper
+     */
+    public static int collectionCount()
+    {
+        synchronized ( collections )
+        {
+            return collections.size();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Registers the given collection with the reaper, if enabled.
+     *
+     * @param collection The thread-safe collection
+     * @return The same collection
+     */
+    static <T extends Reapable> T optIn( final T collection )
+    {
+        if ( ENABLED )
+        {
+            collection.useReaper();
+            synchronized ( collections )
+            {
+                collections.add( collection );
+                if ( null == reaperThread )
+                {
+                    reaperThread = new ReaperThread();
+                    reaperThread.start();
+                }
+            }
+        }
+        return collection;
+    }
+
+    /**
+     * Reaps each registered collection once.
+     *
+     * @return {@code true} if there are still collections registered; otherwise {@code false}
+     */
+    static boolean reapAll()
+    {
+        final List<Reapable> snapshot;
+        synchronized ( collections )
+        {
+            snapshot = new ArrayList<Reapable>( collections );
+            if ( snapshot.isEmpty() )
+            {
+                reaperThread = null;
+                return false;
+            }
+        }
+        long count = 0;
+        for ( final Reapable collection : snapshot )
+        {
+            count += collection.reap( BATCH_SIZE );
+        }
+        if ( count > 0 )
+        {
+            reclaimedCount.addAndGet( count );
+            Logs.trace( "Reaped: {} cleared entries from: {} collections", Long.valueOf( count ),
+                        Integer.valueOf( snapshot.size() ) );
+        }
+        passCount.incrementAndGet();
+        return true;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Represents a thread-safe collection whose cleared {@link Reference}s can be reaped in the background.
+     */
+    interface Reapable
+    {
+        /**
+         * Hands compaction over to the reaper; writes no longer compact inline.
+         */
+        void useReaper();
+
+        /**
+         * Removes up to the given number of cleared entries.
+         *
+         * @param maxCount The maximum number of entries to reap
+         * @return Number of entries reclaimed
+         */
+        int reap( int maxCount );
+    }
+
+    /**
+     * Daemon {@link Thread} that periodically reaps the registered collections; exits when none remain.
+     */
+    private static final class ReaperThread
+        extends Thread
+    {
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        ReaperThread()
+        {
+            super( "Sisu-Reaper" );
+            setDaemon( true );
+            setContextClassLoader( null );
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                do
+                {
+                    Thread.sleep( INTERVAL );
+                }
+                while ( reapAll() );
+            }
+            catch ( final InterruptedException e )
+            {
+                synchronized ( collections )
+                {
+                    reaperThread = null; // allow restart on next registration
+                }
+            }
+        }
+    }
+}
@@ -74,7 +74,7 @@ class MildValues<K, V>
 
     public final V put( final K key, final V value )
     {
-        compact();
+        compactOnWrite();
 
         final Reference<V> ref = map.put( key, mildValue( key, value ) );
         return null != ref ? ref.get() : null;
@@ -82,7 +82,7 @@ class MildValues<K, V>
 
     public final void putAll( final Map<? extends K, ? extends V> m )
     {
-        compact();
+        compactOnWrite();
 
         for ( final Entry<? extends K, ? extends V> e : m.entrySet() )
         {
@@ -92,7 +92,7 @@ class MildValues<K, V>
 
     public final V remove( final Object key )
     {
-        compact();
+        compactOnWrite();
 
         final Reference<V> ref = map.remove( key );
         return null != ref ? ref.get() : null;
@@ -186,6 +186,14 @@ class MildValues<K, V>
         return new Weak<V, V>( null, value, null );
     }
 
+    /**
+     * Compacts the map before a write; subclasses may defer this to a background reaper.
+     */
+    void compactOnWrite()
+    {
+        compact();
+    }
+
     /**
      * Compacts the map by removing cleared values.
      */
@@ -81,12 +81,12 @@ public final class Soft
 
     /**
      * @param capacity The initial capacity
-     * @param concurrency The concurrency level
+     * @param concurrency The concurrency level (unused; reads are lock-free and writes are serialized)
      * @return {@link ConcurrentMap} whose keys are kept alive with {@link SoftReference}s
      */
     public static <K, V> ConcurrentMap<K, V> concurrentKeys( final int capacity, final int concurrency )
     {
-        return new MildConcurrentKeys( new ConcurrentHashMap( capacity, 0.75f, concurrency ), true );
+        return MildReaper.optIn( new MildConcurrentKeys( capacity, true ) );
     }
 
     /**
@@ -121,6 +121,24 @@ public final class Soft
      */
     public static <K, V> ConcurrentMap<K, V> concurrentValues( final int capacity, final int concurrency )
     {
-        return new MildConcurrentValues( new ConcurrentHashMap( capacity, 0.75f, concurrency ), true );
+        final ConcurrentMap map = new ConcurrentHashMap( capacity, 0.75f, concurrency );
+        return MildReaper.optIn( new MildConcurrentValues( map, true ) );
+    }
+
+    /**
+     * @return {@link MildConcurrentLongValues} whose values are kept alive with {@link SoftReference}s
+     */
+    public static <V> MildConcurrentLongValues<V> concurrentLongValues()
+    {
+        return concurrentLongValues( 16 );
+    }
+
+    /**
+     * @param capacity The initial capacity
+     * @return {@link MildConcurrentLongValues} whose values are kept alive with {@link SoftReference}s
+     */
+    public static <V> MildConcurrentLongValues<V> concurrentLongValues( final int capacity )
+    {
+        return MildReaper.optIn( new MildConcurrentLongValues<V>( capacity, true ) );
     }
 }
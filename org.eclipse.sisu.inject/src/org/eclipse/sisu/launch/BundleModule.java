@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.sisu.launch;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +26,7 @@ import org.osgi.framework.BundleContext;
 
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.google.inject.Provider;
 
 /**
  * Guice module that uses classpath-scanning and auto-wiring to bind JSR330 components from OSGi bundles.
@@ -51,15 +53,49 @@ public class BundleModule
      */
     protected final MutableBeanLocator locator;
 
+    /**
+     * Optional directory holding persisted scan results.
+     */
+    protected final File cacheDirectory;
+
+    /**
+     * Auto-publish the bundle injector with the locator while it is being created?
+     */
+    protected final boolean autoPublish;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
     public BundleModule( final Bundle bundle, final MutableBeanLocator locator )
+    {
+        this( bundle, locator, null );
+    }
+
+    /**
+     * @param bundle The bundle
+     * @param locator The shared locator
+     * @param cacheDirectory The directory holding persisted scan results; {@code null} to always scan
+     */
+    public BundleModule( final Bundle bundle, final MutableBeanLocator locator, final File cacheDirectory )
+    {
+        this( bundle, locator, cacheDirectory, true );
+    }
+
+    /**
+     * @param bundle The bundle
+     * @param locator The shared locator
+     * @param cacheDirectory The directory holding persisted scan results; {@code null} to always scan
+     * @param autoPublish {@code true} to auto-publish the injector; {@code false} if the caller will publish it
+     */
+    public BundleModule( final Bundle bundle, final MutableBeanLocator locator, final File cacheDirectory,
+                         final boolean autoPublish )
     {
         space = new BundleClassSpace( bundle );
         extensions = SisuExtensions.local( space );
         this.locator = locator;
+        this.cacheDirectory = cacheDirectory;
+        this.autoPublish = autoPublish;
     }
 
     // ----------------------------------------------------------------------
@@ -123,9 +159,22 @@ public class BundleModule
         {
             public void configure( final Binder binder )
             {
-                // This instance binding will also auto-register the injector with the locator as a publisher.
-                // If you don't want this feature, replace the binding with toProvider(Providers.of(locator))
-                binder.bind( MutableBeanLocator.class ).toInstance( locator );
+                if ( autoPublish )
+                {
+                    // This instance binding will also auto-register the injector with the locator as a publisher.
+                    binder.bind( MutableBeanLocator.class ).toInstance( locator );
+                }
+                else
+                {
+                    // hiding the locator behind a provider stops it from auto-registering the injector
+                    binder.bind( MutableBeanLocator.class ).toProvider( new Provider<MutableBeanLocator>()
+                    {
+                        public MutableBeanLocator get()
+                        {
+                            return locator;
+                        }
+                    } );
+                }
 
                 final Bundle bundle = space.getBundle();
 
@@ -142,6 +191,6 @@ public class BundleModule
      */
     protected Module spaceModule()
     {
-        return new SpaceModule( space, BeanScanning.select( getProperties() ) ).with( extensions );
+        return new SpaceModule( space, BeanScanning.select( getProperties() ), cacheDirectory ).with( extensions );
     }
 }
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.sisu.launch;
 
+import java.io.File;
+
 import org.eclipse.sisu.inject.BindingPublisher;
 import org.eclipse.sisu.inject.InjectorBindings;
 import org.eclipse.sisu.inject.MutableBeanLocator;
@@ -32,13 +34,44 @@ public class SisuBundlePlan
 
     protected final MutableBeanLocator locator;
 
+    /**
+     * Optional directory holding persisted scan results.
+     */
+    protected final File cacheDirectory;
+
+    /**
+     * Auto-publish bundle injectors with the locator while they are being created?
+     */
+    protected final boolean autoPublish;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
     public SisuBundlePlan( final MutableBeanLocator locator )
+    {
+        this( locator, null );
+    }
+
+    /**
+     * @param locator The shared locator
+     * @param cacheDirectory The directory holding persisted scan results; {@code null} to always scan
+     */
+    public SisuBundlePlan( final MutableBeanLocator locator, final File cacheDirectory )
+    {
+        this( locator, cacheDirectory, true );
+    }
+
+    /**
+     * @param locator The shared locator
+     * @param cacheDirectory The directory holding persisted scan results; {@code null} to always scan
+     * @param autoPublish {@code true} to auto-publish injectors; {@code false} if the caller publishes what it prepares
+     */
+    public SisuBundlePlan( final MutableBeanLocator locator, final File cacheDirectory, final boolean autoPublish )
     {
         this.locator = locator;
+        this.cacheDirectory = cacheDirectory;
+        this.autoPublish = autoPublish;
     }
 
     // ----------------------------------------------------------------------
@@ -86,6 +119,6 @@ public class SisuBundlePlan
      */
     protected Module compose( final Bundle bundle )
     {
-        return new BundleModule( bundle, locator );
+        return new BundleModule( bundle, locator, cacheDirectory, autoPublish );
     }
 }
@@ -10,8 +10,7 @@
  *******************************************************************************/
 package org.eclipse.sisu.launch;
 
-import java.util.Collections;
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.sisu.inject.DefaultBeanLocator;
 import org.eclipse.sisu.inject.MutableBeanLocator;
@@ -33,8 +32,7 @@ public class SisuExtender
     // ----------------------------------------------------------------------
 
     // track locators (per-extender-bundle) so they can be re-used when possible
-    private static final Map<Long, MutableBeanLocator> locators =
-        Collections.synchronizedMap( Weak.<Long, MutableBeanLocator> values() );
+    private static final ConcurrentMap<Long, MutableBeanLocator> locators = Weak.concurrentValues();
 
     /**
      * Tracker of component bundles.
@@ -112,7 +110,12 @@ public class SisuExtender
         MutableBeanLocator locator = locators.get( extenderId );
         if ( null == locator )
         {
-            locators.put( extenderId, locator = createLocator( context ) );
+            final MutableBeanLocator newLocator = createLocator( context );
+            locator = locators.putIfAbsent( extenderId, newLocator );
+            if ( null == locator )
+            {
+                locator = newLocator;
+            }
         }
         return locator;
     }
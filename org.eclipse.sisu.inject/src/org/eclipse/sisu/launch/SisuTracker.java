@@ -10,17 +10,26 @@
  *******************************************************************************/
 package org.eclipse.sisu.launch;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 
 import org.eclipse.sisu.inject.BindingPublisher;
 import org.eclipse.sisu.inject.InjectorBindings;
+import org.eclipse.sisu.inject.Logs;
 import org.eclipse.sisu.inject.MutableBeanLocator;
 import org.eclipse.sisu.inject.Weak;
 import org.eclipse.sisu.space.BundleClassSpace;
@@ -35,7 +44,13 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 
 /**
- * OSGi {@link BundleTracker} that tracks component bundles and uses {@link BundlePlan}s to publish them.
+ * OSGi {@link BundleTracker} that tracks component bundles and uses {@link BundlePlan}s to publish them.<br>
+ * <br>
+ * Bundles are prepared on the tracker thread unless the 'sisu.extender.threads' property is more than one; they are
+ * then prepared by a pool of threads and published in bundle id order as soon as they and all earlier bundles are
+ * ready. Bundles that stop while they are being prepared are never published, or are removed again if a custom plan
+ * published them while preparing. The locator is never called while holding the lock that guards preparations;
+ * updates are applied in order by one thread at a time.
  */
 public class SisuTracker
     extends BundleTracker<Object>
@@ -66,6 +81,13 @@ public class SisuTracker
 
     private static final Object PLACEHOLDER = new Object();
 
+    /**
+     * Persisted scan results, kept in the extender's data area.
+     */
+    private static final String SCAN_CACHE = "scan-cache";
+
+    private static final String PREPARE_THREADS = "sisu.extender.threads";
+
     private static final Set<String> SUPPORT_BUNDLE_NAMES;
 
     // ----------------------------------------------------------------------
@@ -73,8 +95,7 @@ public class SisuTracker
     // ----------------------------------------------------------------------
 
     // attempt to track publishers across extender restarts
-    private static final Map<Long, Object> bundlePublishers =
-        Collections.synchronizedMap( Weak.<Long, Object> values() );
+    private static final ConcurrentMap<Long, Object> bundlePublishers = Weak.concurrentValues();
 
     /**
      * Mask of bundle states being tracked.
@@ -91,6 +112,17 @@ public class SisuTracker
      */
     protected final List<BundlePlan> plans;
 
+    // bundles being prepared in the background, in publication order; also guards the pending updates
+    private final SortedMap<Long, Preparation> preparations = new TreeMap<Long, Preparation>();
+
+    // locator updates waiting to be applied, in order; guarded by preparations
+    private final Queue<Update> pendingUpdates = new ArrayDeque<Update>();
+
+    // true while a thread is applying pending updates; guarded by preparations
+    private boolean updating;
+
+    private final ExecutorService executor;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
@@ -102,6 +134,18 @@ public class SisuTracker
         this.stateMask = stateMask;
         this.locator = locator;
 
+        int threads;
+        try
+        {
+            final String value = context.getProperty( PREPARE_THREADS );
+            threads = null != value ? Integer.parseInt( value.trim() ) : 1;
+        }
+        catch ( final RuntimeException e )
+        {
+            threads = 1;
+        }
+        executor = threads > 1 ? Executors.newFixedThreadPool( threads, new PreparationThreadFactory() ) : null;
+
         plans = discoverPlans();
     }
 
@@ -117,23 +161,42 @@ public class SisuTracker
         purgeBundles(); // catch-up with any events we've missed
     }
 
+    @Override
+    public void close()
+    {
+        super.close();
+
+        if ( null != executor )
+        {
+            executor.shutdown();
+            cancelPreparations(); // unpublished bundles will be prepared again by the next tracker
+        }
+    }
+
     @Override
     public final Object addingBundle( final Bundle bundle, final BundleEvent event )
     {
         @SuppressWarnings( "boxing" )
         final Long bundleId = bundle.getBundleId();
-        if ( !bundlePublishers.containsKey( bundleId ) )
+        // protect against repeated activation calls
+        if ( null == bundlePublishers.putIfAbsent( bundleId, PLACEHOLDER ) )
         {
-            // protect against repeated activation calls
-            bundlePublishers.put( bundleId, PLACEHOLDER );
-            final BindingPublisher publisher = prepare( bundle );
-            if ( null != publisher )
+            if ( null != executor )
             {
-                addPublisher( bundleId, publisher );
+                prepareInBackground( bundleId, bundle );
             }
             else
             {
-                bundlePublishers.remove( bundleId );
+                final BindingPublisher publisher = prepare( bundle );
+                if ( null != publisher )
+                {
+                    bundlePublishers.put( bundleId, publisher );
+                    addPublisher( bundleId, publisher );
+                }
+                else
+                {
+                    bundlePublishers.remove( bundleId );
+                }
             }
         }
         return bundle;
@@ -190,7 +253,8 @@ public class SisuTracker
 
     /**
      * Discovers plans listed locally under {@code META-INF/services/org.eclipse.sisu.launch.BundlePlan} ;
-     * implementations must have a public no-arg constructor or one that accepts a {@link MutableBeanLocator}.
+     * implementations must have a public no-arg constructor or one that accepts a {@link MutableBeanLocator}.<br>
+     * The default plan persists scan results in the extender's data area, so unchanged bundles aren't rescanned.
      * 
      * @return List of plans
      */
@@ -198,7 +262,8 @@ public class SisuTracker
     {
         final List<BundlePlan> localPlans = new ArrayList<BundlePlan>();
 
-        localPlans.add( new SisuBundlePlan( locator ) );
+        // background preparations must leave publishing to us, so bundles are published in order
+        localPlans.add( new SisuBundlePlan( locator, context.getDataFile( SCAN_CACHE ), null == executor ) );
         final SisuExtensions extensions = SisuExtensions.local( new BundleClassSpace( context.getBundle() ) );
         localPlans.addAll( extensions.create( BundlePlan.class, MutableBeanLocator.class, locator ) );
 
@@ -224,18 +289,37 @@ public class SisuTracker
     {
         if ( !locator.add( publisher ) && publisher instanceof InjectorBindings )
         {
-            // track auto-published injector rather than its temporary wrapper
-            bundlePublishers.put( bundleId, publisher.adapt( Injector.class ) );
+            // track auto-published injector rather than its temporary wrapper, unless the bundle has since gone
+            bundlePublishers.replace( bundleId, publisher, publisher.adapt( Injector.class ) );
         }
-        else
+    }
+
+    private void removePublisher( final Long bundleId )
+    {
+        synchronized ( preparations )
         {
-            bundlePublishers.put( bundleId, publisher );
+            final Preparation preparation = preparations.remove( bundleId );
+            if ( null != preparation )
+            {
+                // stopped before it was published
+                preparation.cancelled = true;
+                bundlePublishers.remove( bundleId, PLACEHOLDER );
+                queuePreparations();
+            }
+            else
+            {
+                final Object publisher = bundlePublishers.remove( bundleId );
+                if ( null != publisher && PLACEHOLDER != publisher )
+                {
+                    pendingUpdates.add( new Update( bundleId, publisher, false ) );
+                }
+            }
         }
+        applyUpdates();
     }
 
-    private void removePublisher( final Long bundleId )
+    private void unpublish( final Object publisher )
     {
-        final Object publisher = bundlePublishers.remove( bundleId );
         if ( publisher instanceof Injector )
         {
             // we're tracking an auto-published injector, use temporary wrapper to remove it
@@ -246,4 +330,217 @@ public class SisuTracker
             locator.remove( (BindingPublisher) publisher );
         }
     }
+
+    private void prepareInBackground( final Long bundleId, final Bundle bundle )
+    {
+        final Preparation preparation = new Preparation( bundleId, bundle );
+        synchronized ( preparations )
+        {
+            preparations.put( bundleId, preparation );
+        }
+        try
+        {
+            executor.execute( preparation );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            removePublisher( bundleId ); // tracker is closing
+        }
+    }
+
+    /**
+     * Queues prepared bundles in bundle id order, stopping at the first bundle that is still being prepared; caller
+     * must hold the preparations lock.
+     */
+    private void queuePreparations()
+    {
+        while ( !preparations.isEmpty() )
+        {
+            final Preparation preparation = preparations.get( preparations.firstKey() );
+            if ( !preparation.done )
+            {
+                break;
+            }
+            preparations.remove( preparation.bundleId );
+            if ( null != preparation.publisher )
+            {
+                bundlePublishers.put( preparation.bundleId, preparation.publisher );
+                pendingUpdates.add( new Update( preparation.bundleId, preparation.publisher, true ) );
+            }
+            else
+            {
+                bundlePublishers.remove( preparation.bundleId, PLACEHOLDER );
+            }
+        }
+    }
+
+    /**
+     * Applies pending updates to the locator outside of the preparations lock. Only one thread applies updates at a
+     * time, so they reach the locator in order; other threads leave their updates for that thread to apply.<br>
+     * Tracked publishers are updated when the update is queued, so bundles can be tracked again straight away.
+     */
+    private void applyUpdates()
+    {
+        synchronized ( preparations )
+        {
+            if ( updating )
+            {
+                return;
+            }
+            updating = true;
+        }
+        while ( true )
+        {
+            final Update update;
+            synchronized ( preparations )
+            {
+                update = pendingUpdates.poll();
+                if ( null == update )
+                {
+                    updating = false;
+                    return;
+                }
+            }
+            update.run();
+        }
+    }
+
+    private void cancelPreparations()
+    {
+        synchronized ( preparations )
+        {
+            for ( final Preparation preparation : preparations.values() )
+            {
+                preparation.cancelled = true;
+                bundlePublishers.remove( preparation.bundleId, PLACEHOLDER );
+            }
+            preparations.clear();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Prepares a bundle in the background, then publishes it along with any other bundles that are ready.
+     */
+    private final class Preparation
+        implements Runnable
+    {
+        final Long bundleId;
+
+        private final Bundle bundle;
+
+        volatile boolean cancelled;
+
+        boolean done;
+
+        BindingPublisher publisher;
+
+        Preparation( final Long bundleId, final Bundle bundle )
+        {
+            this.bundleId = bundleId;
+            this.bundle = bundle;
+        }
+
+        public void run()
+        {
+            BindingPublisher result = null;
+            if ( !cancelled )
+            {
+                try
+                {
+                    result = prepare( bundle );
+                }
+                catch ( final RuntimeException e )
+                {
+                    Logs.warn( "Problem preparing: {}", bundle, e );
+                }
+                catch ( final LinkageError e )
+                {
+                    Logs.warn( "Problem preparing: {}", bundle, e );
+                }
+            }
+            synchronized ( preparations )
+            {
+                publisher = result;
+                done = true;
+                if ( !cancelled )
+                {
+                    queuePreparations();
+                }
+                else if ( null != result )
+                {
+                    // custom plans may have published it while preparing
+                    pendingUpdates.add( new Update( bundleId, result, false ) );
+                }
+            }
+            applyUpdates();
+        }
+    }
+
+    /**
+     * Adds or removes the publisher of a bundle; problems are logged so later updates are still applied.
+     */
+    private final class Update
+        implements Runnable
+    {
+        private final Long bundleId;
+
+        private final Object publisher;
+
+        private final boolean adding;
+
+        /**
+         * @param bundleId The bundle id
+         * @param publisher The publisher, or the auto-published injector being removed
+         * @param adding {@code true} to add the publisher; {@code false} to remove it
+         */
+        Update( final Long bundleId, final Object publisher, final boolean adding )
+        {
+            this.bundleId = bundleId;
+            this.publisher = publisher;
+            this.adding = adding;
+        }
+
+        public void run()
+        {
+            try
+            {
+                if ( adding )
+                {
+                    addPublisher( bundleId, (BindingPublisher) publisher );
+                }
+                else
+                {
+                    unpublish( publisher );
+                }
+            }
+            catch ( final RuntimeException e )
+            {
+                Logs.warn( "Problem updating bundle: {}", bundleId, e );
+            }
+            catch ( final LinkageError e )
+            {
+                Logs.warn( "Problem updating bundle: {}", bundleId, e );
+            }
+        }
+    }
+
+    /**
+     * Supplies daemon threads for preparing bundles.
+     */
+    private static final class PreparationThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread( final Runnable task )
+        {
+            final Thread thread = new Thread( task, "Sisu-Extender-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
 }
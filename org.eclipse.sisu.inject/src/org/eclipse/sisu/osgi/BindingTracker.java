@@ -10,7 +10,16 @@
  *******************************************************************************/
 package org.eclipse.sisu.osgi;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.sisu.inject.BindingSubscriber;
 import org.eclipse.sisu.inject.Logs;
@@ -20,21 +29,63 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTracker;
 
 /**
- * Tracker of {@link ServiceBinding}s from the OSGi service registry.
+ * Tracker of {@link ServiceBinding}s from the OSGi service registry.<br>
+ * <br>
+ * Service events are delivered to subscribers as they happen, unless the
+ * {@code org.eclipse.sisu.osgi.ServiceBindings.latency} system property is set to a positive number of milliseconds.
+ * New services are then collected for up to that long and delivered to each subscriber as one batch. Removals are
+ * always delivered immediately, before the service is released; services that go before their batch is delivered are
+ * never delivered.
  */
 final class BindingTracker<T>
     extends ServiceTracker<T, ServiceBinding<T>>
 {
+    // ----------------------------------------------------------------------
+    // Static initialization
+    // ----------------------------------------------------------------------
+
+    static
+    {
+        long latency;
+        try
+        {
+            latency = Long.parseLong( System.getProperty( ServiceBindings.class.getName() + ".latency", "0" ) );
+        }
+        catch ( final RuntimeException e )
+        {
+            latency = 0;
+        }
+        LATENCY = latency;
+    }
+
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final long LATENCY;
+
+    private static final long IDLE_TIMEOUT = 5000;
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
 
     private final Collection<BindingSubscriber<T>> subscribers = Weak.elements();
 
+    // added services waiting to be delivered
+    private final Collection<ServiceBinding<T>> pendingAdditions = new LinkedHashSet<ServiceBinding<T>>();
+
+    // tracked bindings indexed by their loaded type, so subscribers only visit compatible services; guarded by
+    // pendingAdditions so new subscribers see a consistent view of delivered and pending additions
+    private final Map<Class<?>, Collection<ServiceBinding<T>>> bindingsByType =
+        new HashMap<Class<?>, Collection<ServiceBinding<T>>>();
+
     private final String clazzName;
 
     private final int maxRank;
 
+    private final long latency;
+
     private boolean isOpen;
 
     // ----------------------------------------------------------------------
@@ -42,10 +93,16 @@ final class BindingTracker<T>
     // ----------------------------------------------------------------------
 
     BindingTracker( final BundleContext context, final int maxRank, final String clazzName )
+    {
+        this( context, maxRank, clazzName, LATENCY );
+    }
+
+    BindingTracker( final BundleContext context, final int maxRank, final String clazzName, final long latency )
     {
         super( context, clazzName, null );
         this.clazzName = clazzName;
         this.maxRank = maxRank;
+        this.latency = latency;
     }
 
     // ----------------------------------------------------------------------
@@ -57,12 +114,17 @@ final class BindingTracker<T>
         synchronized ( subscribers )
         {
             openIfNecessary();
-            for ( final ServiceBinding<T> binding : getTracked().values() )
+            final List<ServiceBinding<T>> additions;
+            final List<ServiceBinding<T>> bindings;
+            synchronized ( pendingAdditions )
             {
-                if ( binding.isCompatibleWith( subscriber ) )
-                {
-                    subscriber.add( binding, binding.rank() );
-                }
+                additions = drainAdditions();
+                bindings = compatibleBindings( subscriber );
+            }
+            deliverAdditions( additions ); // bring existing subscribers up to date
+            for ( final ServiceBinding<T> binding : bindings )
+            {
+                subscriber.add( binding, binding.rank() );
             }
             subscribers.add( subscriber );
         }
@@ -72,9 +134,17 @@ final class BindingTracker<T>
     {
         synchronized ( subscribers )
         {
+            final List<ServiceBinding<T>> additions;
+            final List<ServiceBinding<T>> bindings;
+            synchronized ( pendingAdditions )
+            {
+                additions = drainAdditions();
+                bindings = compatibleBindings( subscriber );
+            }
+            deliverAdditions( additions ); // subscriber must already have each binding it is about to remove
             if ( subscribers.remove( subscriber ) )
             {
-                for ( final ServiceBinding<T> binding : getTracked().values() )
+                for ( final ServiceBinding<T> binding : bindings )
                 {
                     subscriber.remove( binding );
                 }
@@ -96,8 +166,14 @@ final class BindingTracker<T>
             Logs.warn( "Problem subscribing to service: {}", reference, e );
             return null;
         }
+        if ( latency > 0 )
+        {
+            queueAddition( binding );
+            return binding;
+        }
         synchronized ( subscribers )
         {
+            index( binding );
             for ( final BindingSubscriber<T> subscriber : subscribers )
             {
                 if ( binding.isCompatibleWith( subscriber ) )
@@ -110,16 +186,47 @@ final class BindingTracker<T>
         return binding;
     }
 
+    @Override
+    public void modifiedService( final ServiceReference<T> reference, final ServiceBinding<T> binding )
+    {
+        if ( binding.isModified() )
+        {
+            synchronized ( subscribers )
+            {
+                deliverAdditions(); // subscribers must already have this binding before it is re-ranked
+                final List<BindingSubscriber<T>> compatible = new ArrayList<BindingSubscriber<T>>();
+                for ( final BindingSubscriber<T> subscriber : subscribers )
+                {
+                    if ( binding.isCompatibleWith( subscriber ) )
+                    {
+                        subscriber.remove( binding );
+                        compatible.add( subscriber );
+                    }
+                }
+                binding.refresh();
+                for ( final BindingSubscriber<T> subscriber : compatible )
+                {
+                    subscriber.add( binding, binding.rank() );
+                }
+            }
+        }
+    }
+
     @Override
     public void removedService( final ServiceReference<T> reference, final ServiceBinding<T> binding )
     {
-        synchronized ( subscribers )
+        // deliver removals before the service is released, unless subscribers never saw it
+        if ( latency <= 0 || !cancelAddition( binding ) )
         {
-            for ( final BindingSubscriber<T> subscriber : subscribers )
+            synchronized ( subscribers )
             {
-                subscriber.remove( binding );
+                unindex( binding );
+                for ( final BindingSubscriber<T> subscriber : subscribers )
+                {
+                    subscriber.remove( binding );
+                }
+                closeIfNecessary();
             }
-            closeIfNecessary();
         }
         super.removedService( reference, binding );
     }
@@ -147,4 +254,161 @@ final class BindingTracker<T>
             close(); // calls removedService to clear out the tracker
         }
     }
+
+    private void index( final ServiceBinding<T> binding )
+    {
+        synchronized ( pendingAdditions )
+        {
+            Collection<ServiceBinding<T>> bindings = bindingsByType.get( binding.type() );
+            if ( null == bindings )
+            {
+                bindings = new LinkedHashSet<ServiceBinding<T>>();
+                bindingsByType.put( binding.type(), bindings );
+            }
+            bindings.add( binding );
+        }
+    }
+
+    private void unindex( final ServiceBinding<T> binding )
+    {
+        synchronized ( pendingAdditions )
+        {
+            final Collection<ServiceBinding<T>> bindings = bindingsByType.get( binding.type() );
+            if ( null != bindings && bindings.remove( binding ) && bindings.isEmpty() )
+            {
+                bindingsByType.remove( binding.type() );
+            }
+        }
+    }
+
+    private List<ServiceBinding<T>> compatibleBindings( final BindingSubscriber<T> subscriber )
+    {
+        synchronized ( pendingAdditions )
+        {
+            final Collection<ServiceBinding<T>> bindings = bindingsByType.get( subscriber.type().getRawType() );
+            if ( null == bindings )
+            {
+                return Collections.emptyList();
+            }
+            return new ArrayList<ServiceBinding<T>>( bindings );
+        }
+    }
+
+    private void queueAddition( final ServiceBinding<T> binding )
+    {
+        synchronized ( pendingAdditions )
+        {
+            index( binding );
+            pendingAdditions.add( binding );
+            if ( pendingAdditions.size() == 1 )
+            {
+                Scheduler.INSTANCE.schedule( new Runnable()
+                {
+                    public void run()
+                    {
+                        synchronized ( subscribers )
+                        {
+                            deliverAdditions();
+                            closeIfNecessary();
+                        }
+                    }
+                }, latency, TimeUnit.MILLISECONDS );
+            }
+        }
+    }
+
+    /**
+     * Cancels the pending addition of the given binding.
+     * 
+     * @return {@code true} if the binding was still pending; otherwise {@code false}
+     */
+    private boolean cancelAddition( final ServiceBinding<T> binding )
+    {
+        synchronized ( pendingAdditions )
+        {
+            if ( pendingAdditions.remove( binding ) )
+            {
+                unindex( binding );
+                return true; // added and removed in the same batch
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Delivers any pending additions to each subscriber in turn; caller must hold the subscribers lock.<br>
+     * Problems with one subscriber are logged and don't stop delivery to the others.
+     */
+    private void deliverAdditions()
+    {
+        deliverAdditions( drainAdditions() );
+    }
+
+    private List<ServiceBinding<T>> drainAdditions()
+    {
+        synchronized ( pendingAdditions )
+        {
+            if ( pendingAdditions.isEmpty() )
+            {
+                return Collections.emptyList();
+            }
+            final List<ServiceBinding<T>> additions = new ArrayList<ServiceBinding<T>>( pendingAdditions );
+            pendingAdditions.clear();
+            return additions;
+        }
+    }
+
+    private void deliverAdditions( final List<ServiceBinding<T>> additions )
+    {
+        if ( additions.isEmpty() )
+        {
+            return;
+        }
+        for ( final BindingSubscriber<T> subscriber : subscribers )
+        {
+            try
+            {
+                for ( final ServiceBinding<T> binding : additions )
+                {
+                    if ( binding.isCompatibleWith( subscriber ) )
+                    {
+                        subscriber.add( binding, binding.rank() );
+                    }
+                }
+            }
+            catch ( final Throwable e ) // NOPMD see Logs.catchThrowable
+            {
+                Logs.catchThrowable( e );
+                Logs.warn( "Problem delivering services to: {}", subscriber, e );
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Lazy holder of the shared timer used to deliver batched events; its thread goes away when the timer is idle.
+     */
+    private static final class Scheduler
+        implements ThreadFactory
+    {
+        static final ScheduledThreadPoolExecutor INSTANCE = newInstance();
+
+        public Thread newThread( final Runnable task )
+        {
+            final Thread thread = new Thread( task, "Sisu-Services" );
+            thread.setDaemon( true );
+            return thread;
+        }
+
+        private static ScheduledThreadPoolExecutor newInstance()
+        {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor( 1, new Scheduler() );
+            executor.setKeepAliveTime( IDLE_TIMEOUT, TimeUnit.MILLISECONDS );
+            executor.allowCoreThreadTimeOut( true );
+            return executor;
+        }
+    }
 }
@@ -26,7 +26,9 @@ import com.google.inject.spi.BindingTargetVisitor;
 import com.google.inject.spi.ElementVisitor;
 
 /**
- * Service {@link Binding} backed by an OSGi {@link ServiceReference}.
+ * Service {@link Binding} backed by an OSGi {@link ServiceReference}.<br>
+ * <br>
+ * The binding name and rank are cached from the service properties; call {@link #refresh} when they are modified.
  */
 final class ServiceBinding<T>
     implements Binding<T>, Provider<T>
@@ -35,43 +37,36 @@ final class ServiceBinding<T>
     // Implementation fields
     // ----------------------------------------------------------------------
 
-    private final Key<T> key;
+    private final ServiceReference<T> reference;
+
+    private final Class<T> clazz;
+
+    private final int maxRank;
 
     private final T instance;
 
-    private final int rank;
+    private volatile Key<T> key;
+
+    private volatile int rank;
 
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
+    @SuppressWarnings( "unchecked" )
     ServiceBinding( final BundleContext context, final String clazzName, final int maxRank,
                     final ServiceReference<T> reference )
         throws ClassNotFoundException
     {
-        @SuppressWarnings( "unchecked" )
-        final Class<T> clazz = (Class<T>) reference.getBundle().loadClass( clazzName );
-        final Object name = reference.getProperty( "name" );
-        if ( name instanceof String && ( (String) name ).length() > 0 )
-        {
-            key = Key.get( clazz, Names.named( (String) name ) );
-        }
-        else
-        {
-            key = Key.get( clazz );
-        }
+        this.reference = reference;
+        this.maxRank = maxRank;
+
+        clazz = (Class<T>) reference.getBundle().loadClass( clazzName );
+        key = computeKey();
 
         instance = context.getService( reference );
 
-        if ( maxRank > Integer.MIN_VALUE )
-        {
-            final int serviceRanking = getServiceRanking( reference );
-            rank = serviceRanking < maxRank ? serviceRanking : maxRank;
-        }
-        else
-        {
-            rank = Integer.MIN_VALUE;
-        }
+        rank = computeRank();
     }
 
     // ----------------------------------------------------------------------
@@ -124,7 +119,15 @@ final class ServiceBinding<T>
 
     boolean isCompatibleWith( final BindingSubscriber<T> subscriber )
     {
-        return key.getTypeLiteral().getRawType().equals( subscriber.type().getRawType() );
+        return clazz.equals( subscriber.type().getRawType() );
+    }
+
+    /**
+     * @return The loaded service type; subscribers must have the same raw type to be compatible
+     */
+    Class<T> type()
+    {
+        return clazz;
     }
 
     int rank()
@@ -132,10 +135,47 @@ final class ServiceBinding<T>
         return rank;
     }
 
+    /**
+     * @return {@code true} if the service properties now give a different name or ranking; otherwise {@code false}
+     */
+    boolean isModified()
+    {
+        return !key.equals( computeKey() ) || rank != computeRank();
+    }
+
+    /**
+     * Updates the cached name and ranking from the latest service properties.
+     */
+    void refresh()
+    {
+        key = computeKey();
+        rank = computeRank();
+    }
+
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
 
+    private Key<T> computeKey()
+    {
+        final Object name = reference.getProperty( "name" );
+        if ( name instanceof String && ( (String) name ).length() > 0 )
+        {
+            return Key.get( clazz, Names.named( (String) name ) );
+        }
+        return Key.get( clazz );
+    }
+
+    private int computeRank()
+    {
+        if ( maxRank > Integer.MIN_VALUE )
+        {
+            final int serviceRanking = getServiceRanking( reference );
+            return serviceRanking < maxRank ? serviceRanking : maxRank;
+        }
+        return Integer.MIN_VALUE;
+    }
+
     private static int getServiceRanking( final ServiceReference<?> reference )
     {
         final Object ranking = reference.getProperty( Constants.SERVICE_RANKING );
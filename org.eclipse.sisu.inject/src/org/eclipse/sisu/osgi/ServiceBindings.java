@@ -11,7 +11,9 @@
 package org.eclipse.sisu.osgi;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
@@ -19,6 +21,7 @@ import java.util.regex.Pattern;
 import org.eclipse.sisu.inject.BindingPublisher;
 import org.eclipse.sisu.inject.BindingSubscriber;
 import org.eclipse.sisu.inject.Logs;
+import org.eclipse.sisu.inject.Weak;
 import org.osgi.framework.BundleContext;
 
 import com.google.inject.Binding;
@@ -35,6 +38,10 @@ public final class ServiceBindings
 
     private static final Pattern GLOB_SYNTAX = Pattern.compile( "(?:\\w+|\\*)(?:\\.?(?:\\w+|\\*))*" );
 
+    private static final int ALLOW = 1;
+
+    private static final int IGNORE = 2;
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
@@ -44,9 +51,11 @@ public final class ServiceBindings
 
     private final BundleContext context;
 
-    private final Pattern[] allowed;
+    // weak keys are compared by identity: decisions are only reused because Class.getName() caches its result, so
+    // each class always gives the same String instance, which then lives as long as the class does
+    private final ConcurrentMap<String, Boolean> decisions = Weak.concurrentKeys();
 
-    private final Pattern[] ignored;
+    private final GlobTrie globs = new GlobTrie();
 
     private final int maxRank;
 
@@ -70,8 +79,8 @@ public final class ServiceBindings
         this.context = context;
         this.maxRank = maxRank;
 
-        allowed = parseGlobs( allow );
-        ignored = parseGlobs( ignore );
+        parseGlobs( allow, ALLOW );
+        parseGlobs( ignore, IGNORE );
     }
 
     /**
@@ -155,37 +164,151 @@ public final class ServiceBindings
 
     private boolean shouldTrack( final String clazzName )
     {
-        for ( final Pattern allow : allowed )
+        Boolean decision = decisions.get( clazzName );
+        if ( null == decision )
+        {
+            decision = Boolean.valueOf( globs.match( clazzName ) == ALLOW );
+            decisions.put( clazzName, decision );
+        }
+        return decision.booleanValue();
+    }
+
+    private void parseGlobs( final String patterns, final int mark )
+    {
+        for ( final String glob : patterns.split( "\\s*,\\s*" ) )
+        {
+            if ( GLOB_SYNTAX.matcher( glob ).matches() )
+            {
+                globs.add( glob, mark );
+            }
+            else if ( glob.length() > 0 )
+            {
+                Logs.warn( "Ignoring malformed glob pattern: {}", glob, null );
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Trie of globbed patterns; each name is matched against all patterns in a single pass over its characters.
+     */
+    private static final class GlobTrie
+    {
+        private final Node root = new Node();
+
+        GlobTrie()
+        {
+        }
+
+        /**
+         * Adds the given glob to the trie; names that match it will be tagged with the given mark.
+         */
+        void add( final String glob, final int mark )
         {
-            if ( allow.matcher( clazzName ).matches() )
+            Node node = root;
+            for ( int i = 0, size = glob.length(); i < size; i++ )
             {
-                for ( final Pattern ignore : ignored )
+                node = node.child( glob.charAt( i ) );
+            }
+            node.marks |= mark;
+        }
+
+        /**
+         * @return Combined marks of all globs that match the full name
+         */
+        int match( final String name )
+        {
+            List<Node> current = new ArrayList<Node>();
+            root.enter( current );
+            for ( int i = 0, size = name.length(); i < size && !current.isEmpty(); i++ )
+            {
+                final Character c = Character.valueOf( name.charAt( i ) );
+                final List<Node> next = new ArrayList<Node>();
+                for ( final Node node : current )
                 {
-                    if ( ignore.matcher( clazzName ).matches() )
+                    if ( node.isStar )
+                    {
+                        node.enter( next ); // wildcard consumes the character
+                    }
+                    final Node child = null != node.children ? node.children.get( c ) : null;
+                    if ( null != child )
                     {
-                        return false;
+                        child.enter( next );
                     }
                 }
-                return true;
+                current = next;
+            }
+            int marks = 0;
+            for ( final Node node : current )
+            {
+                marks |= node.marks;
             }
+            return marks;
         }
-        return false;
     }
 
-    private static Pattern[] parseGlobs( final String globs )
+    /**
+     * Node in the {@link GlobTrie}; wildcard nodes match any sequence of characters, including none.
+     */
+    private static final class Node
     {
-        final List<Pattern> patterns = new ArrayList<Pattern>();
-        for ( final String glob : globs.split( "\\s*,\\s*" ) )
+        final boolean isStar;
+
+        Map<Character, Node> children;
+
+        Node star;
+
+        int marks;
+
+        Node()
         {
-            if ( GLOB_SYNTAX.matcher( glob ).matches() )
+            this( false );
+        }
+
+        private Node( final boolean isStar )
+        {
+            this.isStar = isStar;
+        }
+
+        Node child( final char c )
+        {
+            if ( '*' == c )
+            {
+                if ( null == star )
+                {
+                    star = new Node( true );
+                }
+                return star;
+            }
+            if ( null == children )
             {
-                patterns.add( Pattern.compile( glob.replace( ".", "\\." ).replace( "*", ".*" ) ) );
+                children = new HashMap<Character, Node>();
             }
-            else if ( glob.length() > 0 )
+            Node child = children.get( Character.valueOf( c ) );
+            if ( null == child )
             {
-                Logs.warn( "Ignoring malformed glob pattern: {}", glob, null );
+                child = new Node();
+                children.put( Character.valueOf( c ), child );
+            }
+            return child;
+        }
+
+        /**
+         * Adds this node to the given active set, along with any wildcards that can match an empty sequence.
+         */
+        void enter( final List<Node> active )
+        {
+            if ( !active.contains( this ) )
+            {
+                active.add( this );
+                if ( null != star )
+                {
+                    star.enter( active );
+                }
             }
         }
-        return patterns.toArray( new Pattern[patterns.size()] );
     }
 }
@@ -10,19 +10,28 @@
  *******************************************************************************/
 package org.eclipse.sisu.space;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 /**
  * Skeleton class that generates a qualified class index.
+ * <p>
+ * Tables with recorded binding facts are also written in binary form, next to the plain text table.
  */
 abstract class AbstractSisuIndex
 {
@@ -42,6 +51,11 @@ abstract class AbstractSisuIndex
 
     private final Map<Object, Set<String>> index = new LinkedHashMap<Object, Set<String>>();
 
+    private final Map<Object, Map<String, IndexedType>> binaryIndex =
+        new LinkedHashMap<Object, Map<String, IndexedType>>();
+
+    private int obsoleteCount;
+
     // ----------------------------------------------------------------------
     // Common methods
     // ----------------------------------------------------------------------
@@ -63,6 +77,47 @@ abstract class AbstractSisuIndex
         table.add( String.valueOf( clazz ) );
     }
 
+    /**
+     * Adds a new annotated class entry, with binding facts, to the index.
+     * 
+     * @param anno The annotation name
+     * @param type The indexed type
+     */
+    final synchronized void addTypeToIndex( final Object anno, final IndexedType type )
+    {
+        addClassToIndex( anno, type.clazzName );
+        Map<String, IndexedType> table = binaryIndex.get( anno );
+        if ( null == table )
+        {
+            table = readBinaryTable( anno );
+            binaryIndex.put( anno, table );
+        }
+        table.put( type.clazzName, type );
+    }
+
+    /**
+     * Loads the given table so it is rewritten by {@link #flushIndex()}, but only if it has obsolete entries.
+     * 
+     * @param anno The annotation name
+     * @see #isObsolete(String)
+     */
+    final synchronized void pruneIndex( final Object anno )
+    {
+        if ( !index.containsKey( anno ) )
+        {
+            final int oldCount = obsoleteCount;
+            final Set<String> table = readTable( anno );
+            if ( obsoleteCount > oldCount )
+            {
+                index.put( anno, table );
+                if ( !binaryIndex.containsKey( anno ) )
+                {
+                    binaryIndex.put( anno, readBinaryTable( anno ) );
+                }
+            }
+        }
+    }
+
     /**
      * Writes the current index as a series of tables.
      */
@@ -72,6 +127,10 @@ abstract class AbstractSisuIndex
         {
             writeTable( entry.getKey(), entry.getValue() );
         }
+        for ( final Entry<Object, Map<String, IndexedType>> entry : binaryIndex.entrySet() )
+        {
+            writeBinaryTable( entry.getKey(), index.get( entry.getKey() ), entry.getValue() );
+        }
     }
 
     // ----------------------------------------------------------------------
@@ -110,6 +169,42 @@ abstract class AbstractSisuIndex
     protected abstract Writer getWriter( final String path )
         throws IOException;
 
+    /**
+     * Creates a new binary input stream for the given input path.
+     * 
+     * @param path The input path
+     * @return The relevant input stream
+     */
+    protected InputStream getInputStream( final String path )
+        throws IOException
+    {
+        throw new IOException( "Binary index not supported" );
+    }
+
+    /**
+     * Creates a new binary output stream for the given output path.
+     * 
+     * @param path The output path
+     * @return The relevant output stream
+     */
+    protected OutputStream getOutputStream( final String path )
+        throws IOException
+    {
+        throw new IOException( "Binary index not supported" );
+    }
+
+    /**
+     * Checks whether a class recorded in an existing table is now obsolete, for example because it was deleted.<br>
+     * Obsolete classes are dropped when the table is read back into memory.
+     * 
+     * @param clazz The class name
+     * @return {@code true} if the class should be dropped from the index; otherwise {@code false}
+     */
+    protected boolean isObsolete( final String clazz )
+    {
+        return false;
+    }
+
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
@@ -130,7 +225,14 @@ abstract class AbstractSisuIndex
             {
                 for ( String line = reader.readLine(); line != null; line = reader.readLine() )
                 {
-                    table.add( line );
+                    if ( isObsolete( line ) )
+                    {
+                        obsoleteCount++;
+                    }
+                    else
+                    {
+                        table.add( line );
+                    }
                 }
             }
             finally
@@ -174,4 +276,85 @@ abstract class AbstractSisuIndex
             warn( e.toString() );
         }
     }
+
+    /**
+     * Reads the given binary index table from disk to memory.
+     * 
+     * @param name The table name
+     * @return Table entries
+     */
+    private Map<String, IndexedType> readBinaryTable( final Object name )
+    {
+        final Map<String, IndexedType> table = new TreeMap<String, IndexedType>();
+        try
+        {
+            final DataInputStream in = new DataInputStream( new BufferedInputStream( //
+                getInputStream( INDEX_FOLDER + name + IndexedType.BINARY_SUFFIX ) ) );
+            try
+            {
+                for ( final IndexedType type : IndexedType.readIndex( in, null, null ) )
+                {
+                    if ( !isObsolete( type.clazzName ) )
+                    {
+                        table.put( type.clazzName, type );
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch ( final IOException e ) // NOPMD
+        {
+            // ignore missing or outdated index
+        }
+        return table;
+    }
+
+    /**
+     * Writes the given binary index table from memory to disk; classes without facts are recorded by name, and entries
+     * missing from the plain text table are dropped.
+     * 
+     * @param name The table name
+     * @param names The class names
+     * @param table The entries
+     */
+    private void writeBinaryTable( final Object name, final Set<String> names, final Map<String, IndexedType> table )
+    {
+        table.keySet().retainAll( names );
+        for ( final String clazzName : names )
+        {
+            if ( !table.containsKey( clazzName ) )
+            {
+                table.put( clazzName, new IndexedType( clazzName, 0, null, null ) );
+            }
+        }
+        final OutputStream os;
+        try
+        {
+            os = getOutputStream( INDEX_FOLDER + name + IndexedType.BINARY_SUFFIX );
+        }
+        catch ( final IOException e )
+        {
+            info( "Skipping binary index: " + e );
+            return;
+        }
+        try
+        {
+            final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( os ) );
+            try
+            {
+                IndexedType.writeIndex( out, names, table.values() );
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch ( final IOException e )
+        {
+            warn( e.toString() );
+        }
+    }
 }
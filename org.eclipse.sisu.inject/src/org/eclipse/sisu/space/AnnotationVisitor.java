@@ -24,7 +24,7 @@ public interface AnnotationVisitor
      * Visits an element of the declared annotation.
      * 
      * @param name The element name
-     * @param value The element value
+     * @param value The element value; class values are reported by name, and arrays as {@code Object[]}
      */
     void visitElement( String name, Object value );
 
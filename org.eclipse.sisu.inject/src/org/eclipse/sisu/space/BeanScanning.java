@@ -43,7 +43,12 @@ public enum BeanScanning
     /**
      * Use global index (application)
      */
-    GLOBAL_INDEX;
+    GLOBAL_INDEX,
+
+    /**
+     * Scan once and persist results between runs
+     */
+    DISK_CACHE;
 
     /**
      * Selects the property named <i>"org.eclipse.sisu.space.BeanScanning"</i> and attempts to map its value to a
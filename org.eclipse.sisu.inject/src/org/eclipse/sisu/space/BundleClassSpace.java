@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.sisu.space;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -22,7 +23,11 @@ import java.util.Set;
 
 import org.eclipse.sisu.inject.DeferredClass;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
 
 /**
  * {@link ClassSpace} backed by a strongly-referenced {@link Bundle}.
@@ -145,6 +150,89 @@ public final class BundleClassSpace
     // Implementation methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Identifies the current content of the bundle and its fragments; used to key persisted scan results.
+     * 
+     * @return Bundle fingerprint; {@code null} if the bundle is an exploded directory which can change in place
+     */
+    String fingerprint()
+    {
+        final String location = bundle.getLocation();
+        if ( null != location && location.startsWith( "reference:file:" )
+            && new File( location.substring( "reference:file:".length() ) ).isDirectory() )
+        {
+            return null;
+        }
+        final StringBuilder buf = new StringBuilder( "bundle:" );
+        appendIdentity( buf, bundle );
+        try
+        {
+            appendFragments( buf );
+        }
+        catch ( final LinkageError e )
+        {
+            scanFragments( buf ); // framework predates the wiring API
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns the name used to persist scan results; unlike the fingerprint it stays the same when the bundle updates.
+     */
+    String cacheName()
+    {
+        return "bundle:" + bundle.getBundleId() + '|' + bundle.getLocation();
+    }
+
+    /**
+     * Returns the location of the bundle root, used to move persisted scan results between runs.
+     */
+    URL rootURL()
+    {
+        return bundle.getEntry( "/" );
+    }
+
+    /**
+     * Appends the identity of each fragment attached to the bundle, using its wiring.
+     */
+    private void appendFragments( final StringBuilder buf )
+    {
+        final BundleWiring wiring = bundle.adapt( BundleWiring.class );
+        if ( null != wiring )
+        {
+            for ( final BundleWire wire : wiring.getProvidedWires( BundleRevision.HOST_NAMESPACE ) )
+            {
+                appendIdentity( buf.append( '+' ), wire.getRequirerWiring().getBundle() );
+            }
+        }
+    }
+
+    /**
+     * Appends the identity of each installed fragment that names the bundle as its host.
+     */
+    private void scanFragments( final StringBuilder buf )
+    {
+        final BundleContext context = bundle.getBundleContext();
+        final String symbolicName = bundle.getSymbolicName();
+        if ( null != context && null != symbolicName )
+        {
+            for ( final Bundle b : context.getBundles() )
+            {
+                final String host = b.getHeaders().get( Constants.FRAGMENT_HOST );
+                if ( null != host && symbolicName.equals( host.split( ";" )[0].trim() ) )
+                {
+                    appendIdentity( buf.append( '+' ), b );
+                }
+            }
+        }
+    }
+
+    private static void appendIdentity( final StringBuilder buf, final Bundle bundle )
+    {
+        buf.append( bundle.getBundleId() ).append( '|' ).append( bundle.getSymbolicName() );
+        buf.append( '|' ).append( bundle.getVersion() ).append( '|' ).append( bundle.getLastModified() );
+    }
+
     /**
      * Returns the expanded Bundle-ClassPath; we need this to iterate over embedded JARs.
      */
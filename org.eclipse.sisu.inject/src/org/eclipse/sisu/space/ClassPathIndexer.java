@@ -0,0 +1,582 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.sisu.inject.Logs;
+
+/**
+ * Offline tool that indexes the qualified classes of a whole application class path.<br>
+ * <br>
+ * It can write one index per class path entry, ready to be added to each jar. It can also write a single merged
+ * index, along with the size, last modified time and SHA-1 checksum of every entry that was indexed. Use
+ * {@link #isValid(ClassSpace)} at startup to check that a merged index still matches the class path; this check is
+ * also done by {@link SpaceModule} when using {@link BeanScanning#GLOBAL_INDEX}.
+ */
+public final class ClassPathIndexer
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final String INPUTS = AbstractSisuIndex.NAMED + ".inputs";
+
+    private static final String INPUTS_PATH = AbstractSisuIndex.INDEX_FOLDER + INPUTS;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final File targetDirectory;
+
+    private final int threads;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    /**
+     * @param targetDirectory The directory where indices are written
+     * @param threads The number of threads used to scan the class path
+     */
+    public ClassPathIndexer( final File targetDirectory, final int threads )
+    {
+        this.targetDirectory = targetDirectory;
+        this.threads = Math.max( threads, 1 );
+    }
+
+    // ----------------------------------------------------------------------
+    // Public entry points
+    // ----------------------------------------------------------------------
+
+    /**
+     * Usage: {@code [-each] [-threads N] [-d directory] path...}
+     * <p>
+     * Writes a merged index of the given class path to the target directory (default is the current directory).
+     * With {@code -each} it writes a separate index for each class path entry, in sub-directories named after them.
+     */
+    public static void main( final String[] args )
+    {
+        boolean each = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File targetDirectory = new File( "." );
+        final List<URL> classPath = new ArrayList<URL>( args.length );
+        for ( int i = 0; i < args.length; i++ )
+        {
+            if ( "-each".equals( args[i] ) )
+            {
+                each = true;
+            }
+            else if ( "-threads".equals( args[i] ) && i + 1 < args.length )
+            {
+                threads = Integer.parseInt( args[++i] );
+            }
+            else if ( "-d".equals( args[i] ) && i + 1 < args.length )
+            {
+                targetDirectory = new File( args[++i] );
+            }
+            else
+            {
+                try
+                {
+                    classPath.add( new File( args[i] ).toURI().toURL() );
+                }
+                catch ( final MalformedURLException e )
+                {
+                    Logs.warn( "Bad classpath element: {}", args[i], e );
+                }
+            }
+        }
+
+        final ClassPathIndexer indexer = new ClassPathIndexer( targetDirectory, threads );
+        final URL[] urls = classPath.toArray( new URL[classPath.size()] );
+        try
+        {
+            if ( each )
+            {
+                indexer.indexEach( urls );
+            }
+            else
+            {
+                indexer.indexMerged( urls );
+            }
+        }
+        catch ( final IOException e )
+        {
+            Logs.warn( "Problem indexing: {}", classPath, e );
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Writes a single index for the given class path, including entries referenced from manifest Class-Paths.<br>
+     * The index is written along with checksums of the indexed entries, replacing any previous index.
+     *
+     * @param classPath The class path
+     */
+    public void indexMerged( final URL[] classPath )
+        throws IOException
+    {
+        final URLClassSpace space = new URLClassSpace( newClassLoader( classPath ), classPath );
+
+        deleteIndex( targetDirectory );
+        new SisuIndex( targetDirectory ).index( space, SpaceScanner.DEFAULT_FINDER, threads );
+
+        final URL[] entries = space.getURLs();
+        final File inputs = new File( targetDirectory, INPUTS_PATH );
+        final Writer writer = new OutputStreamWriter( new FileOutputStream( inputs ), "UTF-8" );
+        try
+        {
+            writer.write( "# name\tsize\tlastModified\tsha1" + Logs.NEW_LINE );
+            for ( final URL entry : entries )
+            {
+                writer.write( Input.describe( entry ).toString() + Logs.NEW_LINE );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes a separate index for each entry of the given class path, in sub-directories named after the entries.
+     *
+     * @param classPath The class path
+     */
+    public void indexEach( final URL[] classPath )
+        throws IOException
+    {
+        final ClassLoader loader = newClassLoader( classPath );
+        final Set<String> names = new HashSet<String>();
+        final List<Runnable> tasks = new ArrayList<Runnable>( classPath.length );
+        for ( final URL entry : classPath )
+        {
+            String name = Input.nameOf( entry );
+            for ( int n = 2; !names.add( name ); n++ )
+            {
+                name = Input.nameOf( entry ) + '-' + n;
+            }
+            final File entryDirectory = new File( targetDirectory, name );
+            tasks.add( new Runnable()
+            {
+                public void run()
+                {
+                    deleteIndex( entryDirectory );
+                    new SisuIndex( entryDirectory ).index( new URLClassSpace( loader, classPath ), new ClassFinder()
+                    {
+                        public Enumeration<URL> findClasses( final ClassSpace space )
+                        {
+                            return new ResourceEnumeration( null, "*.class", true, new URL[] { entry } );
+                        }
+                    }, 1 );
+                }
+            } );
+        }
+        run( tasks );
+    }
+
+    /**
+     * Checks that any merged index in the given space still matches its class path.
+     *
+     * @param space The class space
+     * @return {@code true} if the merged index is valid, or there is no merged index; otherwise {@code false}
+     */
+    public static boolean isValid( final ClassSpace space )
+    {
+        if ( !( space instanceof URLClassSpace ) )
+        {
+            return true; // only URL class paths can be checked
+        }
+        final List<URL> classPath = Arrays.asList( ( (URLClassSpace) space ).getURLs() );
+        final Enumeration<URL> e = space.findEntries( AbstractSisuIndex.INDEX_FOLDER, INPUTS, false );
+        while ( e.hasMoreElements() )
+        {
+            final URL inputs = e.nextElement();
+            try
+            {
+                if ( !isValid( inputs, classPath ) )
+                {
+                    return false;
+                }
+            }
+            catch ( final IOException ioe )
+            {
+                Logs.trace( "Problem reading: {}", inputs, ioe );
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Compares the recorded inputs of a merged index against the current class path, ignoring the index itself.
+     */
+    private static boolean isValid( final URL inputs, final List<URL> classPath )
+        throws IOException
+    {
+        final String spec = inputs.toExternalForm();
+        String root = spec.substring( 0, spec.length() - INPUTS_PATH.length() );
+        if ( root.startsWith( "jar:" ) && root.endsWith( "!/" ) )
+        {
+            root = root.substring( 4, root.length() - 2 );
+        }
+
+        final List<URL> entries = new ArrayList<URL>( classPath.size() );
+        for ( final URL url : classPath )
+        {
+            if ( !root.equals( url.toExternalForm() ) )
+            {
+                entries.add( url );
+            }
+        }
+
+        final List<Input> expected = Input.readAll( inputs );
+        if ( expected.size() != entries.size() )
+        {
+            Logs.trace( "Class path has changed since {} was written", inputs, null );
+            return false;
+        }
+        for ( int i = 0; i < expected.size(); i++ )
+        {
+            if ( !expected.get( i ).matches( entries.get( i ) ) )
+            {
+                Logs.trace( "Class path entry {} has changed since {} was written", entries.get( i ), inputs );
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ClassLoader newClassLoader( final URL[] classPath )
+    {
+        final ClassLoader parent = ClassPathIndexer.class.getClassLoader();
+        return classPath.length > 0 ? URLClassLoader.newInstance( classPath, parent ) : parent;
+    }
+
+    /**
+     * Removes any previous index from the given directory, so it isn't merged with the new index.
+     */
+    static void deleteIndex( final File directory )
+    {
+        final String index = AbstractSisuIndex.INDEX_FOLDER + AbstractSisuIndex.NAMED;
+        new File( directory, index ).delete();
+        new File( directory, index + IndexedType.BINARY_SUFFIX ).delete();
+        new File( directory, INPUTS_PATH ).delete();
+    }
+
+    /**
+     * Runs the given tasks, using a pool of threads when there are several of them.
+     */
+    private void run( final List<Runnable> tasks )
+        throws IOException
+    {
+        if ( threads == 1 || tasks.size() <= 1 )
+        {
+            for ( final Runnable task : tasks )
+            {
+                task.run();
+            }
+            return;
+        }
+        final ExecutorService executor =
+            Executors.newFixedThreadPool( Math.min( threads, tasks.size() ), new SpaceScanner.ScannerThreadFactory() );
+        try
+        {
+            final List<Future<?>> results = new ArrayList<Future<?>>( tasks.size() );
+            for ( final Runnable task : tasks )
+            {
+                results.add( executor.submit( task ) );
+            }
+            for ( final Future<?> result : results )
+            {
+                result.get();
+            }
+        }
+        catch ( final Exception e ) // InterruptedException + ExecutionException
+        {
+            throw new IOException( "Problem indexing: " + e );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Recorded details of an indexed class path entry.
+     */
+    private static final class Input
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final String name;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final String sha1;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        Input( final String name, final long size, final long lastModified, final String sha1 )
+        {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha1 = sha1;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        @Override
+        public String toString()
+        {
+            return name + '\t' + size + '\t' + lastModified + '\t' + sha1;
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * Records the current details of the given class path entry.
+         */
+        static Input describe( final URL entry )
+            throws IOException
+        {
+            final List<File> files = localFiles( entry );
+            if ( null == files )
+            {
+                return new Input( nameOf( entry ), -1, 0, checksum( Collections.<File> emptyList(), entry ) );
+            }
+            long size = 0, lastModified = 0;
+            for ( final File f : files )
+            {
+                size += f.length();
+                lastModified = Math.max( lastModified, f.lastModified() );
+            }
+            return new Input( nameOf( entry ), size, lastModified, checksum( files, entry ) );
+        }
+
+        /**
+         * Reads the recorded details of a merged index.
+         */
+        static List<Input> readAll( final URL inputs )
+            throws IOException
+        {
+            final List<Input> result = new ArrayList<Input>();
+            final BufferedReader reader =
+                new BufferedReader( new InputStreamReader( Streams.open( inputs ), "UTF-8" ) );
+            try
+            {
+                for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+                {
+                    if ( line.length() > 0 && '#' != line.charAt( 0 ) )
+                    {
+                        final String[] fields = line.split( "\t" );
+                        if ( fields.length != 4 )
+                        {
+                            throw new IOException( "Bad line: " + line + " in: " + inputs );
+                        }
+                        try
+                        {
+                            result.add( new Input( fields[0], Long.parseLong( fields[1] ), Long.parseLong( fields[2] ),
+                                                   fields[3] ) );
+                        }
+                        catch ( final NumberFormatException e )
+                        {
+                            throw new IOException( "Bad line: " + line + " in: " + inputs );
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+            return result;
+        }
+
+        /**
+         * Returns the simple name of the given class path entry, such as "guice.jar" or "classes".
+         */
+        static String nameOf( final URL entry )
+        {
+            String path = entry.getPath();
+            if ( path.endsWith( "/" ) )
+            {
+                path = path.substring( 0, path.length() - 1 );
+            }
+            return path.substring( path.lastIndexOf( '/' ) + 1 );
+        }
+
+        /**
+         * Checks the given class path entry against the recorded details; only computes checksums when necessary.
+         */
+        boolean matches( final URL entry )
+            throws IOException
+        {
+            if ( !name.equals( nameOf( entry ) ) )
+            {
+                return false;
+            }
+            List<File> files = localFiles( entry );
+            if ( null != files )
+            {
+                long currentSize = 0, currentLastModified = 0;
+                for ( final File f : files )
+                {
+                    currentSize += f.length();
+                    currentLastModified = Math.max( currentLastModified, f.lastModified() );
+                }
+                if ( currentSize != size )
+                {
+                    return false;
+                }
+                if ( currentLastModified == lastModified )
+                {
+                    return true;
+                }
+            }
+            else
+            {
+                files = Collections.emptyList();
+            }
+            return sha1.equals( checksum( files, entry ) );
+        }
+
+        /**
+         * Lists the files making up the given local jar or directory, in a stable order.
+         *
+         * @return Local files; {@code null} if the entry is not local
+         */
+        private static List<File> localFiles( final URL entry )
+        {
+            if ( !"file".equals( entry.getProtocol() ) )
+            {
+                return null;
+            }
+            final File root = FileEntryIterator.toFile( entry );
+            final List<File> files = new ArrayList<File>();
+            if ( root.isDirectory() )
+            {
+                collectFiles( root, files );
+            }
+            else if ( root.isFile() )
+            {
+                files.add( root );
+            }
+            return files;
+        }
+
+        private static void collectFiles( final File directory, final List<File> files )
+        {
+            final File[] listing = directory.listFiles();
+            if ( null != listing )
+            {
+                Arrays.sort( listing );
+                for ( final File f : listing )
+                {
+                    if ( f.isDirectory() )
+                    {
+                        collectFiles( f, files );
+                    }
+                    else
+                    {
+                        files.add( f );
+                    }
+                }
+            }
+        }
+
+        /**
+         * Computes the SHA-1 checksum of the given local files, or the content of a non-local entry.
+         */
+        private static String checksum( final List<File> files, final URL entry )
+            throws IOException
+        {
+            final MessageDigest digest = ScanCache.sha1();
+            if ( !"file".equals( entry.getProtocol() ) )
+            {
+                update( digest, Streams.open( entry ) );
+            }
+            else
+            {
+                final int rootLength = FileEntryIterator.toFile( entry ).getPath().length();
+                for ( final File f : files )
+                {
+                    digest.update( f.getPath().substring( rootLength ).replace( '\\', '/' ).getBytes( "UTF-8" ) );
+                    update( digest, new FileInputStream( f ) );
+                }
+            }
+            return ScanCache.toHex( digest.digest() );
+        }
+
+        private static void update( final MessageDigest digest, final InputStream in )
+            throws IOException
+        {
+            try
+            {
+                final byte[] buf = new byte[8192];
+                for ( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+                {
+                    digest.update( buf, 0, n );
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+}
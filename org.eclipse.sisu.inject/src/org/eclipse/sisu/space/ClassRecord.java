@@ -0,0 +1,552 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the header of a parsed class so it can be replayed later to another {@link ClassVisitor}.
+ */
+final class ClassRecord
+    implements ClassVisitor
+{
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    final URL url;
+
+    private final List<AnnotationRecord> annotations = new ArrayList<AnnotationRecord>( 4 );
+
+    private boolean complete;
+
+    private int access;
+
+    private String name;
+
+    private String superName;
+
+    private String[] interfaces;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    ClassRecord( final URL url )
+    {
+        this.url = url;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    public void enterClass( final int _access, final String _name, final String _superName,
+                            final String[] _interfaces )
+    {
+        access = _access;
+        name = _name;
+        superName = _superName;
+        interfaces = _interfaces;
+    }
+
+    public AnnotationVisitor visitAnnotation( final String desc )
+    {
+        final AnnotationRecord annotation = new AnnotationRecord( desc );
+        annotations.add( annotation );
+        return annotation;
+    }
+
+    public void leaveClass()
+    {
+        complete = true;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Replays the recorded class header; does nothing if the class could not be parsed.
+     */
+    void replay( final ClassVisitor cv )
+    {
+        if ( complete )
+        {
+            cv.enterClass( access, name, superName, interfaces );
+            for ( final AnnotationRecord annotation : annotations )
+            {
+                annotation.replay( cv );
+            }
+            cv.leaveClass();
+        }
+    }
+
+    /**
+     * Writes the recorded class header to the given output.
+     *
+     * @param out The data output
+     * @throws IOException if an annotation element has a value that cannot be written
+     */
+    void writeTo( final DataOutput out )
+        throws IOException
+    {
+        out.writeUTF( url.toExternalForm() );
+        out.writeBoolean( complete );
+        if ( complete )
+        {
+            out.writeInt( access );
+            out.writeUTF( name );
+            writeNullable( out, superName );
+            out.writeShort( null != interfaces ? interfaces.length : -1 );
+            if ( null != interfaces )
+            {
+                for ( final String i : interfaces )
+                {
+                    out.writeUTF( i );
+                }
+            }
+            out.writeShort( annotations.size() );
+            for ( final AnnotationRecord annotation : annotations )
+            {
+                annotation.writeTo( out );
+            }
+        }
+    }
+
+    /**
+     * Reads a class header previously written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in The data input
+     * @return Recorded class header
+     */
+    static ClassRecord readFrom( final DataInput in )
+        throws IOException
+    {
+        return readFrom( in, null, null );
+    }
+
+    /**
+     * Reads a class header previously written by {@link #writeTo(DataOutput)}, moving it to a new root location.
+     *
+     * @param in The data input
+     * @param oldRoot The root location when the header was written; {@code null} to leave the location unchanged
+     * @param newRoot The current root location
+     * @return Recorded class header
+     */
+    static ClassRecord readFrom( final DataInput in, final String oldRoot, final URL newRoot )
+        throws IOException
+    {
+        final String spec = in.readUTF();
+        final int rootIndex = null != oldRoot ? spec.indexOf( oldRoot ) : -1;
+        final URL url;
+        if ( rootIndex >= 0 )
+        {
+            // use context so the new root's handler is used for its protocol
+            url = new URL( newRoot, spec.substring( 0, rootIndex ) + newRoot.toExternalForm()
+                + spec.substring( rootIndex + oldRoot.length() ) );
+        }
+        else
+        {
+            url = new URL( spec );
+        }
+        final ClassRecord record = new ClassRecord( url );
+        record.complete = in.readBoolean();
+        if ( record.complete )
+        {
+            record.access = in.readInt();
+            record.name = in.readUTF();
+            record.superName = readNullable( in );
+            final int interfaceCount = in.readShort();
+            if ( interfaceCount >= 0 )
+            {
+                record.interfaces = new String[interfaceCount];
+                for ( int i = 0; i < interfaceCount; i++ )
+                {
+                    record.interfaces[i] = in.readUTF();
+                }
+            }
+            for ( int i = 0, annotationCount = in.readShort(); i < annotationCount; i++ )
+            {
+                record.annotations.add( AnnotationRecord.readFrom( in ) );
+            }
+        }
+        return record;
+    }
+
+    private static void writeNullable( final DataOutput out, final String value )
+        throws IOException
+    {
+        out.writeBoolean( null != value );
+        if ( null != value )
+        {
+            out.writeUTF( value );
+        }
+    }
+
+    private static String readNullable( final DataInput in )
+        throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Records the elements of a class annotation so they can be replayed later to another {@link ClassVisitor}.
+     */
+    private static final class AnnotationRecord
+        implements AnnotationVisitor
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final List<Object> elements = new ArrayList<Object>( 2 );
+
+        private final String desc;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        AnnotationRecord( final String desc )
+        {
+            this.desc = desc;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public void enterAnnotation()
+        {
+            // nothing to record
+        }
+
+        public void visitElement( final String name, final Object value )
+        {
+            elements.add( name );
+            elements.add( value );
+        }
+
+        public void leaveAnnotation()
+        {
+            // nothing to record
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        void replay( final ClassVisitor cv )
+        {
+            final AnnotationVisitor av = cv.visitAnnotation( desc );
+            if ( null != av )
+            {
+                av.enterAnnotation();
+                for ( int i = 0; i < elements.size(); i += 2 )
+                {
+                    av.visitElement( (String) elements.get( i ), elements.get( i + 1 ) );
+                }
+                av.leaveAnnotation();
+            }
+        }
+
+        void writeTo( final DataOutput out )
+            throws IOException
+        {
+            out.writeUTF( desc );
+            out.writeShort( elements.size() / 2 );
+            for ( int i = 0; i < elements.size(); i += 2 )
+            {
+                writeNullable( out, (String) elements.get( i ) );
+                writeValue( out, elements.get( i + 1 ) );
+            }
+        }
+
+        static AnnotationRecord readFrom( final DataInput in )
+            throws IOException
+        {
+            final AnnotationRecord annotation = new AnnotationRecord( in.readUTF() );
+            for ( int i = 0, elementCount = in.readShort(); i < elementCount; i++ )
+            {
+                annotation.elements.add( readNullable( in ) );
+                annotation.elements.add( readValue( in ) );
+            }
+            return annotation;
+        }
+
+        private static void writeValue( final DataOutput out, final Object value )
+            throws IOException
+        {
+            if ( value instanceof String )
+            {
+                out.writeByte( 's' );
+                out.writeUTF( (String) value );
+            }
+            else if ( value instanceof Integer )
+            {
+                out.writeByte( 'I' );
+                out.writeInt( ( (Integer) value ).intValue() );
+            }
+            else if ( value instanceof Long )
+            {
+                out.writeByte( 'J' );
+                out.writeLong( ( (Long) value ).longValue() );
+            }
+            else if ( value instanceof Boolean )
+            {
+                out.writeByte( 'Z' );
+                out.writeBoolean( ( (Boolean) value ).booleanValue() );
+            }
+            else if ( value instanceof Character )
+            {
+                out.writeByte( 'C' );
+                out.writeChar( ( (Character) value ).charValue() );
+            }
+            else if ( value instanceof Byte )
+            {
+                out.writeByte( 'B' );
+                out.writeByte( ( (Byte) value ).byteValue() );
+            }
+            else if ( value instanceof Short )
+            {
+                out.writeByte( 'S' );
+                out.writeShort( ( (Short) value ).shortValue() );
+            }
+            else if ( value instanceof Float )
+            {
+                out.writeByte( 'F' );
+                out.writeFloat( ( (Float) value ).floatValue() );
+            }
+            else if ( value instanceof Double )
+            {
+                out.writeByte( 'D' );
+                out.writeDouble( ( (Double) value ).doubleValue() );
+            }
+            else if ( value instanceof Object[] )
+            {
+                final Object[] values = (Object[]) value;
+                out.writeByte( '[' );
+                out.writeShort( values.length );
+                for ( final Object v : values )
+                {
+                    writeValue( out, v );
+                }
+            }
+            else if ( value.getClass().isArray() )
+            {
+                writePrimitiveArray( out, value );
+            }
+            else
+            {
+                throw new IOException( "Unsupported annotation value: " + value );
+            }
+        }
+
+        /**
+         * Writes primitive arrays, which ASM reports as-is for elements like {@code int[]}.
+         */
+        private static void writePrimitiveArray( final DataOutput out, final Object value )
+            throws IOException
+        {
+            if ( value instanceof int[] )
+            {
+                final int[] values = (int[]) value;
+                out.writeByte( 'i' );
+                out.writeShort( values.length );
+                for ( final int v : values )
+                {
+                    out.writeInt( v );
+                }
+            }
+            else if ( value instanceof long[] )
+            {
+                final long[] values = (long[]) value;
+                out.writeByte( 'j' );
+                out.writeShort( values.length );
+                for ( final long v : values )
+                {
+                    out.writeLong( v );
+                }
+            }
+            else if ( value instanceof boolean[] )
+            {
+                final boolean[] values = (boolean[]) value;
+                out.writeByte( 'z' );
+                out.writeShort( values.length );
+                for ( final boolean v : values )
+                {
+                    out.writeBoolean( v );
+                }
+            }
+            else if ( value instanceof char[] )
+            {
+                final char[] values = (char[]) value;
+                out.writeByte( 'c' );
+                out.writeShort( values.length );
+                for ( final char v : values )
+                {
+                    out.writeChar( v );
+                }
+            }
+            else if ( value instanceof byte[] )
+            {
+                final byte[] values = (byte[]) value;
+                out.writeByte( 'b' );
+                out.writeShort( values.length );
+                out.write( values );
+            }
+            else if ( value instanceof short[] )
+            {
+                final short[] values = (short[]) value;
+                out.writeByte( 'h' ); // 's' is taken by strings
+                out.writeShort( values.length );
+                for ( final short v : values )
+                {
+                    out.writeShort( v );
+                }
+            }
+            else if ( value instanceof float[] )
+            {
+                final float[] values = (float[]) value;
+                out.writeByte( 'f' );
+                out.writeShort( values.length );
+                for ( final float v : values )
+                {
+                    out.writeFloat( v );
+                }
+            }
+            else if ( value instanceof double[] )
+            {
+                final double[] values = (double[]) value;
+                out.writeByte( 'd' );
+                out.writeShort( values.length );
+                for ( final double v : values )
+                {
+                    out.writeDouble( v );
+                }
+            }
+            else
+            {
+                throw new IOException( "Unsupported annotation value: " + value );
+            }
+        }
+
+        private static Object readValue( final DataInput in )
+            throws IOException
+        {
+            final int tag = in.readByte();
+            switch ( tag )
+            {
+                case 's':
+                    return in.readUTF();
+                case 'I':
+                    return Integer.valueOf( in.readInt() );
+                case 'J':
+                    return Long.valueOf( in.readLong() );
+                case 'Z':
+                    return Boolean.valueOf( in.readBoolean() );
+                case 'C':
+                    return Character.valueOf( in.readChar() );
+                case 'B':
+                    return Byte.valueOf( in.readByte() );
+                case 'S':
+                    return Short.valueOf( in.readShort() );
+                case 'F':
+                    return Float.valueOf( in.readFloat() );
+                case 'D':
+                    return Double.valueOf( in.readDouble() );
+                case '[':
+                    final Object[] values = new Object[in.readUnsignedShort()];
+                    for ( int i = 0; i < values.length; i++ )
+                    {
+                        values[i] = readValue( in );
+                    }
+                    return values;
+                default:
+                    return readPrimitiveArray( in, tag );
+            }
+        }
+
+        private static Object readPrimitiveArray( final DataInput in, final int tag )
+            throws IOException
+        {
+            final int length = in.readUnsignedShort();
+            switch ( tag )
+            {
+                case 'i':
+                    final int[] ints = new int[length];
+                    for ( int i = 0; i < length; i++ )
+                    {
+                        ints[i] = in.readInt();
+                    }
+                    return ints;
+                case 'j':
+                    final long[] longs = new long[length];
+                    for ( int i = 0; i < length; i++ )
+                    {
+                        longs[i] = in.readLong();
+                    }
+                    return longs;
+                case 'z':
+                    final boolean[] booleans = new boolean[length];
+                    for ( int i = 0; i < length; i++ )
+                    {
+                        booleans[i] = in.readBoolean();
+                    }
+                    return booleans;
+                case 'c':
+                    final char[] chars = new char[length];
+                    for ( int i = 0; i < length; i++ )
+                    {
+                        chars[i] = in.readChar();
+                    }
+                    return chars;
+                case 'b':
+                    final byte[] bytes = new byte[length];
+                    in.readFully( bytes );
+                    return bytes;
+                case 'h':
+                    final short[] shorts = new short[length];
+                    for ( int i = 0; i < length; i++ )
+                    {
+                        shorts[i] = in.readShort();
+                    }
+                    return shorts;
+                case 'f':
+                    final float[] floats = new float[length];
+                    for ( int i = 0; i < length; i++ )
+                    {
+                        floats[i] = in.readFloat();
+                    }
+                    return floats;
+                case 'd':
+                    final double[] doubles = new double[length];
+                    for ( int i = 0; i < length; i++ )
+                    {
+                        doubles[i] = in.readDouble();
+                    }
+                    return doubles;
+                default:
+                    throw new IOException( "Unknown annotation value tag: " + tag );
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Qualifier;
+
+import org.eclipse.sisu.inject.Logs;
+
+/**
+ * Re-scans an exploded class directory, reporting only those {@link Qualifier}-annotated types that were added or
+ * removed since the last scan.<br>
+ * <br>
+ * The scanner keeps an index of each class file's last modified time and whether it was qualified; unchanged class
+ * files are not parsed again. Changed types are reported as removed and then added. Call {@link #rescan} whenever
+ * the directory should be checked, such as from a polling thread in a development server; the listener can then
+ * publish or withdraw the affected bindings.
+ */
+public final class IncrementalScanner
+{
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final URL directory;
+
+    private final File root;
+
+    private final String source;
+
+    private final QualifierCache qualifierCache = new QualifierCache();
+
+    private Map<String, IndexEntry> index = new HashMap<String, IndexEntry>();
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    /**
+     * @param directory The class directory
+     */
+    public IncrementalScanner( final URL directory )
+    {
+        try
+        {
+            final String spec = directory.toExternalForm();
+            this.directory = spec.endsWith( "/" ) ? directory : new URL( spec + '/' );
+        }
+        catch ( final MalformedURLException e )
+        {
+            // this shouldn't happen, hence illegal state
+            throw new IllegalStateException( e.toString() );
+        }
+        root = FileEntryIterator.toFile( this.directory );
+        source = this.directory.toString();
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Checks the class directory for changes and reports qualified types that were added or removed.<br>
+     * The first scan reports every qualified type in the directory as added.
+     *
+     * @param space The class space used to check qualifiers and load added types; should see the latest classes
+     * @param listener The listener
+     * @return {@code true} if any qualified types were added or removed; otherwise {@code false}
+     */
+    public synchronized boolean rescan( final ClassSpace space, final Listener listener )
+    {
+        final Map<String, IndexEntry> oldIndex = index;
+        final Map<String, IndexEntry> newIndex = new HashMap<String, IndexEntry>( oldIndex.size() * 4 / 3 + 16 );
+        final List<String> added = new ArrayList<String>();
+
+        final Iterator<String> itr = new FileEntryIterator( directory, "", true );
+        while ( itr.hasNext() )
+        {
+            final String path = itr.next();
+            if ( !path.endsWith( ".class" ) )
+            {
+                continue;
+            }
+            final long lastModified = new File( root, path ).lastModified();
+            IndexEntry entry = oldIndex.remove( path );
+            if ( null == entry || entry.lastModified != lastModified )
+            {
+                if ( null != entry && null != entry.clazzName )
+                {
+                    oldIndex.put( path, entry ); // report as removed, before it is added again
+                }
+                entry = new IndexEntry( lastModified, scanClass( space, path ) );
+                if ( null != entry.clazzName )
+                {
+                    added.add( entry.clazzName );
+                }
+            }
+            newIndex.put( path, entry );
+        }
+        index = newIndex;
+
+        boolean changed = false;
+        for ( final IndexEntry entry : oldIndex.values() )
+        {
+            if ( null != entry.clazzName )
+            {
+                listener.removed( entry.clazzName, source );
+                changed = true;
+            }
+        }
+        for ( final String clazzName : added )
+        {
+            try
+            {
+                listener.added( space.loadClass( clazzName ), source );
+                changed = true;
+            }
+            catch ( final Exception e )
+            {
+                Logs.trace( "Problem scanning: {}", clazzName, e );
+            }
+        }
+        return changed;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Listens for qualified types that were added to or removed from the class directory.
+     */
+    public interface Listener
+    {
+        /**
+         * Invoked when a qualified type is added to the class directory.
+         *
+         * @param clazz The qualified type
+         * @param source The directory containing the type
+         */
+        void added( Class<?> clazz, Object source );
+
+        /**
+         * Invoked when a qualified type is removed from the class directory.
+         *
+         * @param clazzName The name of the removed type
+         * @param source The directory that contained the type
+         */
+        void removed( String clazzName, Object source );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Parses the given class file to see if it is a qualified type.
+     *
+     * @return Name of the qualified type; {@code null} if the class is not qualified
+     */
+    private String scanClass( final ClassSpace space, final String path )
+    {
+        final QualifiedClass clazz = new QualifiedClass( space );
+        try
+        {
+            SpaceScanner.accept( clazz, new URL( directory, path ) );
+        }
+        catch ( final MalformedURLException e )
+        {
+            // this shouldn't happen, hence illegal state
+            throw new IllegalStateException( e.toString() );
+        }
+        return clazz.qualified ? clazz.clazzName : null;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Indexed class file: last modified time plus the qualified type it contains, if any.
+     */
+    private static final class IndexEntry
+    {
+        final long lastModified;
+
+        final String clazzName;
+
+        IndexEntry( final long lastModified, final String clazzName )
+        {
+            this.lastModified = lastModified;
+            this.clazzName = clazzName;
+        }
+    }
+
+    /**
+     * {@link ClassVisitor} that checks whether a class is instantiable and has a {@link Qualifier} annotation.
+     */
+    private final class QualifiedClass
+        implements ClassVisitor
+    {
+        private final ClassSpace space;
+
+        String clazzName;
+
+        boolean qualified;
+
+        QualifiedClass( final ClassSpace space )
+        {
+            this.space = space;
+        }
+
+        public void enterClass( final int modifiers, final String name, final String _extends,
+                                final String[] _implements )
+        {
+            if ( ( modifiers & NON_INSTANTIABLE ) == 0 )
+            {
+                clazzName = name.replace( '/', '.' );
+            }
+        }
+
+        public AnnotationVisitor visitAnnotation( final String desc )
+        {
+            if ( null != clazzName && !qualified )
+            {
+                qualified = qualifierCache.qualify( space, desc );
+            }
+            return null;
+        }
+
+        public void leaveClass()
+        {
+            // no-op
+        }
+    }
+}
@@ -10,22 +10,38 @@
  *******************************************************************************/
 package org.eclipse.sisu.space;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.NoSuchElementException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipFile;
 
 import org.eclipse.sisu.inject.Logs;
 
 /**
  * {@link ClassFinder} that finds {@link Class} resources listed in the named index.
+ * <p>
+ * When a binary index with binding facts sits next to the plain text index, and matches it, it is used instead.
+ * Several indices can be read by a pool of threads; this uses the same 'sisu.scan.threads' system property as
+ * {@link SpaceScanner}. Classes in a {@link URLClassSpace} are found next to their index where possible, avoiding a
+ * class loader lookup per class.
  */
 public final class IndexedClassFinder
     implements ClassFinder
@@ -34,7 +50,7 @@ public final class IndexedClassFinder
     // Constants
     // ----------------------------------------------------------------------
 
-    private static final Pattern LINE_PATTERN = Pattern.compile( "\\s*([^#\\s]+).*" );
+    private static final String JAR_FILE_PREFIX = "jar:file:";
 
     // ----------------------------------------------------------------------
     // Implementation fields
@@ -68,6 +84,102 @@ public final class IndexedClassFinder
     // ----------------------------------------------------------------------
 
     public Iterable<String> indexedNames( final ClassSpace space )
+    {
+        final Collection<IndexedType> types = indexedTypes( space );
+        final List<String> names = new ArrayList<String>( types.size() );
+        for ( final IndexedType type : types )
+        {
+            names.add( type.clazzName );
+        }
+        return names;
+    }
+
+    public Enumeration<URL> findClasses( final ClassSpace space )
+    {
+        final List<URL> indices = findIndices( space );
+        final List<List<IndexedType>> contents = readIndices( indices );
+
+        final Set<String> visited = new HashSet<String>();
+        final List<URL> classes = new ArrayList<URL>();
+        for ( int i = 0; i < indices.size(); i++ )
+        {
+            final List<String> names = new ArrayList<String>();
+            for ( final IndexedType type : contents.get( i ) )
+            {
+                if ( visited.add( type.clazzName ) )
+                {
+                    names.add( type.clazzName.replace( '.', '/' ) + ".class" );
+                }
+            }
+            final URL root = space instanceof URLClassSpace ? classRoot( indices.get( i ) ) : null;
+            final URL[] urls = null != root ? findLocalClasses( root, names ) : new URL[names.size()];
+            for ( int n = 0; n < urls.length; n++ )
+            {
+                // fall back to the class space when the class isn't next to its index
+                final URL url = null != urls[n] ? urls[n] : space.getResource( names.get( n ) );
+                if ( null != url )
+                {
+                    classes.add( url );
+                }
+            }
+        }
+        return Collections.enumeration( classes );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Reads the indexed types; uses the binary form of each index when available, otherwise the plain text form.
+     * 
+     * @param space The class space
+     * @return Indexed types, in index order
+     */
+    Collection<IndexedType> indexedTypes( final ClassSpace space )
+    {
+        final Map<String, IndexedType> types = new LinkedHashMap<String, IndexedType>();
+        for ( final List<IndexedType> content : readIndices( findIndices( space ) ) )
+        {
+            for ( final IndexedType type : content )
+            {
+                if ( !types.containsKey( type.clazzName ) )
+                {
+                    types.put( type.clazzName, type );
+                }
+            }
+        }
+        return types.values();
+    }
+
+    /**
+     * Parses a line from a plain text index; each line contains a class name with optional comment.
+     * 
+     * @param line The index line
+     * @return Class name; {@code null} if the line doesn't contain one
+     */
+    static String parseLine( final String line )
+    {
+        final int length = line.length();
+        int start = 0;
+        while ( start < length && Character.isWhitespace( line.charAt( start ) ) )
+        {
+            start++;
+        }
+        int end = start;
+        while ( end < length )
+        {
+            final char c = line.charAt( end );
+            if ( '#' == c || Character.isWhitespace( c ) )
+            {
+                break;
+            }
+            end++;
+        }
+        return end > start ? line.substring( start, end ) : null;
+    }
+
+    private List<URL> findIndices( final ClassSpace space )
     {
         final Enumeration<URL> indices;
 
@@ -80,66 +192,218 @@ public final class IndexedClassFinder
             indices = space.findEntries( localPath, indexName, false );
         }
 
-        final Set<String> names = new LinkedHashSet<String>();
-        while ( indices.hasMoreElements() )
+        return Collections.list( indices );
+    }
+
+    /**
+     * Reads the given indices, using a pool of threads when there are several of them.
+     * 
+     * @param indices The index resources
+     * @return Contents of each index, in the same order
+     */
+    private List<List<IndexedType>> readIndices( final List<URL> indices )
+    {
+        final List<List<IndexedType>> contents = new ArrayList<List<IndexedType>>( indices.size() );
+        if ( SpaceScanner.DEFAULT_THREADS > 1 && indices.size() > 1 )
         {
-            final URL url = indices.nextElement();
             try
             {
-                final BufferedReader reader =
-                    new BufferedReader( new InputStreamReader( Streams.open( url ), "UTF-8" ) );
+                final ExecutorService executor =
+                    Executors.newFixedThreadPool( Math.min( SpaceScanner.DEFAULT_THREADS, indices.size() ),
+                                                  new SpaceScanner.ScannerThreadFactory() );
                 try
                 {
-                    // each index contains a list of class names, one per line with optional comment
-                    for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+                    final List<Future<List<IndexedType>>> results =
+                        new ArrayList<Future<List<IndexedType>>>( indices.size() );
+                    for ( final URL url : indices )
                     {
-                        final Matcher m = LINE_PATTERN.matcher( line );
-                        if ( m.matches() )
+                        results.add( executor.submit( new Callable<List<IndexedType>>()
                         {
-                            names.add( m.group( 1 ) );
-                        }
+                            public List<IndexedType> call()
+                            {
+                                return readIndex( url );
+                            }
+                        } ) );
                     }
+                    for ( final Future<List<IndexedType>> result : results )
+                    {
+                        contents.add( result.get() );
+                    }
+                    return contents;
                 }
                 finally
                 {
-                    reader.close();
+                    executor.shutdownNow();
                 }
             }
-            catch ( final IOException e )
+            catch ( final Exception e ) // InterruptedException + SecurityException + etc...
             {
-                Logs.warn( "Problem reading: {}", url, e );
+                contents.clear(); // fall back to reading the indices on this thread
             }
         }
-        return names;
+        for ( final URL url : indices )
+        {
+            contents.add( readIndex( url ) );
+        }
+        return contents;
     }
 
-    public Enumeration<URL> findClasses( final ClassSpace space )
+    /**
+     * Reads the given index; uses the binary form when it matches the plain text form, otherwise the plain text form.
+     * 
+     * @param url The plain text index
+     * @return Indexed types, in index order
+     */
+    private List<IndexedType> readIndex( final URL url )
     {
-        final Iterator<String> itr = indexedNames( space ).iterator();
+        final String path = url.getPath();
+        final int i = path.lastIndexOf( null != localPath ? localPath + indexName : indexName );
+        final String source = i > 0 ? path.substring( 0, i ) : path;
+        final List<String> names = new ArrayList<String>();
+        try
+        {
+            final BufferedReader reader =
+                new BufferedReader( new InputStreamReader( Streams.open( url ), "UTF-8" ) );
+            try
+            {
+                for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+                {
+                    final String name = parseLine( line );
+                    if ( null != name )
+                    {
+                        names.add( name );
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch ( final IOException e )
+        {
+            Logs.warn( "Problem reading: {}", url, e );
+            return Collections.emptyList();
+        }
+        try
+        {
+            return readBinaryIndex( url, source, names );
+        }
+        catch ( final IOException e ) // NOPMD
+        {
+            // no usable binary index, fall back to plain text
+        }
+        final List<IndexedType> types = new ArrayList<IndexedType>( names.size() );
+        for ( final String name : names )
+        {
+            types.add( new IndexedType( name, 0, null, null, source ) );
+        }
+        return types;
+    }
+
+    /**
+     * Reads the binary index that lives next to the given plain text index.
+     * 
+     * @param url The plain text index
+     * @param source The index source
+     * @param names The class names in the plain text index
+     * @return Indexed types
+     * @throws IOException if the binary index is missing or doesn't match the plain text index
+     */
+    private List<IndexedType> readBinaryIndex( final URL url, final String source, final List<String> names )
+        throws IOException
+    {
+        final DataInputStream in = new DataInputStream( new BufferedInputStream( //
+            Streams.open( new URL( url, indexName + IndexedType.BINARY_SUFFIX ) ) ) );
+        try
+        {
+            return IndexedType.readIndex( in, source, names );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
 
-        return new Enumeration<URL>()
+    /**
+     * Determines the local directory or jar containing the given index.
+     * 
+     * @param index The index resource
+     * @return Root of the directory or jar; {@code null} if it is not local
+     */
+    private URL classRoot( final URL index )
+    {
+        final String spec = index.toExternalForm();
+        final String indexPath = null != localPath ? localPath + indexName : indexName;
+        if ( !spec.endsWith( indexPath ) )
+        {
+            return null;
+        }
+        final String rootSpec = spec.substring( 0, spec.length() - indexPath.length() );
+        final boolean isJar = rootSpec.startsWith( JAR_FILE_PREFIX ) && rootSpec.endsWith( "!/" )
+            && rootSpec.indexOf( "!/" ) == rootSpec.length() - 2;
+        if ( isJar || rootSpec.startsWith( "file:" ) && rootSpec.endsWith( "/" ) )
         {
-            private URL nextURL;
+            try
+            {
+                return new URL( rootSpec );
+            }
+            catch ( final MalformedURLException e ) // NOPMD
+            {
+                // fall-through, not a local root
+            }
+        }
+        return null;
+    }
 
-            public boolean hasMoreElements()
+    /**
+     * Finds the named classes underneath the given local directory or jar.
+     * 
+     * @param root The local directory or jar
+     * @param names The class resource names
+     * @return Class URLs; entries are {@code null} where the class was not found
+     */
+    private static URL[] findLocalClasses( final URL root, final List<String> names )
+    {
+        final URL[] urls = new URL[names.size()];
+        try
+        {
+            if ( "jar".equals( root.getProtocol() ) )
             {
-                while ( null == nextURL && itr.hasNext() )
+                final String jarPath = root.getPath();
+                final ZipFile zip = new ZipFile( FileEntryIterator.toFile( new URL( jarPath.substring( 0, //
+                    jarPath.length() - 2 ) ) ) );
+                try
                 {
-                    nextURL = space.getResource( itr.next().replace( '.', '/' ) + ".class" );
+                    for ( int i = 0; i < urls.length; i++ )
+                    {
+                        if ( null != zip.getEntry( names.get( i ) ) )
+                        {
+                            urls[i] = new URL( root, names.get( i ) );
+                        }
+                    }
+                }
+                finally
+                {
+                    zip.close();
                 }
-                return null != nextURL;
             }
-
-            public URL nextElement()
+            else
             {
-                if ( hasMoreElements() )
+                final File dir = FileEntryIterator.toFile( root );
+                for ( int i = 0; i < urls.length; i++ )
                 {
-                    final URL tempURL = nextURL;
-                    nextURL = null;
-                    return tempURL;
+                    if ( new File( dir, names.get( i ) ).isFile() )
+                    {
+                        urls[i] = new URL( root, names.get( i ) );
+                    }
                 }
-                throw new NoSuchElementException();
             }
-        };
+        }
+        catch ( final Exception e ) // IOException + SecurityException + etc...
+        {
+            Logs.trace( "Problem reading: {}", root, e );
+        }
+        return urls;
     }
 }
@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.annotation.IncompleteAnnotationException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import javax.inject.Provider;
+
+import org.eclipse.sisu.Mediator;
+
+import com.google.inject.Module;
+
+/**
+ * Entry in the binary Sisu index; records the binding facts of a qualified class so it can be bound without scanning.
+ * <p>
+ * The binary index lives next to the plain text index, for example {@code META-INF/sisu/javax.inject.Named.bin}.
+ * Entries written without facts (flags of zero) only record the class name and must still be scanned. The header
+ * records the number and checksum of the class names in the plain text index, so a binary index that was not updated
+ * along with its plain text index is ignored.
+ */
+final class IndexedType
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final String BINARY_SUFFIX = ".bin";
+
+    static final int KNOWN = 0x0001;
+
+    static final int MODULE = 0x0002;
+
+    static final int MEDIATOR = 0x0004;
+
+    static final int LEGACY_MEDIATOR = 0x0008;
+
+    static final int PROVIDER = 0x0010;
+
+    static final int SINGLETON = 0x0020;
+
+    static final int EAGER_SINGLETON = 0x0040;
+
+    static final int KINDS = MODULE | MEDIATOR | LEGACY_MEDIATOR | PROVIDER;
+
+    private static final int HAS_NAME = 0x0100;
+
+    private static final int HAS_TYPES = 0x0200;
+
+    private static final int MAGIC = 0x53495355; // "SISU"
+
+    private static final int VERSION = 2;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    final String clazzName;
+
+    final int flags;
+
+    final String name;
+
+    final String[] types;
+
+    final String source;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    /**
+     * @param clazzName The binary class name
+     * @param flags The binding facts; zero if unknown
+     * @param name The {@code @Named} value; {@code null} if not annotated
+     * @param types The {@code @Typed} binding types; {@code null} if not annotated
+     */
+    IndexedType( final String clazzName, final int flags, final String name, final String[] types )
+    {
+        this( clazzName, flags, name, types, null );
+    }
+
+    /**
+     * @param clazzName The binary class name
+     * @param flags The binding facts; zero if unknown
+     * @param name The {@code @Named} value; {@code null} if not annotated
+     * @param types The {@code @Typed} binding types; {@code null} if not annotated
+     * @param source The location of the index containing this entry
+     */
+    IndexedType( final String clazzName, final int flags, final String name, final String[] types,
+                 final String source )
+    {
+        this.clazzName = clazzName;
+        this.flags = flags;
+        this.name = name;
+        this.types = types;
+        this.source = source;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    @Override
+    public String toString()
+    {
+        return clazzName;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @return {@code true} if the binding facts were recorded; otherwise {@code false}
+     */
+    boolean isKnown()
+    {
+        return ( flags & KNOWN ) != 0;
+    }
+
+    /**
+     * Records the binding facts of the given class using reflection.
+     *
+     * @param clazz The qualified class
+     * @return Indexed type
+     */
+    static IndexedType fromClass( final Class<?> clazz )
+    {
+        int flags = KNOWN | kindOf( clazz );
+        if ( QualifiedTypeBinder.isSingleton( clazz ) )
+        {
+            flags |= SINGLETON;
+        }
+        if ( QualifiedTypeBinder.isEagerSingleton( clazz ) )
+        {
+            flags |= EAGER_SINGLETON;
+        }
+
+        String name = null;
+        final javax.inject.Named jsr330 = clazz.getAnnotation( javax.inject.Named.class );
+        if ( null != jsr330 )
+        {
+            try
+            {
+                name = jsr330.value();
+            }
+            catch ( final IncompleteAnnotationException e )
+            {
+                name = ""; // early prototypes of JSR330 @Named declared no default value
+            }
+        }
+        else
+        {
+            final com.google.inject.name.Named guice = clazz.getAnnotation( com.google.inject.name.Named.class );
+            if ( null != guice )
+            {
+                name = guice.value();
+            }
+        }
+
+        String[] types = null;
+        final Class<?>[] bindingTypes = QualifiedTypeBinder.getBindingTypes( clazz );
+        if ( null != bindingTypes )
+        {
+            types = new String[bindingTypes.length];
+            for ( int i = 0; i < types.length; i++ )
+            {
+                types[i] = bindingTypes[i].getName();
+            }
+        }
+
+        return new IndexedType( clazz.getName(), flags, name, types );
+    }
+
+    /**
+     * Determines the kind of binding required by the given type; kinds are ordered by precedence, lowest first.
+     * 
+     * @param clazz The type
+     * @return One of {@link #KINDS}; zero for a plain component
+     */
+    @SuppressWarnings( "deprecation" )
+    static int kindOf( final Class<?> clazz )
+    {
+        if ( Module.class.isAssignableFrom( clazz ) )
+        {
+            return MODULE;
+        }
+        if ( Mediator.class.isAssignableFrom( clazz ) )
+        {
+            return MEDIATOR;
+        }
+        if ( org.sonatype.inject.Mediator.class.isAssignableFrom( clazz ) )
+        {
+            return LEGACY_MEDIATOR;
+        }
+        if ( Provider.class.isAssignableFrom( clazz ) )
+        {
+            return PROVIDER;
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the given entries as a binary index.
+     *
+     * @param out The output
+     * @param names The class names in the plain text index
+     * @param entries The index entries
+     */
+    static void writeIndex( final DataOutputStream out, final Collection<String> names,
+                            final Collection<IndexedType> entries )
+        throws IOException
+    {
+        out.writeInt( MAGIC );
+        out.writeShort( VERSION );
+        out.writeInt( names.size() );
+        out.writeInt( checksum( names ) );
+        out.writeInt( entries.size() );
+        for ( final IndexedType entry : entries )
+        {
+            entry.writeTo( out );
+        }
+    }
+
+    /**
+     * Reads entries from a binary index.
+     *
+     * @param in The input
+     * @param source The location of the index
+     * @param names The class names in the plain text index; {@code null} to skip validation
+     * @return Index entries
+     * @throws IOException if the index is corrupt, uses an unknown version, or doesn't match the plain text index
+     */
+    static List<IndexedType> readIndex( final DataInputStream in, final String source, final Collection<String> names )
+        throws IOException
+    {
+        if ( MAGIC != in.readInt() )
+        {
+            throw new IOException( "Not a binary Sisu index" );
+        }
+        final int version = in.readShort();
+        if ( VERSION != version )
+        {
+            throw new IOException( "Unsupported binary Sisu index version: " + version );
+        }
+        final int nameCount = in.readInt();
+        final int nameChecksum = in.readInt();
+        if ( null != names && ( names.size() != nameCount || checksum( names ) != nameChecksum ) )
+        {
+            throw new IOException( "Binary Sisu index does not match plain text index" );
+        }
+        final int count = in.readInt();
+        final List<IndexedType> entries = new ArrayList<IndexedType>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            entries.add( readFrom( in, source ) );
+        }
+        return entries;
+    }
+
+    /**
+     * Calculates a checksum of the given class names, in order.
+     * 
+     * @param names The class names
+     * @return Checksum of the names
+     */
+    static int checksum( final Collection<String> names )
+    {
+        final CRC32 crc = new CRC32();
+        try
+        {
+            for ( final String n : names )
+            {
+                crc.update( n.getBytes( "UTF-8" ) );
+                crc.update( '\n' );
+            }
+        }
+        catch ( final UnsupportedEncodingException e )
+        {
+            // this shouldn't happen, hence illegal state
+            throw new IllegalStateException( e.toString() );
+        }
+        return (int) crc.getValue();
+    }
+
+    private void writeTo( final DataOutput out )
+        throws IOException
+    {
+        out.writeUTF( clazzName );
+        out.writeShort( flags | ( null != name ? HAS_NAME : 0 ) | ( null != types ? HAS_TYPES : 0 ) );
+        if ( null != name )
+        {
+            out.writeUTF( name );
+        }
+        if ( null != types )
+        {
+            out.writeShort( types.length );
+            for ( final String t : types )
+            {
+                out.writeUTF( t );
+            }
+        }
+    }
+
+    private static IndexedType readFrom( final DataInput in, final String source )
+        throws IOException
+    {
+        final String clazzName = in.readUTF();
+        final int flags = in.readUnsignedShort();
+        final String name = ( flags & HAS_NAME ) != 0 ? in.readUTF() : null;
+        String[] types = null;
+        if ( ( flags & HAS_TYPES ) != 0 )
+        {
+            types = new String[in.readUnsignedShort()];
+            for ( int i = 0; i < types.length; i++ )
+            {
+                types[i] = in.readUTF();
+            }
+        }
+        return new IndexedType( clazzName, flags & ~( HAS_NAME | HAS_TYPES ), name, types, source );
+    }
+}
@@ -0,0 +1,325 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.eclipse.sisu.inject.Logs;
+
+/**
+ * {@link ClassFinder} that finds classes in named modules as well as the class path of the {@link ClassSpace}.<br>
+ * <br>
+ * On Java 9 and above applications on the module path are not visible from {@code java.class.path}, so this finder
+ * also lists the modules of a module layer (by default the boot layer). Modules packaged as local jars or directories
+ * are scanned the same way as class path entries; other modules are listed using their module reader. Platform
+ * modules are skipped. The {@link ClassSpace} should be able to load classes from these modules. On older releases
+ * this finder behaves like {@link DefaultClassFinder}.
+ */
+public final class ModuleClassFinder
+    implements ClassFinder
+{
+    // ----------------------------------------------------------------------
+    // Static initialization
+    // ----------------------------------------------------------------------
+
+    static
+    {
+        Method[] methods;
+        try
+        {
+            final Class<?> layerClazz = Class.forName( "java.lang.ModuleLayer" );
+            final Class<?> configurationClazz = Class.forName( "java.lang.module.Configuration" );
+            final Class<?> resolvedClazz = Class.forName( "java.lang.module.ResolvedModule" );
+            final Class<?> referenceClazz = Class.forName( "java.lang.module.ModuleReference" );
+            final Class<?> readerClazz = Class.forName( "java.lang.module.ModuleReader" );
+            final Class<?> optionalClazz = Class.forName( "java.util.Optional" );
+            final Class<?> streamClazz = Class.forName( "java.util.stream.BaseStream" );
+            methods = new Method[] { //
+                layerClazz.getMethod( "boot" ), //
+                layerClazz.getMethod( "configuration" ), //
+                configurationClazz.getMethod( "modules" ), //
+                resolvedClazz.getMethod( "reference" ), //
+                referenceClazz.getMethod( "location" ), //
+                referenceClazz.getMethod( "open" ), //
+                readerClazz.getMethod( "list" ), //
+                readerClazz.getMethod( "find", String.class ), //
+                readerClazz.getMethod( "close" ), //
+                optionalClazz.getMethod( "orElse", Object.class ), //
+                streamClazz.getMethod( "iterator" ) };
+        }
+        catch ( final Exception e ) // ClassNotFoundException + NoSuchMethodException + etc...
+        {
+            methods = null;
+        }
+        catch ( final LinkageError e )
+        {
+            methods = null;
+        }
+        MODULE_METHODS = methods;
+    }
+
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final Method[] MODULE_METHODS;
+
+    private static final int BOOT = 0, CONFIGURATION = 1, MODULES = 2, REFERENCE = 3, LOCATION = 4, OPEN = 5,
+                    LIST = 6, FIND = 7, CLOSE = 8, OR_ELSE = 9, ITERATOR = 10;
+
+    private static final String MODULE_INFO = "module-info.class";
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final Object layer;
+
+    private List<URL> moduleLocations;
+
+    private List<URL> moduleClasses;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    /**
+     * Finds classes in the boot layer and on the class path.
+     */
+    public ModuleClassFinder()
+    {
+        this.layer = null;
+    }
+
+    /**
+     * Finds classes in the given module layer and on the class path.
+     *
+     * @param layer The {@code java.lang.ModuleLayer}
+     */
+    public ModuleClassFinder( final Object layer )
+    {
+        this.layer = layer;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    public Enumeration<URL> findClasses( final ClassSpace space )
+    {
+        listModules();
+
+        final List<URL> locations = new ArrayList<URL>( moduleLocations );
+        if ( space instanceof URLClassSpace )
+        {
+            locations.removeAll( Arrays.asList( ( (URLClassSpace) space ).getURLs() ) );
+        }
+
+        final List<Enumeration<URL>> sequence = new ArrayList<Enumeration<URL>>( 3 );
+        if ( !locations.isEmpty() )
+        {
+            final URL[] urls = locations.toArray( new URL[locations.size()] );
+            sequence.add( new ModuleInfoFilter( new ResourceEnumeration( null, "*.class", true, urls ) ) );
+        }
+        if ( !moduleClasses.isEmpty() )
+        {
+            sequence.add( Collections.enumeration( moduleClasses ) );
+        }
+        sequence.add( space.findEntries( null, "*.class", true ) );
+        return sequence.size() == 1 ? sequence.get( 0 ) : new SequenceEnumeration( sequence );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Lists the modules in the layer; their contents don't change, so this only needs to happen once.
+     */
+    private synchronized void listModules()
+    {
+        if ( null != moduleLocations )
+        {
+            return;
+        }
+        moduleLocations = new ArrayList<URL>();
+        moduleClasses = new ArrayList<URL>();
+        if ( null == MODULE_METHODS )
+        {
+            return; // no module support
+        }
+        try
+        {
+            final Object moduleLayer = null != layer ? layer : invoke( BOOT, null );
+            final Object configuration = invoke( CONFIGURATION, moduleLayer );
+            for ( final Object module : (Collection<?>) invoke( MODULES, configuration ) )
+            {
+                final Object reference = invoke( REFERENCE, module );
+                final URI location = (URI) invoke( OR_ELSE, invoke( LOCATION, reference ), (Object) null );
+                if ( null == location || "jrt".equals( location.getScheme() ) )
+                {
+                    continue; // platform module
+                }
+                if ( "file".equals( location.getScheme() ) )
+                {
+                    moduleLocations.add( toURL( location ) );
+                }
+                else
+                {
+                    listClasses( reference );
+                }
+            }
+        }
+        catch ( final Exception e ) // IllegalAccessException + InvocationTargetException + etc...
+        {
+            Logs.trace( "Problem listing modules in: {}", layer, e );
+        }
+    }
+
+    /**
+     * Uses the module reader to list the classes in the given module.
+     */
+    private void listClasses( final Object reference )
+        throws Exception
+    {
+        final Object reader = invoke( OPEN, reference );
+        try
+        {
+            final Iterator<?> itr = (Iterator<?>) invoke( ITERATOR, invoke( LIST, reader ) );
+            while ( itr.hasNext() )
+            {
+                final String name = (String) itr.next();
+                if ( name.endsWith( CLASS_SUFFIX ) && !name.endsWith( MODULE_INFO ) )
+                {
+                    final URI uri = (URI) invoke( OR_ELSE, invoke( FIND, reader, name ), (Object) null );
+                    if ( null != uri )
+                    {
+                        moduleClasses.add( uri.toURL() );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            invoke( CLOSE, reader );
+        }
+    }
+
+    private static URL toURL( final URI location )
+        throws Exception
+    {
+        final File file = new File( location );
+        final URL url = location.toURL();
+        if ( file.isDirectory() && !url.getPath().endsWith( "/" ) )
+        {
+            return new URL( url + "/" ); // exploded module
+        }
+        return url;
+    }
+
+    private static Object invoke( final int method, final Object target, final Object... args )
+        throws Exception
+    {
+        return MODULE_METHODS[method].invoke( target, args );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Skips module descriptors, which look like classes but don't have class content.
+     */
+    private static final class ModuleInfoFilter
+        implements Enumeration<URL>
+    {
+        private final Enumeration<URL> delegate;
+
+        private URL nextURL;
+
+        ModuleInfoFilter( final Enumeration<URL> delegate )
+        {
+            this.delegate = delegate;
+        }
+
+        public boolean hasMoreElements()
+        {
+            while ( null == nextURL && delegate.hasMoreElements() )
+            {
+                final URL url = delegate.nextElement();
+                if ( !url.getPath().endsWith( MODULE_INFO ) )
+                {
+                    nextURL = url;
+                }
+            }
+            return null != nextURL;
+        }
+
+        public URL nextElement()
+        {
+            if ( hasMoreElements() )
+            {
+                final URL url = nextURL;
+                nextURL = null;
+                return url;
+            }
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Enumerates the given enumerations one after the other.
+     */
+    private static final class SequenceEnumeration
+        implements Enumeration<URL>
+    {
+        private final Iterator<Enumeration<URL>> sequence;
+
+        private Enumeration<URL> current;
+
+        SequenceEnumeration( final List<Enumeration<URL>> sequence )
+        {
+            this.sequence = sequence.iterator();
+            current = this.sequence.next();
+        }
+
+        public boolean hasMoreElements()
+        {
+            while ( !current.hasMoreElements() && sequence.hasNext() )
+            {
+                current = sequence.next();
+            }
+            return current.hasMoreElements();
+        }
+
+        public URL nextElement()
+        {
+            if ( hasMoreElements() )
+            {
+                return current.nextElement();
+            }
+            throw new NoSuchElementException();
+        }
+    }
+}
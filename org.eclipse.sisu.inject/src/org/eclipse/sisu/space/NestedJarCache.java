@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+/**
+ * Gives indexed access to JARs nested inside other JARs, such as "jar:file:app.war!/WEB-INF/lib/util.jar".<br>
+ * <br>
+ * Each nested JAR is copied once to a temporary file and opened as a {@link ZipFile}, so entries are found using its
+ * central directory instead of streaming through the nested JAR from the start for every entry. Copies are refreshed
+ * when the outer JAR changes, and temporary files are removed when the {@link ZipFile} is closed or collected.
+ */
+final class NestedJarCache
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final NestedJarCache SHARED = new NestedJarCache();
+
+    private static final int MAX_CACHED_JARS = 16;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final Map<String, CachedJar> cachedJars = new LinkedHashMap<String, CachedJar>( 16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<String, CachedJar> eldest )
+        {
+            return size() > MAX_CACHED_JARS; // evicted jars are closed once they're no longer referenced
+        }
+    };
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Returns the indexed copy of the given nested JAR, copying it if necessary.
+     *
+     * @param jarURL The nested JAR
+     * @return Open zip file
+     */
+    ZipFile zipFile( final URL jarURL )
+        throws IOException
+    {
+        final String key = jarURL.toExternalForm();
+        final long lastModified = lastModified( jarURL );
+        synchronized ( cachedJars )
+        {
+            final CachedJar jar = cachedJars.get( key );
+            if ( null != jar && jar.lastModified == lastModified )
+            {
+                return jar.zip;
+            }
+        }
+        final ZipFile zip = copy( jarURL );
+        synchronized ( cachedJars )
+        {
+            final CachedJar jar = cachedJars.get( key );
+            if ( null != jar && jar.lastModified == lastModified )
+            {
+                zip.close(); // another thread won the race
+                return jar.zip;
+            }
+            cachedJars.put( key, new CachedJar( zip, lastModified ) );
+        }
+        return zip;
+    }
+
+    /**
+     * Copies the given nested JAR to a temporary file and opens it.
+     */
+    private static ZipFile copy( final URL jarURL )
+        throws IOException
+    {
+        final File tempFile = File.createTempFile( "sisu", ".jar" );
+        try
+        {
+            final InputStream in = Streams.open( jarURL );
+            try
+            {
+                final OutputStream out = new FileOutputStream( tempFile );
+                try
+                {
+                    final byte[] buf = new byte[8192];
+                    for ( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+                    {
+                        out.write( buf, 0, n );
+                    }
+                }
+                finally
+                {
+                    out.close();
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            return new ZipFile( tempFile, ZipFile.OPEN_READ | ZipFile.OPEN_DELETE );
+        }
+        catch ( final IOException e )
+        {
+            tempFile.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the last modified time of the local JAR containing the given nested JAR; 0 if it is not known.
+     */
+    private static long lastModified( final URL jarURL )
+    {
+        try
+        {
+            final String path = jarURL.getPath();
+            final int entryIndex = path.indexOf( "!/" );
+            if ( entryIndex > 0 && path.startsWith( "file:" ) )
+            {
+                return FileEntryIterator.toFile( new URL( path.substring( 0, entryIndex ) ) ).lastModified();
+            }
+        }
+        catch ( final Exception e ) // NOPMD
+        {
+            // fall-through, cached copy will not be refreshed
+        }
+        return 0;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Indexed copy of a nested JAR, along with the time the outer JAR was last modified.
+     */
+    private static final class CachedJar
+    {
+        final ZipFile zip;
+
+        final long lastModified;
+
+        CachedJar( final ZipFile zip, final long lastModified )
+        {
+            this.zip = zip;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import javax.inject.Provider;
 
 import org.eclipse.sisu.Mediator;
 import org.eclipse.sisu.inject.BeanLocator;
+import org.eclipse.sisu.inject.DeferredClass;
 import org.eclipse.sisu.inject.TypeArguments;
 
 import com.google.inject.Binder;
@@ -63,7 +64,7 @@ public final class QualifiedTypeBinder
 
     private static final TypeLiteral<Object> OBJECT_TYPE_LITERAL = TypeLiteral.get( Object.class );
 
-    private static final boolean HAS_JSR299_TYPED;
+    static final boolean HAS_JSR299_TYPED;
 
     // ----------------------------------------------------------------------
     // Implementation fields
@@ -71,6 +72,8 @@ public final class QualifiedTypeBinder
 
     private final Binder rootBinder;
 
+    private final boolean deferred;
+
     private MediationListener mediationListener;
 
     private Object currentSource;
@@ -82,31 +85,47 @@ public final class QualifiedTypeBinder
     // ----------------------------------------------------------------------
 
     public QualifiedTypeBinder( final Binder binder )
+    {
+        this( binder, false );
+    }
+
+    /**
+     * @param binder The binder
+     * @param deferred When {@code true} plain components are bound without loading their classes
+     */
+    QualifiedTypeBinder( final Binder binder, final boolean deferred )
     {
         rootBinder = binder;
         this.binder = binder;
+        this.deferred = deferred;
     }
 
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
 
-    @SuppressWarnings( "deprecation" )
     public void hear( final Class qualifiedType, final Object source )
     {
-        if ( currentSource != source )
-        {
-            if ( null != source )
-            {
-                binder = rootBinder.withSource( source );
-                currentSource = source;
-            }
-            else
-            {
-                binder = rootBinder;
-                currentSource = null;
-            }
-        }
+        hear( null, qualifiedType, null, source );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Like {@link #hear(Class, Object)} but uses binding facts captured from bytecode, instead of reflecting on the
+     * annotations of the qualified type.
+     * 
+     * @param space The class space
+     * @param qualifiedType The qualified type
+     * @param facts The binding facts; {@code null} if not known
+     * @param source The source of this type
+     */
+    @SuppressWarnings( "deprecation" )
+    void hear( final ClassSpace space, final Class qualifiedType, final IndexedType facts, final Object source )
+    {
+        selectSource( source );
 
         if ( !TypeArguments.isConcrete( qualifiedType ) )
         {
@@ -126,17 +145,90 @@ public final class QualifiedTypeBinder
         }
         else if ( Provider.class.isAssignableFrom( qualifiedType ) )
         {
-            bindProviderType( qualifiedType );
+            bindProviderType( qualifiedType, space, null != facts && facts.isKnown() ? facts : null );
         }
         else
         {
-            bindQualifiedType( qualifiedType );
+            bindQualifiedType( qualifiedType, space, null != facts && facts.isKnown() ? facts : null );
         }
     }
 
-    // ----------------------------------------------------------------------
-    // Implementation methods
-    // ----------------------------------------------------------------------
+    /**
+     * @return {@code true} if plain components should be bound without loading their classes
+     */
+    boolean isDeferred()
+    {
+        return deferred;
+    }
+
+    /**
+     * Binds the given qualified type without loading it, using previously captured binding facts. Only plain
+     * components can be bound this way; modules, mediators, providers, and eager singletons must be loaded.
+     * 
+     * @param space The class space
+     * @param type The binding facts
+     * @param source The source of this type
+     * @return {@code true} if the type was bound; otherwise {@code false}
+     */
+    boolean hearDeferred( final ClassSpace space, final IndexedType type, final Object source )
+    {
+        if ( !deferred || !type.isKnown() || ( type.flags & ( IndexedType.KINDS | IndexedType.EAGER_SINGLETON ) ) != 0 )
+        {
+            return false;
+        }
+
+        final Class<?>[] types;
+        try
+        {
+            types = loadBindingTypes( space, type );
+        }
+        catch ( final TypeNotPresentException e )
+        {
+            return false; // let the eager path report the problem
+        }
+
+        selectSource( source );
+
+        // scoping is left to the implementation's just-in-time binding, which is used by the deferred provider
+        final DeferredClass<?> implementation = space.deferLoadClass( type.clazzName );
+        final Named bindingName = getBindingName( type.name, type.clazzName );
+
+        if ( null != types )
+        {
+            final Key key = getBindingKey( OBJECT_TYPE_LITERAL, bindingName );
+            for ( final Class bindingType : types )
+            {
+                binder.bind( key.ofType( bindingType ) ).toProvider( implementation.asProvider() );
+            }
+        }
+        else
+        {
+            binder.bind( WildcardKey.get( implementation, bindingName ) ).toProvider( implementation.asProvider() );
+        }
+        return true;
+    }
+
+    /**
+     * Selects the binder to use for the given source.
+     * 
+     * @param source The source of the current type
+     */
+    private void selectSource( final Object source )
+    {
+        if ( currentSource != source )
+        {
+            if ( null != source )
+            {
+                binder = rootBinder.withSource( source );
+                currentSource = source;
+            }
+            else
+            {
+                binder = rootBinder;
+                currentSource = null;
+            }
+        }
+    }
 
     /**
      * Installs an instance of the given {@link Module}.
@@ -213,8 +305,10 @@ public final class QualifiedTypeBinder
      * Binds the given provider type using a binding key determined by common-use heuristics.
      * 
      * @param providerType The provider type
+     * @param space The class space
+     * @param facts The binding facts; {@code null} to use reflection
      */
-    private void bindProviderType( final Class<?> providerType )
+    private void bindProviderType( final Class<?> providerType, final ClassSpace space, final IndexedType facts )
     {
         final TypeLiteral[] args = resolveTypeArguments( providerType, javax.inject.Provider.class );
         if ( args.length != 1 )
@@ -225,16 +319,16 @@ public final class QualifiedTypeBinder
         {
             binder.bind( providerType ).in( Scopes.SINGLETON );
 
-            final Named bindingName = getBindingName( providerType );
-            final Class<?>[] types = getBindingTypes( providerType );
+            final Named bindingName = getBindingName( providerType, facts );
+            final Class<?>[] types = getBindingTypes( providerType, space, facts );
 
             final Key key = getBindingKey( args[0], bindingName );
             final ScopedBindingBuilder sbb = binder.bind( key ).toProvider( providerType );
-            if ( isEagerSingleton( providerType ) )
+            if ( null != facts ? ( facts.flags & IndexedType.EAGER_SINGLETON ) != 0 : isEagerSingleton( providerType ) )
             {
                 sbb.asEagerSingleton();
             }
-            else if ( isSingleton( providerType ) )
+            else if ( null != facts ? ( facts.flags & IndexedType.SINGLETON ) != 0 : isSingleton( providerType ) )
             {
                 sbb.in( Scopes.SINGLETON );
             }
@@ -253,17 +347,19 @@ public final class QualifiedTypeBinder
      * Binds the given qualified type using a binding key determined by common-use heuristics.
      * 
      * @param qualifiedType The qualified type
+     * @param space The class space
+     * @param facts The binding facts; {@code null} to use reflection
      */
-    private void bindQualifiedType( final Class<?> qualifiedType )
+    private void bindQualifiedType( final Class<?> qualifiedType, final ClassSpace space, final IndexedType facts )
     {
         final ScopedBindingBuilder sbb = binder.bind( qualifiedType );
-        if ( isEagerSingleton( qualifiedType ) )
+        if ( null != facts ? ( facts.flags & IndexedType.EAGER_SINGLETON ) != 0 : isEagerSingleton( qualifiedType ) )
         {
             sbb.asEagerSingleton();
         }
 
-        final Named bindingName = getBindingName( qualifiedType );
-        final Class<?>[] types = getBindingTypes( qualifiedType );
+        final Named bindingName = getBindingName( qualifiedType, facts );
+        final Class<?>[] types = getBindingTypes( qualifiedType, space, facts );
 
         if ( null != types )
         {
@@ -404,7 +500,71 @@ public final class QualifiedTypeBinder
         return Names.named( qualifiedType.getName() );
     }
 
-    private static Class<?>[] getBindingTypes( final Class<?> clazz )
+    private static Named getBindingName( final Class<?> qualifiedType, final IndexedType facts )
+    {
+        return null != facts ? getBindingName( facts.name, facts.clazzName ) : getBindingName( qualifiedType );
+    }
+
+    private static Class<?>[] getBindingTypes( final Class<?> clazz, final ClassSpace space, final IndexedType facts )
+    {
+        if ( null != facts )
+        {
+            try
+            {
+                return loadBindingTypes( space, facts );
+            }
+            catch ( final TypeNotPresentException e ) // NOPMD
+            {
+                // fall-through and let reflection report the problem
+            }
+        }
+        return getBindingTypes( clazz );
+    }
+
+    /**
+     * Loads the binding types recorded in the given binding facts.
+     * 
+     * @param space The class space
+     * @param facts The binding facts
+     * @return Binding types; {@code null} if the type is not annotated with {@code @Typed}
+     */
+    private static Class<?>[] loadBindingTypes( final ClassSpace space, final IndexedType facts )
+    {
+        if ( null == facts.types )
+        {
+            return null;
+        }
+        final Class<?>[] types = new Class<?>[facts.types.length];
+        for ( int i = 0; i < types.length; i++ )
+        {
+            types[i] = space.loadClass( facts.types[i] );
+        }
+        return types;
+    }
+
+    /**
+     * Determines the binding name from a captured {@code @Named} value, using the same heuristics as reflection.
+     * 
+     * @param name The {@code @Named} value; {@code null} if not annotated
+     * @param clazzName The binary class name
+     * @return Binding name; {@code null} for the default binding
+     */
+    private static Named getBindingName( final String name, final String clazzName )
+    {
+        if ( null != name && name.length() > 0 )
+        {
+            return "default".equals( name ) ? null : Names.named( name );
+        }
+        final String simpleName = clazzName.substring( Math.max( clazzName.lastIndexOf( '.' ),
+                                                                 clazzName.lastIndexOf( '$' ) ) + 1 );
+        if ( simpleName.startsWith( "Default" ) )
+        {
+            return null;
+        }
+        return Names.named( clazzName );
+    }
+
+    static Class<?>[] getBindingTypes( final Class<?> clazz )
     {
         for ( Class<?> c = clazz; null != c && c != Object.class; c = c.getSuperclass() )
         {
@@ -425,14 +585,14 @@ public final class QualifiedTypeBinder
         return null;
     }
 
-    private static boolean isSingleton( final Class<?> type )
+    static boolean isSingleton( final Class<?> type )
     {
         return type.isAnnotationPresent( javax.inject.Singleton.class )
             || type.isAnnotationPresent( com.google.inject.Singleton.class );
     }
 
     @SuppressWarnings( "deprecation" )
-    private static boolean isEagerSingleton( final Class<?> type )
+    static boolean isEagerSingleton( final Class<?> type )
     {
         return type.isAnnotationPresent( org.eclipse.sisu.EagerSingleton.class )
             || type.isAnnotationPresent( org.sonatype.inject.EagerSingleton.class );
@@ -11,6 +11,11 @@
 package org.eclipse.sisu.space;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Qualifier;
 
@@ -32,6 +37,14 @@ public final class QualifiedTypeVisitor
 
     private final QualifiedTypeListener listener;
 
+    private final QualifiedTypeBinder binder;
+
+    private final ScannedType scannedType;
+
+    private final List<PendingType> pendingTypes = new ArrayList<PendingType>();
+
+    private final Set<String> unresolvedDescs = new LinkedHashSet<String>();
+
     private ClassSpace space;
 
     private URL location;
@@ -42,6 +55,8 @@ public final class QualifiedTypeVisitor
 
     private boolean qualified;
 
+    private List<String> unknownDescs;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
@@ -49,6 +64,18 @@ public final class QualifiedTypeVisitor
     public QualifiedTypeVisitor( final QualifiedTypeListener listener )
     {
         this.listener = listener;
+
+        if ( listener instanceof QualifiedTypeBinder )
+        {
+            // capture binding facts from the bytecode, so the binder doesn't need to reflect on annotations
+            binder = (QualifiedTypeBinder) listener;
+            scannedType = new ScannedType();
+        }
+        else
+        {
+            binder = null;
+            scannedType = null;
+        }
     }
 
     // ----------------------------------------------------------------------
@@ -81,9 +108,16 @@ public final class QualifiedTypeVisitor
 
     public void enterSpace( final ClassSpace _space )
     {
+        reportPendingTypes();
+
         space = _space;
         source = null;
 
+        if ( null != scannedType )
+        {
+            scannedType.enterSpace();
+        }
+
         if ( Logs.TRACE_ENABLED )
         {
             verify( _space, Qualifier.class, Module.class );
@@ -95,6 +129,7 @@ public final class QualifiedTypeVisitor
         location = url;
         clazzName = null;
         qualified = false;
+        unknownDescs = null;
 
         return this;
     }
@@ -104,6 +139,10 @@ public final class QualifiedTypeVisitor
         if ( ( modifiers & NON_INSTANTIABLE ) == 0 )
         {
             clazzName = name; // concrete type
+            if ( null != scannedType )
+            {
+                scannedType.enterClass( modifiers, name, _extends, _implements );
+            }
         }
     }
 
@@ -111,7 +150,26 @@ public final class QualifiedTypeVisitor
     {
         if ( null != clazzName )
         {
-            qualified = qualified || qualifierCache.qualify( space, desc );
+            if ( !qualified )
+            {
+                final Boolean result = qualifierCache.lookup( space, desc );
+                if ( null == result )
+                {
+                    if ( null == unknownDescs )
+                    {
+                        unknownDescs = new ArrayList<String>( 2 );
+                    }
+                    unknownDescs.add( desc ); // resolve later in batch
+                }
+                else
+                {
+                    qualified = result.booleanValue();
+                }
+            }
+            if ( null != scannedType )
+            {
+                return scannedType.visitAnnotation( desc );
+            }
         }
         return null;
     }
@@ -119,25 +177,148 @@ public final class QualifiedTypeVisitor
     public void disqualify()
     {
         qualified = false;
+        unknownDescs = null;
     }
 
     public void leaveClass()
     {
-        if ( qualified )
+        if ( qualified || null != unknownDescs )
         {
-            listener.hear( space.loadClass( clazzName.replace( '/', '.' ) ), findSource() );
+            final String name = clazzName.replace( '/', '.' );
+            final IndexedType type = null != scannedType ? scannedType.toIndexedType( space ) : null;
+            if ( qualified && pendingTypes.isEmpty() )
+            {
+                report( name, type, findSource() );
+            }
+            else
+            {
+                // keep reporting order consistent with scanning order
+                pendingTypes.add( new PendingType( name, type, findSource(), qualified ? null : unknownDescs ) );
+                if ( !qualified )
+                {
+                    unresolvedDescs.addAll( unknownDescs );
+                }
+            }
         }
     }
 
     public void leaveSpace()
     {
-        // no-op
+        reportPendingTypes();
     }
 
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Visits the given indexed types; types with recorded binding facts are reported without scanning bytecode.
+     * 
+     * @param _space The class space
+     * @param types The indexed types
+     */
+    void visitIndex( final ClassSpace _space, final Iterable<IndexedType> types )
+    {
+        enterSpace( _space );
+        for ( final IndexedType type : types )
+        {
+            final String resourceName = type.clazzName.replace( '.', '/' ) + ".class";
+            if ( type.isKnown() )
+            {
+                reportPendingTypes();
+
+                final String typeSource = null != type.source ? type.source : space.toString();
+                if ( null != binder && binder.isDeferred() && null != space.getResource( resourceName )
+                    && binder.hearDeferred( space, type, typeSource ) )
+                {
+                    continue;
+                }
+                final Class<?> clazz;
+                try
+                {
+                    clazz = space.loadClass( type.clazzName );
+                }
+                catch ( final TypeNotPresentException e )
+                {
+                    if ( null == space.getResource( resourceName ) )
+                    {
+                        continue; // stale index entry
+                    }
+                    throw e;
+                }
+                if ( null != binder )
+                {
+                    binder.hear( space, clazz, type, typeSource );
+                }
+                else
+                {
+                    listener.hear( clazz, typeSource );
+                }
+            }
+            else
+            {
+                final URL url = space.getResource( resourceName );
+                if ( null != url )
+                {
+                    SpaceScanner.accept( visitClass( url ), url );
+                }
+            }
+        }
+        leaveSpace();
+    }
+
+    /**
+     * Reports the given qualified type to the listener.
+     */
+    private void report( final String name, final IndexedType type, final String typeSource )
+    {
+        if ( null != scannedType )
+        {
+            if ( null != type && binder.hearDeferred( space, type, typeSource ) )
+            {
+                return; // class won't be loaded until it's needed
+            }
+            binder.hear( space, space.loadClass( name ), type, typeSource );
+        }
+        else
+        {
+            listener.hear( space.loadClass( name ), typeSource );
+        }
+    }
+
+    /**
+     * Resolves any unknown annotations in one batch, then reports the pending types that turned out to be qualified.
+     */
+    private void reportPendingTypes()
+    {
+        if ( !pendingTypes.isEmpty() )
+        {
+            final Map<String, Boolean> results = qualifierCache.resolve( space, unresolvedDescs );
+            unresolvedDescs.clear();
+            try
+            {
+                for ( final PendingType pending : pendingTypes )
+                {
+                    try
+                    {
+                        if ( pending.isQualified( results ) )
+                        {
+                            report( pending.name, pending.type, pending.source );
+                        }
+                    }
+                    catch ( final Exception e )
+                    {
+                        Logs.trace( "Problem scanning: {}", pending.name, e );
+                    }
+                }
+            }
+            finally
+            {
+                pendingTypes.clear();
+            }
+        }
+    }
+
     /**
      * Finds source of current class; detailed location or {@link ClassSpace#toString()}.
      */
@@ -159,4 +340,58 @@ public final class QualifiedTypeVisitor
         }
         return source;
     }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Type waiting for its unknown annotations to be resolved.
+     */
+    private static final class PendingType
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        final String name;
+
+        final IndexedType type;
+
+        final String source;
+
+        private final List<String> unknownDescs;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        PendingType( final String name, final IndexedType type, final String source, final List<String> unknownDescs )
+        {
+            this.name = name;
+            this.type = type;
+            this.source = source;
+            this.unknownDescs = unknownDescs;
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        boolean isQualified( final Map<String, Boolean> results )
+        {
+            if ( null == unknownDescs )
+            {
+                return true; // already known to be qualified
+            }
+            for ( final String desc : unknownDescs )
+            {
+                if ( Boolean.TRUE.equals( results.get( desc ) ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
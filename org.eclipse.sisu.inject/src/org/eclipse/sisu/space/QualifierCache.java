@@ -10,13 +10,19 @@
  *******************************************************************************/
 package org.eclipse.sisu.space;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Qualifier;
 
 /**
- * Caching {@link ClassVisitor} that maintains a map of known {@link Qualifier} annotations.
+ * Caching {@link ClassVisitor} that maintains a bounded map of known {@link Qualifier} annotations per space.<br>
+ * <br>
+ * Misses are resolved using a shared {@link QualifierStore} and only parsed when the store has no result.
  */
 final class QualifierCache
     implements ClassVisitor
@@ -29,14 +35,50 @@ final class QualifierCache
 
     private static final String NAMED_DESC = "Ljavax/inject/Named;";
 
+    private static final String JAVA_PREFIX = "Ljava/";
+
+    private static final String JSR330_PREFIX = "Ljavax/inject/";
+
+    private static final byte[] VISIBLE_ANNOTATIONS = asciiBytes( "RuntimeVisibleAnnotations" );
+
+    private static final byte[] INVISIBLE_ANNOTATIONS = asciiBytes( "RuntimeInvisibleAnnotations" );
+
+    private static final int MAX_CACHED_RESULTS = 256;
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
 
-    private static final Map<String, Boolean> cachedResults = seedResults();
+    @SuppressWarnings( "serial" )
+    private final Map<String, Boolean> cachedResults = new LinkedHashMap<String, Boolean>( 32, 0.75f, true )
+    {
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<String, Boolean> eldest )
+        {
+            return size() > MAX_CACHED_RESULTS;
+        }
+    };
+
+    private final QualifierStore store;
+
+    private ClassSpace cachedSpace;
 
     private boolean isQualified;
 
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    QualifierCache()
+    {
+        this( QualifierStore.SHARED );
+    }
+
+    QualifierCache( final QualifierStore store )
+    {
+        this.store = store;
+    }
+
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
@@ -70,50 +112,177 @@ final class QualifierCache
      */
     boolean qualify( final ClassSpace space, final String desc )
     {
-        if ( NAMED_DESC.equals( desc ) )
+        final Boolean result = lookup( space, desc );
+        return null != result ? result.booleanValue() : resolve( space, desc );
+    }
+
+    /**
+     * Looks for a cached result for the given annotation type; doesn't scan the annotation.
+     * 
+     * @param space The class space
+     * @param desc The annotation descriptor
+     * @return {@code TRUE} if the annotation is a qualifier; {@code FALSE} if not; {@code null} if unknown
+     */
+    Boolean lookup( final ClassSpace space, final String desc )
+    {
+        if ( NAMED_DESC.equals( desc ) || store.isSeeded( desc ) )
         {
-            return true;
+            return Boolean.TRUE;
         }
-        final Boolean result = cachedResults.get( desc );
-        if ( null == result )
+        if ( space != cachedSpace )
         {
-            isQualified = false;
+            cachedResults.clear(); // same descriptor might mean something else in another space
+            cachedSpace = space;
+        }
+        return cachedResults.get( desc );
+    }
 
-            final String name = desc.substring( 1, desc.length() - 1 );
-            SpaceScanner.accept( this, space.getResource( name + ".class" ) );
-            cachedResults.put( desc, Boolean.valueOf( isQualified ) );
+    /**
+     * Resolves a batch of unknown annotation types, consulting the shared store before scanning them.
+     * 
+     * @param space The class space
+     * @param descs The annotation descriptors
+     * @return Map of descriptor to result
+     */
+    Map<String, Boolean> resolve( final ClassSpace space, final Collection<String> descs )
+    {
+        final Map<String, Boolean> results = new HashMap<String, Boolean>();
+        for ( final String desc : descs )
+        {
+            final Boolean result = lookup( space, desc );
+            results.put( desc, null != result ? result : Boolean.valueOf( resolve( space, desc ) ) );
+        }
+        return results;
+    }
 
-            return isQualified;
+    /**
+     * Resolves a single annotation type, consulting the shared store before scanning it.
+     */
+    private boolean resolve( final ClassSpace space, final String desc )
+    {
+        final String name = desc.substring( 1, desc.length() - 1 );
+        final URL url = space.getResource( name + ".class" );
+        if ( null == url )
+        {
+            cachedResults.put( desc, Boolean.FALSE );
+            return false;
+        }
+        final String location = QualifierStore.locationOf( url );
+        Boolean result = store.get( location );
+        if ( null == result )
+        {
+            isQualified = false;
+            SpaceScanner.accept( this, url );
+            result = Boolean.valueOf( isQualified );
+            store.put( desc, location, isQualified );
         }
+        cachedResults.put( desc, result );
         return result.booleanValue();
     }
 
     /**
-     * Seeds the cache with the fully-qualified names listed in the 'sisu.qualifiers' system property.
+     * Quickly scans the constant pool of the given class to see if it could possibly be qualified.<br>
+     * Rejects classes that aren't instantiable, have no annotations, or only reference JDK and JSR330 types other
+     * than {@code @Named}. The result doesn't depend on the class space, so prefiltered classes can be shared.
      * 
-     * @return Seeded results
+     * @param clazz The class bytes
+     * @return {@code false} if the class is definitely not qualified; otherwise {@code true}
      */
-    private static Map<String, Boolean> seedResults()
+    static boolean mayBeQualified( final byte[] clazz )
     {
-        final Map<String, Boolean> results = new ConcurrentHashMap<String, Boolean>( 32, 0.75f, 1 );
         try
         {
-            final String qualifiers = System.getProperty( "sisu.qualifiers" );
-            if ( qualifiers != null && qualifiers.length() > 0 )
+            boolean hasAnnotations = false, hasCandidate = false;
+            int i = 10;
+            for ( int n = 1, count = readUnsignedShort( clazz, 8 ); n < count; n++ )
             {
-                final StringBuilder buf = new StringBuilder( "L" );
-                for ( final String q : qualifiers.trim().split( "\\s*,\\s*" ) )
+                switch ( clazz[i] )
                 {
-                    buf.append( q.replace( '.', '/' ) ).append( ';' );
-                    results.put( buf.toString(), Boolean.TRUE );
-                    buf.setLength( 1 );
+                    case 1: // UTF8
+                        final int len = readUnsignedShort( clazz, i + 1 );
+                        if ( !hasAnnotations )
+                        {
+                            hasAnnotations = matches( clazz, i + 3, len, VISIBLE_ANNOTATIONS )
+                                || matches( clazz, i + 3, len, INVISIBLE_ANNOTATIONS );
+                        }
+                        if ( !hasCandidate && len > 2 && 'L' == clazz[i + 3] && ';' == clazz[i + 2 + len] )
+                        {
+                            final String desc = new String( clazz, i + 3, len, "UTF-8" );
+                            // other descriptors might still turn out to be qualifiers in this space
+                            hasCandidate = NAMED_DESC.equals( desc )
+                                || !desc.startsWith( JAVA_PREFIX ) && !desc.startsWith( JSR330_PREFIX );
+                        }
+                        i += 3 + len;
+                        break;
+                    case 7: // Class
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        i += 3;
+                        break;
+                    case 15: // MethodHandle
+                        i += 4;
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        i += 5;
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        i += 9;
+                        n++; // takes two slots
+                        break;
+                    default:
+                        return true; // unknown constant, let the full parser decide
                 }
             }
+            return hasAnnotations && hasCandidate && ( readUnsignedShort( clazz, i ) & NON_INSTANTIABLE ) == 0;
         }
         catch ( final RuntimeException e ) // NOPMD
         {
-            // couldn't access system property, leave results unseeded
+            return true; // broken or truncated class, let the full parser decide
         }
-        return results;
+        catch ( final UnsupportedEncodingException e )
+        {
+            return true; // shouldn't happen, every JRE supports UTF-8
+        }
+    }
+
+    private static int readUnsignedShort( final byte[] bytes, final int index )
+    {
+        return ( bytes[index] & 0xFF ) << 8 | bytes[index + 1] & 0xFF;
+    }
+
+    private static boolean matches( final byte[] bytes, final int offset, final int len, final byte[] expected )
+    {
+        if ( len != expected.length )
+        {
+            return false;
+        }
+        for ( int i = 0; i < len; i++ )
+        {
+            if ( bytes[offset + i] != expected[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] asciiBytes( final String text )
+    {
+        final byte[] bytes = new byte[text.length()];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            bytes[i] = (byte) text.charAt( i );
+        }
+        return bytes;
     }
 }
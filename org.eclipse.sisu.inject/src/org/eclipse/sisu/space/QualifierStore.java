@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Qualifier;
+
+/**
+ * Shared store of positive and negative {@link Qualifier} results, keyed by the location of each annotation class.<br>
+ * <br>
+ * Results for local annotation classes include their last modified time, so they can be safely persisted. Results
+ * are never shared by descriptor alone, because the same descriptor may resolve differently in another class space.
+ * The 'sisu.qualifiers' system property lists extra annotations that should always be treated as qualifiers.
+ */
+final class QualifierStore
+{
+    // ----------------------------------------------------------------------
+    // Static initialization
+    // ----------------------------------------------------------------------
+
+    static
+    {
+        final QualifierStore store = new QualifierStore();
+        try
+        {
+            final String qualifiers = System.getProperty( "sisu.qualifiers" );
+            if ( qualifiers != null && qualifiers.length() > 0 )
+            {
+                for ( final String q : qualifiers.trim().split( "\\s*,\\s*" ) )
+                {
+                    store.seed( 'L' + q.replace( '.', '/' ) + ';' );
+                }
+            }
+        }
+        catch ( final RuntimeException e ) // NOPMD
+        {
+            // couldn't access system property, leave store unseeded
+        }
+        SHARED = store;
+    }
+
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final QualifierStore SHARED;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final ConcurrentMap<String, Result> results = new ConcurrentHashMap<String, Result>( 32, 0.75f, 1 );
+
+    private final Set<String> seeds = new HashSet<String>();
+
+    private volatile boolean dirty;
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @param desc The annotation descriptor
+     * @return {@code true} if the descriptor was configured as a qualifier; otherwise {@code false}
+     */
+    boolean isSeeded( final String desc )
+    {
+        return seeds.contains( desc );
+    }
+
+    /**
+     * @param location The location of the annotation class
+     * @return Stored result; {@code null} if there is no result for this location
+     */
+    Boolean get( final String location )
+    {
+        final Result result = results.get( location );
+        return null != result ? Boolean.valueOf( result.isQualifier ) : null;
+    }
+
+    /**
+     * Records the result for the given annotation class.
+     *
+     * @param desc The annotation descriptor
+     * @param location The location of the annotation class
+     * @param isQualifier {@code true} if the annotation is a qualifier; otherwise {@code false}
+     */
+    void put( final String desc, final String location, final boolean isQualifier )
+    {
+        results.put( location, new Result( desc, isQualifier ) );
+        dirty = true;
+    }
+
+    /**
+     * @return {@code true} if there are results that haven't been written; otherwise {@code false}
+     */
+    boolean isDirty()
+    {
+        return dirty;
+    }
+
+    /**
+     * Writes persistable results to the given output.
+     *
+     * @param out The data output
+     */
+    void writeTo( final DataOutput out )
+        throws IOException
+    {
+        dirty = false;
+        final List<Map.Entry<String, Result>> persistable = new ArrayList<Map.Entry<String, Result>>();
+        for ( final Map.Entry<String, Result> e : results.entrySet() )
+        {
+            if ( e.getKey().indexOf( '|' ) > 0 )
+            {
+                persistable.add( e ); // location includes last modified time
+            }
+        }
+        out.writeInt( persistable.size() );
+        for ( final Map.Entry<String, Result> e : persistable )
+        {
+            out.writeUTF( e.getKey() );
+            out.writeUTF( e.getValue().desc );
+            out.writeBoolean( e.getValue().isQualifier );
+        }
+    }
+
+    /**
+     * Merges results previously written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in The data input
+     */
+    void readFrom( final DataInput in )
+        throws IOException
+    {
+        for ( int i = 0, count = in.readInt(); i < count; i++ )
+        {
+            final String location = in.readUTF();
+            results.putIfAbsent( location, new Result( in.readUTF(), in.readBoolean() ) );
+        }
+    }
+
+    /**
+     * Determines the location key of the given annotation class; includes the last modified time where known.
+     *
+     * @param url The annotation class resource
+     * @return Location key
+     */
+    static String locationOf( final URL url )
+    {
+        final String location = url.toExternalForm();
+        try
+        {
+            File file = null;
+            if ( "file".equals( url.getProtocol() ) )
+            {
+                file = FileEntryIterator.toFile( url );
+            }
+            else if ( "jar".equals( url.getProtocol() ) )
+            {
+                final String path = url.getPath();
+                final int jarIndex = path.indexOf( "!/" );
+                if ( jarIndex > 0 && path.startsWith( "file:" ) && path.indexOf( "!/", jarIndex + 2 ) < 0 )
+                {
+                    file = FileEntryIterator.toFile( new URL( path.substring( 0, jarIndex ) ) );
+                }
+            }
+            final long lastModified = null != file ? file.lastModified() : 0;
+            if ( lastModified > 0 )
+            {
+                return location + '|' + lastModified;
+            }
+        }
+        catch ( final Exception e ) // NOPMD
+        {
+            // fall-through, location will not be persisted
+        }
+        return location;
+    }
+
+    private void seed( final String desc )
+    {
+        seeds.add( desc );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Stored result: annotation descriptor plus whether it is a qualifier.
+     */
+    private static final class Result
+    {
+        final String desc;
+
+        final boolean isQualifier;
+
+        Result( final String desc, final boolean isQualifier )
+        {
+            this.desc = desc;
+            this.isQualifier = isQualifier;
+        }
+    }
+}
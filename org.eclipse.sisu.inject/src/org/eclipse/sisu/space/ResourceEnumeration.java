@@ -22,6 +22,7 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -58,6 +59,8 @@ final class ResourceEnumeration
 
     private Iterator<String> entryNames = NO_ENTRIES;
 
+    private ZipEntryIterator zipEntries;
+
     private String nextEntryName;
 
     // ----------------------------------------------------------------------
@@ -177,6 +180,7 @@ final class ResourceEnumeration
     private Iterator<String> scan( final URL url )
     {
         isFolder = url.getPath().endsWith( "/" );
+        zipEntries = null;
 
         if ( globber == GlobberStrategy.EXACT && !recurse )
         {
@@ -195,7 +199,12 @@ final class ResourceEnumeration
             return NO_ENTRIES;
         }
 
-        return isFolder ? new FileEntryIterator( url, subPath, recurse ) : new ZipEntryIterator( url );
+        if ( isFolder )
+        {
+            return new FileEntryIterator( url, subPath, recurse );
+        }
+        zipEntries = new ZipEntryIterator( url );
+        return zipEntries;
     }
 
     /**
@@ -216,7 +225,7 @@ final class ResourceEnumeration
             // workaround JDK limitation that doesn't allow nested "jar:" URLs
             return new URL( currentURL, "#" + name, new NestedJarHandler() );
         }
-        return new URL( "jar:" + currentURL + "!/" + name );
+        return new URL( "jar:" + currentURL + "!/" + ( null != zipEntries ? zipEntries.entryPath( name ) : name ) );
     }
 
     /**
@@ -256,7 +265,9 @@ final class ResourceEnumeration
     }
 
     /**
-     * Custom {@link URLConnection} that can access JARs nested inside an arbitrary resource.
+     * Custom {@link URLConnection} that can access JARs nested inside an arbitrary resource.<br>
+     * <br>
+     * Entries are read from an indexed copy of the nested JAR kept by {@link NestedJarCache}.
      */
     static final class NestedJarConnection
         extends URLConnection
@@ -277,9 +288,21 @@ final class ResourceEnumeration
             throws IOException
         {
             final URL containingURL = new URL( "jar", null, -1, url.getFile() );
-            final ZipInputStream is = new ZipInputStream( Streams.open( containingURL ) );
             final String entryName = url.getRef();
 
+            final ZipFile zip = indexedJar( containingURL );
+            if ( null != zip )
+            {
+                final ZipEntry entry = zip.getEntry( entryName );
+                if ( null != entry )
+                {
+                    return zip.getInputStream( entry );
+                }
+                throw new ZipException( "No such entry: " + entryName + " in: " + containingURL );
+            }
+
+            // couldn't index the nested jar, so stream through it instead
+            final ZipInputStream is = new ZipInputStream( Streams.open( containingURL ) );
             for ( ZipEntry entry = is.getNextEntry(); entry != null; entry = is.getNextEntry() )
             {
                 if ( entryName.equals( entry.getName() ) )
@@ -289,5 +312,17 @@ final class ResourceEnumeration
             }
             throw new ZipException( "No such entry: " + entryName + " in: " + containingURL );
         }
+
+        private static ZipFile indexedJar( final URL containingURL )
+        {
+            try
+            {
+                return NestedJarCache.SHARED.zipFile( containingURL );
+            }
+            catch ( final Exception e ) // IOException + SecurityException + etc...
+            {
+                return null;
+            }
+        }
     }
 }
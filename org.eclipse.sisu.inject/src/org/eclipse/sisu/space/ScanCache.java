@@ -0,0 +1,589 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.net.URL;
+import java.security.Principal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.sisu.inject.Logs;
+
+/**
+ * Persists the {@link ClassRecord}s found in each class path entry to a cache directory.<br>
+ * <br>
+ * Local jars are keyed by their path, size, and last modified time; remote jars by a hash of their content.
+ * Directories and nested jars are not cached. Bundles are keyed by their id, symbolic name, version, and last
+ * modified time, along with those of their fragments; their results are stored by id and location, so results for
+ * an updated bundle replace the old ones. The 'sisu.scan.cache' system property selects the default
+ * directory; otherwise a private directory under the user's home is used. Cache directories are created with
+ * owner-only permissions, and are ignored if they are owned by another user. Entries that haven't been loaded for 30
+ * days are removed when new results are first stored in each run.<br>
+ * <br>
+ * The cache also persists the results of the shared {@link QualifierStore}.
+ */
+final class ScanCache
+{
+    // ----------------------------------------------------------------------
+    // Static initialization
+    // ----------------------------------------------------------------------
+
+    static
+    {
+        File directory;
+        try
+        {
+            final String path = System.getProperty( "sisu.scan.cache" );
+            if ( null != path && path.length() > 0 )
+            {
+                directory = new File( path );
+            }
+            else
+            {
+                // per-user location; shared temporary directories would let other users plant results
+                final String home = System.getProperty( "user.home" );
+                directory = null != home && home.length() > 0 ? new File( home, ".sisu/scan-cache" ) : null;
+            }
+        }
+        catch ( final RuntimeException e )
+        {
+            directory = null;
+        }
+        DEFAULT = null != directory ? new ScanCache( directory ) : null;
+    }
+
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    /**
+     * Default cache; {@code null} when no safe location is available.
+     */
+    static final ScanCache DEFAULT;
+
+    static final String QUALIFIERS_NAME = "qualifiers.cache";
+
+    private static final int MAGIC = 0x53495355; // "SISU"
+
+    private static final int VERSION = 2;
+
+    private static final String SUFFIX = ".scan";
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * Entries that haven't been loaded for this long are removed.
+     */
+    private static final long MAX_IDLE_MILLIS = 30 * DAY_MILLIS;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ConcurrentMap<File, ScanCache> CACHES = new ConcurrentHashMap<File, ScanCache>();
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final File directory;
+
+    private volatile boolean loadedQualifiers;
+
+    private volatile Boolean trusted;
+
+    private volatile boolean evictedIdleEntries;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    ScanCache( final File directory )
+    {
+        this.directory = directory;
+    }
+
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Returns the cache persisted in the given directory; the same cache is used for the same directory.
+     *
+     * @param directory The cache directory
+     * @return Scan cache
+     */
+    static ScanCache forDirectory( final File directory )
+    {
+        final File key = directory.getAbsoluteFile();
+        ScanCache cache = CACHES.get( key );
+        if ( null == cache )
+        {
+            final ScanCache newCache = new ScanCache( key );
+            cache = CACHES.putIfAbsent( key, newCache );
+            if ( null == cache )
+            {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Determines the cache key for the given class path entry.
+     *
+     * @param entry The class path entry
+     * @return Cache key; {@code null} if the entry shouldn't be cached
+     */
+    String fingerprint( final URL entry )
+    {
+        if ( entry.getPath().endsWith( "/" ) || "jar".equals( entry.getProtocol() ) )
+        {
+            return null; // directories can change underneath us, nested jars have no stable location
+        }
+        try
+        {
+            if ( "file".equals( entry.getProtocol() ) )
+            {
+                return localFingerprint( entry );
+            }
+            return entry + "|" + contentHash( entry ) + '|' + ZipEntryIterator.RUNTIME_RELEASE;
+        }
+        catch ( final Exception e ) // IOException + SecurityException + etc...
+        {
+            Logs.trace( "Cannot fingerprint: {}", entry, e );
+            return null;
+        }
+    }
+
+    /**
+     * Loads the class records persisted under the given key.
+     *
+     * @param fingerprint The cache key
+     * @return Persisted records; {@code null} if there are none
+     */
+    ClassRecord[] load( final String fingerprint )
+    {
+        return load( fingerprint, fingerprint, null );
+    }
+
+    /**
+     * Loads the class records persisted under the given name and key, moving them to the given root location.<br>
+     * Used for bundles, whose entry URLs can change between runs even when their content doesn't.
+     *
+     * @param name The entry name
+     * @param fingerprint The cache key
+     * @param root The current root location
+     * @return Persisted records; {@code null} if there are none
+     */
+    ClassRecord[] load( final String name, final String fingerprint, final URL root )
+    {
+        final File file = cacheFile( name );
+        if ( !file.isFile() || !isTrusted() )
+        {
+            return null;
+        }
+        try
+        {
+            final DataInputStream in =
+                new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+            try
+            {
+                if ( MAGIC != in.readInt() || VERSION != in.readInt() || !fingerprint.equals( in.readUTF() ) )
+                {
+                    return null; // stale format or hash collision
+                }
+                final String storedRoot = in.readUTF();
+                final boolean moved = null != root && storedRoot.length() > 0 && !storedRoot.equals( root.toString() );
+                final ClassRecord[] records = new ClassRecord[in.readInt()];
+                for ( int i = 0; i < records.length; i++ )
+                {
+                    records[i] = moved ? ClassRecord.readFrom( in, storedRoot, root ) : ClassRecord.readFrom( in );
+                }
+                markUsed( file );
+                return records;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch ( final Exception e ) // IOException + SecurityException + etc...
+        {
+            Logs.trace( "Problem reading: {}", file, e );
+            return null;
+        }
+    }
+
+    /**
+     * Merges the persisted qualifier results into the given store; only done once per cache.
+     *
+     * @param store The qualifier store
+     */
+    void loadQualifiers( final QualifierStore store )
+    {
+        if ( loadedQualifiers )
+        {
+            return;
+        }
+        loadedQualifiers = true;
+        final File file = new File( directory, QUALIFIERS_NAME );
+        if ( !file.isFile() || !isTrusted() )
+        {
+            return;
+        }
+        try
+        {
+            final DataInputStream in =
+                new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+            try
+            {
+                if ( MAGIC == in.readInt() && VERSION == in.readInt() )
+                {
+                    store.readFrom( in );
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch ( final Exception e ) // IOException + SecurityException + etc...
+        {
+            Logs.trace( "Problem reading: {}", file, e );
+        }
+    }
+
+    /**
+     * Persists the results of the given qualifier store, if it has changed.
+     *
+     * @param store The qualifier store
+     */
+    void storeQualifiers( final QualifierStore store )
+    {
+        if ( !store.isDirty() )
+        {
+            return;
+        }
+        File tempFile = null;
+        try
+        {
+            if ( !makeDirectory() )
+            {
+                return;
+            }
+            tempFile = File.createTempFile( "sisu", ".tmp", directory );
+            final DataOutputStream out =
+                new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) );
+            try
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                store.writeTo( out );
+            }
+            finally
+            {
+                out.close();
+            }
+            replace( tempFile, new File( directory, QUALIFIERS_NAME ) );
+        }
+        catch ( final Exception e ) // IOException + SecurityException + etc...
+        {
+            Logs.trace( "Cannot persist qualifiers to: {}", directory, e );
+        }
+        finally
+        {
+            if ( null != tempFile && tempFile.exists() )
+            {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Persists the given class records under the given key.
+     *
+     * @param fingerprint The cache key
+     * @param records The class records
+     */
+    void store( final String fingerprint, final ClassRecord[] records )
+    {
+        store( fingerprint, fingerprint, null, records );
+    }
+
+    /**
+     * Persists the given class records under the given name and key, along with their root location.<br>
+     * Records stored under the same name replace each other, so updated bundles don't leave old results behind.
+     *
+     * @param name The entry name
+     * @param fingerprint The cache key
+     * @param root The root location; {@code null} if the records don't need to be moved when loaded
+     * @param records The class records
+     */
+    void store( final String name, final String fingerprint, final URL root, final ClassRecord[] records )
+    {
+        File tempFile = null;
+        try
+        {
+            if ( !makeDirectory() )
+            {
+                return;
+            }
+            tempFile = File.createTempFile( "sisu", ".tmp", directory );
+            final DataOutputStream out =
+                new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) );
+            try
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                out.writeUTF( fingerprint );
+                out.writeUTF( null != root ? root.toString() : "" );
+                out.writeInt( records.length );
+                for ( final ClassRecord r : records )
+                {
+                    r.writeTo( out );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            replace( tempFile, cacheFile( name ) );
+            evictIdleEntries();
+        }
+        catch ( final Exception e ) // IOException + SecurityException + etc...
+        {
+            Logs.trace( "Cannot persist scan results to: {}", directory, e );
+        }
+        finally
+        {
+            if ( null != tempFile && tempFile.exists() )
+            {
+                tempFile.delete();
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Fingerprints the given local jar using its size, last modified time and the running release (which decides how
+     * multi-release jars are seen); doesn't read the jar contents.
+     *
+     * @param entry The class path entry
+     * @return Fingerprint; {@code null} if the entry is not a local jar
+     */
+    static String localFingerprint( final URL entry )
+    {
+        if ( !"file".equals( entry.getProtocol() ) || entry.getPath().endsWith( "/" ) )
+        {
+            return null;
+        }
+        try
+        {
+            final File file = FileEntryIterator.toFile( entry );
+            return file.isFile() ? entry + "|" + file.length() + '|' + file.lastModified() + '|'
+                + ZipEntryIterator.RUNTIME_RELEASE : null;
+        }
+        catch ( final RuntimeException e ) // SecurityException + etc...
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the cache directory with owner-only permissions, if it doesn't already exist.
+     *
+     * @return {@code true} if the directory can be used; otherwise {@code false}
+     */
+    private boolean makeDirectory()
+    {
+        if ( !directory.isDirectory() && directory.mkdirs() )
+        {
+            // best effort: remove access for everyone, then grant it back to the owner
+            directory.setReadable( false, false );
+            directory.setWritable( false, false );
+            directory.setExecutable( false, false );
+            directory.setReadable( true, true );
+            directory.setWritable( true, true );
+            directory.setExecutable( true, true );
+        }
+        return directory.isDirectory() && isTrusted();
+    }
+
+    /**
+     * Only trusts cache directories that are owned by the current user; checked once per cache.
+     */
+    private boolean isTrusted()
+    {
+        if ( null == trusted )
+        {
+            final boolean isOwner = isOwnedByCurrentUser( directory );
+            if ( !isOwner )
+            {
+                Logs.warn( "Ignoring scan cache not owned by current user: {}", directory, null );
+            }
+            trusted = Boolean.valueOf( isOwner );
+        }
+        return trusted.booleanValue();
+    }
+
+    /**
+     * Uses NIO.2 (when available) to compare the owner of the given file with the current user.
+     */
+    private static boolean isOwnedByCurrentUser( final File file )
+    {
+        final Object owner;
+        try
+        {
+            final Class<?> pathClazz = Class.forName( "java.nio.file.Path" );
+            final Class<?> optionClazz = Class.forName( "java.nio.file.LinkOption" );
+            final Object path = File.class.getMethod( "toPath" ).invoke( file );
+            final Object noOptions = Array.newInstance( optionClazz, 0 );
+            owner = Class.forName( "java.nio.file.Files" ).getMethod( "getOwner", pathClazz, noOptions.getClass() )
+                .invoke( null, path, noOptions );
+        }
+        catch ( final ClassNotFoundException e )
+        {
+            return true; // no way to check ownership on this platform
+        }
+        catch ( final Exception e ) // IllegalAccessException + InvocationTargetException + etc...
+        {
+            Logs.trace( "Cannot determine owner of: {}", file, e );
+            return false;
+        }
+        try
+        {
+            final String user = System.getProperty( "user.name" );
+            final String name = ( (Principal) owner ).getName();
+            // Windows owners are reported as DOMAIN\name
+            return null != user && ( user.equals( name ) || name.endsWith( '\\' + user ) );
+        }
+        catch ( final RuntimeException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Records that the given entry has just been used; timestamps are updated at most once a day to avoid extra I/O.
+     */
+    private static void markUsed( final File file )
+    {
+        final long now = System.currentTimeMillis();
+        if ( now - file.lastModified() > DAY_MILLIS )
+        {
+            file.setLastModified( now ); // best effort
+        }
+    }
+
+    /**
+     * Removes entries that haven't been used recently; only done once per cache, when results are first stored.
+     */
+    private void evictIdleEntries()
+    {
+        if ( evictedIdleEntries )
+        {
+            return;
+        }
+        evictedIdleEntries = true;
+        final File[] files = directory.listFiles();
+        if ( null != files )
+        {
+            final long oldest = System.currentTimeMillis() - MAX_IDLE_MILLIS;
+            for ( final File f : files )
+            {
+                if ( f.getName().endsWith( SUFFIX ) && f.lastModified() < oldest )
+                {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private File cacheFile( final String name )
+    {
+        try
+        {
+            return new File( directory, toHex( sha1().digest( name.getBytes( "UTF-8" ) ) ) + SUFFIX );
+        }
+        catch ( final IOException e )
+        {
+            // this shouldn't happen, hence illegal state
+            throw new IllegalStateException( e.toString() );
+        }
+    }
+
+    private static void replace( final File tempFile, final File file )
+    {
+        // rename is atomic on most platforms, so readers never see partial results
+        if ( !tempFile.renameTo( file ) && !( file.delete() && tempFile.renameTo( file ) ) )
+        {
+            Logs.trace( "Cannot update: {}", file, null );
+        }
+    }
+
+    private static String contentHash( final URL url )
+        throws IOException
+    {
+        final MessageDigest digest = sha1();
+        final InputStream in = Streams.open( url );
+        try
+        {
+            final byte[] buf = new byte[8192];
+            for ( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+            {
+                digest.update( buf, 0, n );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return toHex( digest.digest() );
+    }
+
+    static MessageDigest sha1()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            // every JRE must support SHA-1, hence illegal state
+            throw new IllegalStateException( e.toString() );
+        }
+    }
+
+    static String toHex( final byte[] bytes )
+    {
+        final char[] buf = new char[bytes.length * 2];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            buf[2 * i] = HEX_DIGITS[bytes[i] >> 4 & 0x0F];
+            buf[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String( buf );
+    }
+}
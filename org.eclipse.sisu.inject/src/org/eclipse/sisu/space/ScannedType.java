@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Captures the binding facts of a scanned class from its bytecode, so it can be bound without reflection.<br>
+ * <br>
+ * Supertypes are read from their bytecode where possible, and only loaded when their bytecode isn't available.
+ */
+final class ScannedType
+    implements ClassVisitor, AnnotationVisitor
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final String OBJECT_NAME = "java/lang/Object";
+
+    private static final String JDK_PREFIX = "java/";
+
+    private static final String MODULE_NAME = "com/google/inject/Module";
+
+    private static final String MEDIATOR_NAME = "org/eclipse/sisu/Mediator";
+
+    private static final String LEGACY_MEDIATOR_NAME = "org/sonatype/inject/Mediator";
+
+    private static final String PROVIDER_NAME = "javax/inject/Provider";
+
+    private static final String JSR330_NAMED_DESC = "Ljavax/inject/Named;";
+
+    private static final String GUICE_NAMED_DESC = "Lcom/google/inject/name/Named;";
+
+    private static final String JSR330_SINGLETON_DESC = "Ljavax/inject/Singleton;";
+
+    private static final String GUICE_SINGLETON_DESC = "Lcom/google/inject/Singleton;";
+
+    private static final String EAGER_SINGLETON_DESC = "Lorg/eclipse/sisu/EagerSingleton;";
+
+    private static final String LEGACY_EAGER_SINGLETON_DESC = "Lorg/sonatype/inject/EagerSingleton;";
+
+    private static final String JSR299_TYPED_DESC = "Ljavax/enterprise/inject/Typed;";
+
+    private static final String TYPED_DESC = "Lorg/eclipse/sisu/Typed;";
+
+    private static final String[] NO_TYPES = {};
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final Map<String, IndexedType> supertypes;
+
+    private String clazzName;
+
+    private String superName;
+
+    private String[] interfaces;
+
+    private int flags;
+
+    private String jsr330Name;
+
+    private String guiceName;
+
+    private String[] jsr299Types;
+
+    private String[] types;
+
+    private String currentDesc;
+
+    private boolean complete;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    ScannedType()
+    {
+        this( new HashMap<String, IndexedType>() );
+    }
+
+    private ScannedType( final Map<String, IndexedType> supertypes )
+    {
+        this.supertypes = supertypes;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    public void enterClass( final int modifiers, final String name, final String _extends,
+                            final String[] _implements )
+    {
+        clazzName = name.replace( '/', '.' );
+        superName = ( modifiers & Modifier.INTERFACE ) == 0 ? _extends : null;
+        interfaces = _implements;
+        flags = 0;
+        jsr330Name = null;
+        guiceName = null;
+        jsr299Types = null;
+        types = null;
+        currentDesc = null;
+        complete = false;
+    }
+
+    public AnnotationVisitor visitAnnotation( final String desc )
+    {
+        if ( JSR330_NAMED_DESC.equals( desc ) )
+        {
+            jsr330Name = ""; // may be replaced by an explicit value
+        }
+        else if ( GUICE_NAMED_DESC.equals( desc ) )
+        {
+            guiceName = "";
+        }
+        else if ( JSR330_SINGLETON_DESC.equals( desc ) || GUICE_SINGLETON_DESC.equals( desc ) )
+        {
+            flags |= IndexedType.SINGLETON;
+        }
+        else if ( EAGER_SINGLETON_DESC.equals( desc ) || LEGACY_EAGER_SINGLETON_DESC.equals( desc ) )
+        {
+            flags |= IndexedType.EAGER_SINGLETON;
+        }
+        else if ( JSR299_TYPED_DESC.equals( desc ) )
+        {
+            jsr299Types = NO_TYPES;
+        }
+        else if ( TYPED_DESC.equals( desc ) )
+        {
+            types = NO_TYPES;
+        }
+        else
+        {
+            return null;
+        }
+        currentDesc = desc;
+        return this;
+    }
+
+    public void leaveClass()
+    {
+        complete = true;
+    }
+
+    public void enterAnnotation()
+    {
+        // nothing to do
+    }
+
+    public void visitElement( final String name, final Object value )
+    {
+        if ( "value".equals( name ) )
+        {
+            if ( JSR330_NAMED_DESC.equals( currentDesc ) )
+            {
+                jsr330Name = (String) value;
+            }
+            else if ( GUICE_NAMED_DESC.equals( currentDesc ) )
+            {
+                guiceName = (String) value;
+            }
+            else if ( JSR299_TYPED_DESC.equals( currentDesc ) )
+            {
+                jsr299Types = toStrings( (Object[]) value );
+            }
+            else if ( TYPED_DESC.equals( currentDesc ) )
+            {
+                types = toStrings( (Object[]) value );
+            }
+        }
+    }
+
+    public void leaveAnnotation()
+    {
+        currentDesc = null;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Clears any cached supertype details; supertypes may be different in the new space.
+     */
+    void enterSpace()
+    {
+        supertypes.clear();
+    }
+
+    /**
+     * Completes the captured facts by consulting the supertypes; the class itself is not loaded.
+     *
+     * @param space The class space
+     * @return Indexed type with known binding facts; {@code null} if the supertypes are not available
+     */
+    IndexedType toIndexedType( final ClassSpace space )
+    {
+        try
+        {
+            int kinds = 0;
+            String[] bindingTypes = null;
+            if ( null != jsr299Types && QualifiedTypeBinder.HAS_JSR299_TYPED )
+            {
+                bindingTypes = jsr299Types;
+            }
+            else if ( null != types )
+            {
+                bindingTypes = types;
+            }
+            if ( null != bindingTypes && bindingTypes.length == 0 )
+            {
+                bindingTypes = null != interfaces ? toClassNames( interfaces ) : NO_TYPES;
+            }
+            if ( null != superName && !OBJECT_NAME.equals( superName ) )
+            {
+                final IndexedType supertype = supertype( space, superName );
+                kinds |= supertype.flags & IndexedType.KINDS;
+                if ( null == bindingTypes )
+                {
+                    bindingTypes = supertype.types; // @Typed is honoured on superclasses
+                }
+            }
+            if ( null != interfaces )
+            {
+                for ( final String i : interfaces )
+                {
+                    kinds |= supertype( space, i ).flags & IndexedType.KINDS;
+                }
+            }
+            final String name = null != jsr330Name ? jsr330Name : guiceName;
+            return new IndexedType( clazzName, IndexedType.KNOWN | Integer.lowestOneBit( kinds ) | flags, name,
+                                    bindingTypes );
+        }
+        catch ( final TypeNotPresentException e )
+        {
+            return null;
+        }
+        catch ( final LinkageError e )
+        {
+            return null;
+        }
+    }
+
+    private IndexedType supertype( final ClassSpace space, final String name )
+    {
+        IndexedType supertype = supertypes.get( name );
+        if ( null == supertype )
+        {
+            supertype = scanSupertype( space, name );
+            supertypes.put( name, supertype );
+        }
+        return supertype;
+    }
+
+    /**
+     * Determines the kind and inherited binding types of the given supertype, preferably from its bytecode.
+     */
+    private IndexedType scanSupertype( final ClassSpace space, final String name )
+    {
+        final String dottedName = name.replace( '/', '.' );
+        final int kind = kindOf( name );
+        if ( 0 != kind || name.startsWith( JDK_PREFIX ) )
+        {
+            return new IndexedType( dottedName, IndexedType.KNOWN | kind, null, null );
+        }
+        final URL url = space.getResource( name + ".class" );
+        if ( null != url )
+        {
+            final ScannedType header = new ScannedType( supertypes );
+            SpaceScanner.accept( header, url );
+            if ( header.complete )
+            {
+                final IndexedType supertype = header.toIndexedType( space );
+                if ( null != supertype )
+                {
+                    return supertype;
+                }
+            }
+        }
+        return IndexedType.fromClass( space.loadClass( dottedName ) );
+    }
+
+    private static int kindOf( final String name )
+    {
+        if ( MODULE_NAME.equals( name ) )
+        {
+            return IndexedType.MODULE;
+        }
+        if ( MEDIATOR_NAME.equals( name ) )
+        {
+            return IndexedType.MEDIATOR;
+        }
+        if ( LEGACY_MEDIATOR_NAME.equals( name ) )
+        {
+            return IndexedType.LEGACY_MEDIATOR;
+        }
+        if ( PROVIDER_NAME.equals( name ) )
+        {
+            return IndexedType.PROVIDER;
+        }
+        return 0;
+    }
+
+    private static String[] toStrings( final Object[] values )
+    {
+        final String[] strings = new String[values.length];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            strings[i] = (String) values[i];
+        }
+        return strings;
+    }
+
+    private static String[] toClassNames( final String[] internalNames )
+    {
+        final String[] names = new String[internalNames.length];
+        for ( int i = 0; i < internalNames.length; i++ )
+        {
+            names[i] = internalNames[i].replace( '/', '.' );
+        }
+        return names;
+    }
+}
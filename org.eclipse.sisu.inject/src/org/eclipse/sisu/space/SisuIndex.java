@@ -14,7 +14,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
@@ -29,7 +31,8 @@ import org.eclipse.sisu.inject.Logs;
 /**
  * Command-line utility that generates a qualified class index for a space-separated list of JARs.
  * <p>
- * The index consists of qualified class names listed in {@code META-INF/sisu/javax.inject.Named}.
+ * The index consists of qualified class names listed in {@code META-INF/sisu/javax.inject.Named}, along with their
+ * binding facts in {@code META-INF/sisu/javax.inject.Named.bin}.
  * 
  * @see <a href="http://eclipse.org/sisu/docs/api/org.eclipse.sisu.mojos/">sisu-maven-plugin</a>
  */
@@ -100,6 +103,25 @@ public class SisuIndex
         }
     }
 
+    /**
+     * Indexes the classes found in the given space, parsing class headers on the given number of threads.
+     * 
+     * @param _space The class space
+     * @param finder The class finder
+     * @param threads The number of threads used to parse class headers; {@code 1} means scan sequentially
+     */
+    final void index( final ClassSpace _space, final ClassFinder finder, final int threads )
+    {
+        try
+        {
+            new SpaceScanner( _space, finder, threads ).accept( this );
+        }
+        finally
+        {
+            flushIndex();
+        }
+    }
+
     public final void enterSpace( final ClassSpace _space )
     {
         space = _space;
@@ -123,7 +145,8 @@ public class SisuIndex
     {
         if ( null != clazzName && qualifierCache.qualify( space, desc ) )
         {
-            addClassToIndex( NAMED, clazzName.replace( '/', '.' ) );
+            addTypeToIndex( NAMED, indexedType( clazzName.replace( '/', '.' ) ) );
+            clazzName = null; // no need to index this class again
         }
         return null;
     }
@@ -164,13 +187,53 @@ public class SisuIndex
     @Override
     protected Writer getWriter( final String path )
         throws IOException
+    {
+        return new OutputStreamWriter( getOutputStream( path ), "UTF-8" );
+    }
+
+    @Override
+    protected InputStream getInputStream( final String path )
+        throws IOException
+    {
+        return new FileInputStream( new File( targetDirectory, path ) );
+    }
+
+    @Override
+    protected OutputStream getOutputStream( final String path )
+        throws IOException
     {
         final File index = new File( targetDirectory, path );
         final File parent = index.getParentFile();
         if ( parent.isDirectory() || parent.mkdirs() )
         {
-            return new OutputStreamWriter( new FileOutputStream( index ), "UTF-8" );
+            return new FileOutputStream( index );
         }
         throw new IOException( "Error creating: " + parent );
     }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Records the binding facts of the named class; falls back to just the name if it cannot be loaded.
+     * 
+     * @param name The class name
+     * @return Indexed type
+     */
+    private IndexedType indexedType( final String name )
+    {
+        try
+        {
+            return IndexedType.fromClass( space.loadClass( name ) );
+        }
+        catch ( final RuntimeException e )
+        {
+            return new IndexedType( name, 0, null, null );
+        }
+        catch ( final LinkageError e )
+        {
+            return new IndexedType( name, 0, null, null );
+        }
+    }
 }
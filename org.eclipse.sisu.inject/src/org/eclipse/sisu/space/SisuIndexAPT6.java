@@ -11,11 +11,17 @@
 package org.eclipse.sisu.space;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.annotation.processing.Completion;
@@ -24,10 +30,14 @@ import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 import javax.tools.FileObject;
 import javax.tools.StandardLocation;
@@ -35,7 +45,16 @@ import javax.tools.StandardLocation;
 /**
  * Java 6 Annotation {@link Processor} that generates a qualified class index for the current build.
  * <p>
- * The index consists of qualified class names listed in {@code META-INF/sisu/javax.inject.Named}.
+ * The index consists of qualified class names listed in {@code META-INF/sisu/javax.inject.Named}, along with their
+ * binding facts in {@code META-INF/sisu/javax.inject.Named.bin}.
+ * <p>
+ * By default new entries are merged with the existing index; entries for classes recompiled without a qualifier are
+ * dropped whenever the processor runs. Set {@code sisu.pruneMissing=true} to also drop entries for classes that can
+ * no longer be found, such as deleted classes; only do this when the class output is on the compile class path, as
+ * otherwise every entry not recompiled looks missing. Set {@code sisu.incremental=true} when the build tool
+ * reprocesses all qualified classes on every compile, such as Gradle's incremental compiler; the index is then
+ * rewritten from scratch with each class as an originating element, and the processor declares itself to Gradle as
+ * aggregating.
  * 
  * @see <a href="http://eclipse.org/sisu/docs/api/org.eclipse.sisu.mojos/">sisu-maven-plugin</a>
  */
@@ -67,6 +86,12 @@ public final class SisuIndexAPT6
 
     private static final String QUALIFIERS = "sisu.qualifiers";
 
+    private static final String INCREMENTAL = "sisu.incremental";
+
+    private static final String PRUNE_MISSING = "sisu.pruneMissing";
+
+    private static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
+
     private static final String ALL = "all";
 
     private static final String NONE = "none";
@@ -81,6 +106,18 @@ public final class SisuIndexAPT6
 
     private String qualifiers;
 
+    private boolean incremental;
+
+    private boolean pruneMissing;
+
+    private final List<IndexedType> pendingTypes = new ArrayList<IndexedType>();
+
+    private final Set<String> indexedNames = new HashSet<String>();
+
+    private final Set<String> compiledNames = new HashSet<String>();
+
+    private final List<Element> originatingElements = new ArrayList<Element>();
+
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
@@ -93,6 +130,8 @@ public final class SisuIndexAPT6
         {
             qualifiers = System.getProperty( QUALIFIERS );
         }
+        incremental = Boolean.parseBoolean( option( _environment, INCREMENTAL ) );
+        pruneMissing = Boolean.parseBoolean( option( _environment, PRUNE_MISSING ) );
     }
 
     public boolean process( final Set<? extends TypeElement> annotations, final RoundEnvironment round )
@@ -106,14 +145,32 @@ public final class SisuIndexAPT6
                 {
                     if ( elem.getKind().isClass() )
                     {
-                        addClassToIndex( NAMED, elementUtils.getBinaryName( (TypeElement) elem ) );
+                        final IndexedType type = indexedType( elementUtils, (TypeElement) elem );
+                        if ( indexedNames.add( type.clazzName ) )
+                        {
+                            pendingTypes.add( type );
+                            originatingElements.add( elem );
+                        }
                     }
                 }
             }
         }
+        if ( !incremental )
+        {
+            recordCompiledNames( elementUtils, round.getRootElements() );
+        }
 
         if ( round.processingOver() )
         {
+            // wait until all rounds are done, so obsolete entries can be detected
+            for ( final IndexedType type : pendingTypes )
+            {
+                addTypeToIndex( NAMED, type );
+            }
+            if ( !incremental )
+            {
+                pruneIndex( NAMED );
+            }
             flushIndex();
         }
 
@@ -147,7 +204,15 @@ public final class SisuIndexAPT6
 
     public Set<String> getSupportedOptions()
     {
-        return Collections.singleton( QUALIFIERS );
+        final Set<String> options = new HashSet<String>();
+        options.add( QUALIFIERS );
+        options.add( INCREMENTAL );
+        options.add( PRUNE_MISSING );
+        if ( incremental )
+        {
+            options.add( GRADLE_AGGREGATING );
+        }
+        return options;
     }
 
     public SourceVersion getSupportedSourceVersion()
@@ -171,10 +236,31 @@ public final class SisuIndexAPT6
         environment.getMessager().printMessage( Diagnostic.Kind.WARNING, msg );
     }
 
+    @Override
+    protected boolean isObsolete( final String clazz )
+    {
+        if ( indexedNames.contains( clazz ) )
+        {
+            return false;
+        }
+        if ( compiledNames.contains( clazz ) )
+        {
+            return true; // recompiled without a qualifier
+        }
+        if ( !pruneMissing )
+        {
+            return false;
+        }
+        final Elements elementUtils = environment.getElementUtils();
+        return null == elementUtils.getTypeElement( clazz.replace( '$', '.' ) )
+            && null == elementUtils.getTypeElement( clazz );
+    }
+
     @Override
     protected Reader getReader( final String path )
         throws IOException
     {
+        checkMerging();
         final FileObject file = environment.getFiler().getResource( StandardLocation.CLASS_OUTPUT, "", path );
         return new InputStreamReader( file.openInputStream(), "UTF-8" );
     }
@@ -183,13 +269,213 @@ public final class SisuIndexAPT6
     protected Writer getWriter( final String path )
         throws IOException
     {
-        return environment.getFiler().createResource( StandardLocation.CLASS_OUTPUT, "", path ).openWriter();
+        return createResource( path ).openWriter();
+    }
+
+    @Override
+    protected InputStream getInputStream( final String path )
+        throws IOException
+    {
+        checkMerging();
+        return environment.getFiler().getResource( StandardLocation.CLASS_OUTPUT, "", path ).openInputStream();
+    }
+
+    @Override
+    protected OutputStream getOutputStream( final String path )
+        throws IOException
+    {
+        return createResource( path ).openOutputStream();
     }
 
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Reads the given processor option, falling back to the system property of the same name.
+     */
+    private static String option( final ProcessingEnvironment _environment, final String name )
+    {
+        final String value = _environment.getOptions().get( name );
+        return null != value ? value : System.getProperty( name );
+    }
+
+    /**
+     * Incremental builds rewrite the index from scratch, so they never read the existing index.
+     */
+    private void checkMerging()
+        throws IOException
+    {
+        if ( incremental )
+        {
+            throw new IOException( "Incremental build: ignoring existing index" );
+        }
+    }
+
+    /**
+     * Creates the given index resource, linking it back to the qualified classes it lists.
+     */
+    private FileObject createResource( final String path )
+        throws IOException
+    {
+        final Element[] elements = originatingElements.toArray( new Element[originatingElements.size()] );
+        return environment.getFiler().createResource( StandardLocation.CLASS_OUTPUT, "", path, elements );
+    }
+
+    /**
+     * Records the binary names of all classes compiled in this round, including member classes.
+     */
+    private void recordCompiledNames( final Elements elementUtils, final Iterable<? extends Element> elements )
+    {
+        for ( final Element elem : elements )
+        {
+            if ( elem.getKind().isClass() || elem.getKind().isInterface() )
+            {
+                compiledNames.add( elementUtils.getBinaryName( (TypeElement) elem ).toString() );
+                recordCompiledNames( elementUtils, elem.getEnclosedElements() );
+            }
+        }
+    }
+
+    /**
+     * Records the binding facts of the given class; falls back to just the name if they cannot be determined.
+     * 
+     * @param elementUtils The element utilities
+     * @param clazz The qualified class
+     * @return Indexed type
+     */
+    private IndexedType indexedType( final Elements elementUtils, final TypeElement clazz )
+    {
+        final String clazzName = elementUtils.getBinaryName( clazz ).toString();
+        try
+        {
+            int flags = IndexedType.KNOWN;
+            if ( isSubtype( clazz, "com.google.inject.Module" ) )
+            {
+                flags |= IndexedType.MODULE;
+            }
+            else if ( isSubtype( clazz, "org.eclipse.sisu.Mediator" ) )
+            {
+                flags |= IndexedType.MEDIATOR;
+            }
+            else if ( isSubtype( clazz, "org.sonatype.inject.Mediator" ) )
+            {
+                flags |= IndexedType.LEGACY_MEDIATOR;
+            }
+            else if ( isSubtype( clazz, "javax.inject.Provider" ) )
+            {
+                flags |= IndexedType.PROVIDER;
+            }
+            if ( null != findMirror( clazz, "javax.inject.Singleton" )
+                || null != findMirror( clazz, "com.google.inject.Singleton" ) )
+            {
+                flags |= IndexedType.SINGLETON;
+            }
+            if ( null != findMirror( clazz, "org.eclipse.sisu.EagerSingleton" )
+                || null != findMirror( clazz, "org.sonatype.inject.EagerSingleton" ) )
+            {
+                flags |= IndexedType.EAGER_SINGLETON;
+            }
+
+            AnnotationMirror named = findMirror( clazz, NAMED );
+            if ( null == named )
+            {
+                named = findMirror( clazz, "com.google.inject.name.Named" );
+            }
+            String name = null;
+            if ( null != named )
+            {
+                final Object value = findValue( elementUtils, named );
+                name = null != value ? value.toString() : "";
+            }
+
+            return new IndexedType( clazzName, flags, name, findBindingTypes( elementUtils, clazz ) );
+        }
+        catch ( final RuntimeException e )
+        {
+            return new IndexedType( clazzName, 0, null, null );
+        }
+    }
+
+    private boolean isSubtype( final TypeElement clazz, final String superName )
+    {
+        final TypeElement superType = environment.getElementUtils().getTypeElement( superName );
+        if ( null == superType )
+        {
+            return false;
+        }
+        final Types typeUtils = environment.getTypeUtils();
+        return typeUtils.isAssignable( typeUtils.erasure( clazz.asType() ), typeUtils.erasure( superType.asType() ) );
+    }
+
+    /**
+     * Finds the {@code @Typed} binding types of the given class, using the same rules as {@link QualifiedTypeBinder}.
+     */
+    private String[] findBindingTypes( final Elements elementUtils, final TypeElement clazz )
+    {
+        final Types typeUtils = environment.getTypeUtils();
+        TypeElement c = clazz;
+        while ( null != c && !"java.lang.Object".equals( c.getQualifiedName().toString() ) )
+        {
+            AnnotationMirror typed = findMirror( c, "javax.enterprise.inject.Typed" );
+            if ( null == typed )
+            {
+                typed = findMirror( c, "org.eclipse.sisu.Typed" );
+            }
+            if ( null != typed )
+            {
+                final List<TypeMirror> types = new ArrayList<TypeMirror>();
+                final Object value = findValue( elementUtils, typed );
+                if ( value instanceof List<?> )
+                {
+                    for ( final Object v : (List<?>) value )
+                    {
+                        types.add( (TypeMirror) ( (AnnotationValue) v ).getValue() );
+                    }
+                }
+                if ( types.isEmpty() )
+                {
+                    types.addAll( c.getInterfaces() );
+                }
+                final String[] names = new String[types.size()];
+                for ( int i = 0; i < names.length; i++ )
+                {
+                    final TypeElement t = (TypeElement) ( (DeclaredType) types.get( i ) ).asElement();
+                    names[i] = elementUtils.getBinaryName( t ).toString();
+                }
+                return names;
+            }
+            c = (TypeElement) typeUtils.asElement( c.getSuperclass() );
+        }
+        return null;
+    }
+
+    private static AnnotationMirror findMirror( final Element elem, final String annoName )
+    {
+        for ( final AnnotationMirror mirror : elem.getAnnotationMirrors() )
+        {
+            if ( annoName.equals( mirror.getAnnotationType().toString() ) )
+            {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static Object findValue( final Elements elementUtils, final AnnotationMirror mirror )
+    {
+        final Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+            elementUtils.getElementValuesWithDefaults( mirror );
+        for ( final Entry<? extends ExecutableElement, ? extends AnnotationValue> e : values.entrySet() )
+        {
+            if ( "value".equals( e.getKey().getSimpleName().toString() ) )
+            {
+                return e.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
     private static boolean hasQualifier( final TypeElement anno )
     {
         if ( HAS_QUALIFIER )
@@ -10,12 +10,15 @@
  *******************************************************************************/
 package org.eclipse.sisu.space;
 
+import java.io.File;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Qualifier;
 
+import org.eclipse.sisu.inject.Logs;
+
 import com.google.inject.Binder;
 import com.google.inject.Key;
 import com.google.inject.Module;
@@ -56,6 +59,8 @@ public final class SpaceModule
 
     private final boolean caching;
 
+    private final ScanCache scanCache;
+
     private final ClassSpace space;
 
     private final ClassFinder finder;
@@ -74,12 +79,26 @@ public final class SpaceModule
     public SpaceModule( final ClassSpace space, final ClassFinder finder )
     {
         caching = false;
+        scanCache = null;
 
         this.space = space;
         this.finder = finder;
     }
 
     public SpaceModule( final ClassSpace space, final BeanScanning scanning )
+    {
+        this( space, scanning, null );
+    }
+
+    /**
+     * Scan results are persisted in the given directory between runs when the whole space is scanned, so unchanged
+     * jars and bundles aren't scanned again. Indexed scanning is unaffected.
+     * 
+     * @param space The class space
+     * @param scanning The scanning option
+     * @param cacheDirectory The directory holding persisted scan results; {@code null} to use the default settings
+     */
+    public SpaceModule( final ClassSpace space, final BeanScanning scanning, final File cacheDirectory )
     {
         caching = BeanScanning.CACHE == scanning;
 
@@ -99,6 +118,14 @@ public final class SpaceModule
                 finder = LOCAL_SCAN;
                 break;
         }
+        if ( null != cacheDirectory && LOCAL_SCAN == finder )
+        {
+            scanCache = ScanCache.forDirectory( cacheDirectory );
+        }
+        else
+        {
+            scanCache = BeanScanning.DISK_CACHE == scanning ? ScanCache.DEFAULT : null;
+        }
     }
 
     // ----------------------------------------------------------------------
@@ -158,6 +185,19 @@ public final class SpaceModule
                 return new QualifiedTypeVisitor( new QualifiedTypeBinder( binder ) );
             }
         };
+
+        /**
+         * Deferred visitor strategy; like {@link #DEFAULT} but plain components are bound using facts captured
+         * from their bytecode and only loaded on first use. Modules, mediators, providers, and eager singletons
+         * are still loaded while binding.
+         */
+        Strategy DEFERRED = new Strategy()
+        {
+            public SpaceVisitor visitor( final Binder binder )
+            {
+                return new QualifiedTypeVisitor( new QualifiedTypeBinder( binder, true ) );
+            }
+        };
     }
 
     // ----------------------------------------------------------------------
@@ -166,7 +206,27 @@ public final class SpaceModule
 
     void scanForElements( final Binder binder )
     {
-        new SpaceScanner( space, finder ).accept( strategy.visitor( binder ) );
+        final SpaceVisitor visitor = strategy.visitor( binder );
+        ClassFinder scanFinder = finder;
+        if ( GLOBAL_INDEX == scanFinder && !ClassPathIndexer.isValid( space ) )
+        {
+            Logs.warn( "Global index is out of date with the class path of: {}, scanning instead", space, null );
+            scanFinder = LOCAL_SCAN;
+        }
+        if ( null != scanCache )
+        {
+            new SpaceScanner( space, scanCache ).accept( visitor );
+        }
+        else if ( scanFinder instanceof IndexedClassFinder && visitor instanceof QualifiedTypeVisitor )
+        {
+            // bind straight from the index where possible
+            final Iterable<IndexedType> indexedTypes = ( (IndexedClassFinder) scanFinder ).indexedTypes( space );
+            ( (QualifiedTypeVisitor) visitor ).visitIndex( space, indexedTypes );
+        }
+        else
+        {
+            new SpaceScanner( space, scanFinder ).accept( visitor );
+        }
     }
 
     private void recordAndReplayElements( final Binder binder )
@@ -10,29 +10,79 @@
  *******************************************************************************/
 package org.eclipse.sisu.space;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.sisu.inject.Logs;
+import org.eclipse.sisu.inject.Soft;
 import org.eclipse.sisu.space.asm.ClassReader;
 import org.eclipse.sisu.space.asm.Opcodes;
 import org.eclipse.sisu.space.asm.Type;
 
 /**
- * Makes a {@link SpaceVisitor} visit a {@link ClassSpace}; can be directed by an optional {@link ClassFinder}.
+ * Makes a {@link SpaceVisitor} visit a {@link ClassSpace}; can be directed by an optional {@link ClassFinder}.<br>
+ * <br>
+ * Class headers can be parsed by a pool of threads; set the 'sisu.scan.threads' system property to change the
+ * default. Results are always replayed to the {@link SpaceVisitor} in the order the classes were found.<br>
+ * <br>
+ * Results from scanning local jars are shared across class spaces, so a jar that appears in several spaces is only
+ * parsed once. Shared results are softly held and can be reclaimed when memory is low. When scanning with a
+ * persistent cache, results for whole bundles are also persisted so unchanged bundles aren't scanned again.
  */
 public final class SpaceScanner
 {
+    // ----------------------------------------------------------------------
+    // Static initialization
+    // ----------------------------------------------------------------------
+
+    static
+    {
+        int threads;
+        try
+        {
+            threads = Integer.parseInt( System.getProperty( "sisu.scan.threads", "1" ) );
+        }
+        catch ( final RuntimeException e )
+        {
+            threads = 1;
+        }
+        DEFAULT_THREADS = Math.max( threads, 1 );
+    }
+
     // ----------------------------------------------------------------------
     // Constants
     // ----------------------------------------------------------------------
 
     private static final int ASM_FLAGS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
 
+    private static final int MAX_BATCH_SIZE = 256;
+
+    static final int DEFAULT_THREADS;
+
     static final ClassFinder DEFAULT_FINDER = new DefaultClassFinder();
 
+    private static final String PREFILTERED = "|?";
+
+    /**
+     * Process-wide results of scanning class path entries, keyed by fingerprint.
+     */
+    private static final ConcurrentMap<String, ClassRecord[]> SHARED_RECORDS = Soft.concurrentValues();
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
@@ -41,14 +91,27 @@ public final class SpaceScanner
 
     private final ClassFinder finder;
 
+    private final int threads;
+
+    private final ScanCache cache;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
+    /**
+     * @param space The class space
+     * @param finder The class finder
+     * @param threads The number of threads used to parse class headers; {@code 1} means scan sequentially
+     */
+    public SpaceScanner( final ClassSpace space, final ClassFinder finder, final int threads )
+    {
+        this( space, finder, threads, null );
+    }
+
     public SpaceScanner( final ClassSpace space, final ClassFinder finder )
     {
-        this.space = space;
-        this.finder = finder;
+        this( space, finder, DEFAULT_THREADS );
     }
 
     public SpaceScanner( final ClassSpace space )
@@ -56,6 +119,26 @@ public final class SpaceScanner
         this( space, DEFAULT_FINDER );
     }
 
+    /**
+     * Creates a scanner that re-uses results persisted in the given cache when scanning {@link URLClassSpace}s or
+     * {@link BundleClassSpace}s.
+     * 
+     * @param space The class space
+     * @param cache The scan cache
+     */
+    SpaceScanner( final ClassSpace space, final ScanCache cache )
+    {
+        this( space, DEFAULT_FINDER, DEFAULT_THREADS, cache );
+    }
+
+    private SpaceScanner( final ClassSpace space, final ClassFinder finder, final int threads, final ScanCache cache )
+    {
+        this.space = space;
+        this.finder = finder;
+        this.threads = Math.max( threads, 1 );
+        this.cache = cache;
+    }
+
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
@@ -69,17 +152,57 @@ public final class SpaceScanner
     {
         visitor.enterSpace( space );
 
-        for ( final Enumeration<URL> result = finder.findClasses( space ); result.hasMoreElements(); )
+        // qualified type visitor ignores classes that have no potential qualifiers, so we can skip them
+        final boolean prefilter = visitor instanceof QualifiedTypeVisitor;
+
+        if ( space instanceof URLClassSpace && ( null != cache || DEFAULT_FINDER == finder && 1 == threads ) )
         {
-            final URL url = result.nextElement();
-            final ClassVisitor cv = visitor.visitClass( url );
-            if ( null != cv )
+            if ( null != cache && prefilter )
+            {
+                cache.loadQualifiers( QualifierStore.SHARED ); // warm up before any qualifiers are checked
+            }
+            acceptCached( visitor, ( (URLClassSpace) space ).getURLs(), prefilter );
+        }
+        else if ( null != cache && DEFAULT_FINDER == finder && space instanceof BundleClassSpace )
+        {
+            if ( prefilter )
+            {
+                cache.loadQualifiers( QualifierStore.SHARED );
+            }
+            acceptBundleCached( visitor, (BundleClassSpace) space );
+        }
+        else if ( threads > 1 )
+        {
+            acceptInParallel( visitor, finder.findClasses( space ), prefilter );
+        }
+        else
+        {
+            final Enumeration<URL> result = finder.findClasses( space );
+            final ZipEntryOpener opener = new ZipEntryOpener();
+            try
             {
-                accept( cv, url );
+                while ( result.hasMoreElements() )
+                {
+                    final URL url = result.nextElement();
+                    final ClassVisitor cv = visitor.visitClass( url );
+                    if ( null != cv )
+                    {
+                        accept( cv, url, opener, prefilter );
+                    }
+                }
+            }
+            finally
+            {
+                opener.close();
             }
         }
 
         visitor.leaveSpace();
+
+        if ( null != cache && prefilter )
+        {
+            cache.storeQualifiers( QualifierStore.SHARED );
+        }
     }
 
     /**
@@ -89,6 +212,36 @@ public final class SpaceScanner
      * @param url The class resource URL
      */
     public static void accept( final ClassVisitor visitor, final URL url )
+    {
+        accept( visitor, url, null, false );
+    }
+
+    /**
+     * Returns the JVM descriptor for the given annotation class, such as "Ljavax/inject/Qualifier;".
+     * 
+     * @param clazz The annotation class
+     * @return JVM descriptor of the class
+     * @see ClassVisitor#visitAnnotation(String)
+     */
+    public static String jvmDescriptor( final Class<? extends Annotation> clazz )
+    {
+        return 'L' + clazz.getName().replace( '.', '/' ) + ';';
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Makes the given {@link ClassVisitor} visit the class contained in the resource {@link URL}.
+     * 
+     * @param visitor The class space visitor
+     * @param url The class resource URL
+     * @param opener Optional opener that keeps the containing jar open
+     * @param prefilter When {@code true} skip classes that {@link QualifierCache} says cannot be qualified
+     */
+    private static void accept( final ClassVisitor visitor, final URL url, final ZipEntryOpener opener,
+                                final boolean prefilter )
     {
         if ( null == url )
         {
@@ -96,15 +249,20 @@ public final class SpaceScanner
         }
         try
         {
-            final InputStream in = Streams.open( url );
+            final InputStream in = null != opener ? opener.open( url ) : Streams.open( url );
+            final byte[] clazz;
             try
             {
-                new ClassReader( in ).accept( adapt( visitor ), ASM_FLAGS );
+                clazz = readBytes( in );
             }
             finally
             {
                 in.close();
             }
+            if ( !prefilter || QualifierCache.mayBeQualified( clazz ) )
+            {
+                new ClassReader( clazz ).accept( adapt( visitor ), ASM_FLAGS );
+            }
         }
         catch ( final ArrayIndexOutOfBoundsException e ) // NOPMD
         {
@@ -117,20 +275,255 @@ public final class SpaceScanner
     }
 
     /**
-     * Returns the JVM descriptor for the given annotation class, such as "Ljavax/inject/Qualifier;".
+     * Replays cached results for each class path entry, scanning and caching entries which have changed.<br>
+     * Results are shared across class spaces; results persisted in the scan cache are always complete.
      * 
-     * @param clazz The annotation class
-     * @return JVM descriptor of the class
-     * @see ClassVisitor#visitAnnotation(String)
+     * @param visitor The class space visitor
+     * @param entries The class path entries
+     * @param prefilter When {@code true} skip classes that {@link QualifierCache} says cannot be qualified
      */
-    public static String jvmDescriptor( final Class<? extends Annotation> clazz )
+    private void acceptCached( final SpaceVisitor visitor, final URL[] entries, final boolean prefilter )
     {
-        return 'L' + clazz.getName().replace( '.', '/' ) + ';';
+        final boolean filterRecords = prefilter && null == cache;
+        for ( final URL entry : entries )
+        {
+            final String fingerprint = null != cache ? cache.fingerprint( entry ) : ScanCache.localFingerprint( entry );
+            ClassRecord[] records = null;
+            if ( null != fingerprint )
+            {
+                records = SHARED_RECORDS.get( fingerprint );
+                if ( null == records && filterRecords )
+                {
+                    records = SHARED_RECORDS.get( fingerprint + PREFILTERED );
+                }
+                if ( null == records && null != cache )
+                {
+                    records = cache.load( fingerprint );
+                    if ( null != records )
+                    {
+                        SHARED_RECORDS.put( fingerprint, records );
+                    }
+                }
+            }
+            if ( null == records )
+            {
+                // same search as the default finder, but restricted to this entry
+                final Enumeration<URL> result = new ResourceEnumeration( null, "*.class", true, new URL[] { entry } );
+                final List<URL> urls = new ArrayList<URL>();
+                while ( result.hasMoreElements() )
+                {
+                    urls.add( result.nextElement() );
+                }
+                records = new ClassParser( urls, filterRecords ).call();
+                if ( null != fingerprint )
+                {
+                    if ( null != cache )
+                    {
+                        cache.store( fingerprint, records );
+                    }
+                    SHARED_RECORDS.put( filterRecords ? fingerprint + PREFILTERED : fingerprint, records );
+                }
+            }
+            replay( visitor, records );
+        }
     }
 
-    // ----------------------------------------------------------------------
-    // Implementation methods
-    // ----------------------------------------------------------------------
+    /**
+     * Replays persisted results for the whole bundle if it hasn't changed; otherwise scans and persists it.
+     * 
+     * @param visitor The class space visitor
+     * @param bundleSpace The bundle class space
+     */
+    private void acceptBundleCached( final SpaceVisitor visitor, final BundleClassSpace bundleSpace )
+    {
+        final String name = bundleSpace.cacheName();
+        final String fingerprint = bundleSpace.fingerprint();
+        final URL root = bundleSpace.rootURL();
+        ClassRecord[] records = null;
+        if ( null != fingerprint && null != root )
+        {
+            records = cache.load( name, fingerprint, root );
+        }
+        if ( null == records )
+        {
+            final Enumeration<URL> result = finder.findClasses( bundleSpace );
+            final List<URL> urls = new ArrayList<URL>();
+            while ( result.hasMoreElements() )
+            {
+                urls.add( result.nextElement() );
+            }
+            records = new ClassParser( urls, false ).call();
+            if ( null != fingerprint && null != root )
+            {
+                cache.store( name, fingerprint, root, records );
+            }
+        }
+        replay( visitor, records );
+    }
+
+    /**
+     * Parses the given classes in batches on a pool of threads, replaying the results in their original order.<br>
+     * Each batch holds consecutive classes from the same class path entry (up to {@link #MAX_BATCH_SIZE}).
+     * 
+     * @param visitor The class space visitor
+     * @param result The classes to visit
+     * @param prefilter When {@code true} skip classes that {@link QualifierCache} says cannot be qualified
+     */
+    private void acceptInParallel( final SpaceVisitor visitor, final Enumeration<URL> result,
+                                   final boolean prefilter )
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool( threads, new ScannerThreadFactory() );
+        try
+        {
+            final Queue<Future<ClassRecord[]>> pending = new LinkedList<Future<ClassRecord[]>>();
+
+            List<URL> batch = new ArrayList<URL>();
+            String batchEntry = null;
+            while ( result.hasMoreElements() )
+            {
+                final URL url = result.nextElement();
+                final String entry = classPathEntry( url );
+                if ( batch.size() >= MAX_BATCH_SIZE || !batch.isEmpty() && !entry.equals( batchEntry ) )
+                {
+                    pending.add( executor.submit( new ClassParser( batch, prefilter ) ) );
+                    batch = new ArrayList<URL>();
+                    while ( pending.size() > 2 * threads )
+                    {
+                        replay( visitor, pending.remove() ); // limit memory used by outstanding results
+                    }
+                }
+                batch.add( url );
+                batchEntry = entry;
+            }
+            if ( !batch.isEmpty() )
+            {
+                pending.add( executor.submit( new ClassParser( batch, prefilter ) ) );
+            }
+            while ( !pending.isEmpty() )
+            {
+                replay( visitor, pending.remove() );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Replays the parsed batch of classes to the given {@link SpaceVisitor}.
+     * 
+     * @param visitor The class space visitor
+     * @param future The parsed batch
+     */
+    private static void replay( final SpaceVisitor visitor, final Future<ClassRecord[]> future )
+    {
+        replay( visitor, await( future ) );
+    }
+
+    /**
+     * Replays the parsed classes to the given {@link SpaceVisitor}; problems with one class don't stop the others.
+     * 
+     * @param visitor The class space visitor
+     * @param records The parsed classes
+     */
+    private static void replay( final SpaceVisitor visitor, final ClassRecord[] records )
+    {
+        for ( final ClassRecord record : records )
+        {
+            final ClassVisitor cv = visitor.visitClass( record.url );
+            if ( null != cv )
+            {
+                try
+                {
+                    record.replay( cv );
+                }
+                catch ( final Exception e )
+                {
+                    Logs.trace( "Problem scanning: {}", record.url, e );
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the given batch of classes to be parsed.
+     * 
+     * @param future The parsed batch
+     * @return Parsed classes
+     */
+    private static ClassRecord[] await( final Future<ClassRecord[]> future )
+    {
+        boolean interrupted = false;
+        try
+        {
+            while ( true )
+            {
+                try
+                {
+                    return future.get();
+                }
+                catch ( final InterruptedException e )
+                {
+                    interrupted = true; // must finish scan to keep bindings consistent
+                }
+                catch ( final ExecutionException e )
+                {
+                    throw new IllegalStateException( e.getCause() ); // parser catches its own exceptions
+                }
+            }
+        }
+        finally
+        {
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads the remaining bytes from the given stream.
+     * 
+     * @param in The input stream
+     * @return Remaining bytes
+     */
+    private static byte[] readBytes( final InputStream in )
+        throws IOException
+    {
+        byte[] buf = new byte[Math.max( in.available(), 4096 )];
+        int len = 0;
+        for ( int n = in.read( buf ); n >= 0; n = in.read( buf, len, buf.length - len ) )
+        {
+            len += n;
+            if ( len == buf.length )
+            {
+                final byte[] newBuf = new byte[buf.length * 2];
+                System.arraycopy( buf, 0, newBuf, 0, len );
+                buf = newBuf;
+            }
+        }
+        if ( len < buf.length )
+        {
+            final byte[] newBuf = new byte[len];
+            System.arraycopy( buf, 0, newBuf, 0, len );
+            buf = newBuf;
+        }
+        return buf;
+    }
+
+    /**
+     * Returns the class path entry (jar or directory) containing the given class resource.
+     * 
+     * @param url The class resource URL
+     * @return Class path entry
+     */
+    private static String classPathEntry( final URL url )
+    {
+        final String path = url.toString();
+        final int jarIndex = path.lastIndexOf( "!/" );
+        return jarIndex > 0 ? path.substring( 0, jarIndex ) : path.substring( 0, path.lastIndexOf( '/' ) + 1 );
+    }
 
     /**
      * Adapts the given {@link ClassVisitor} to its equivalent ASM form.
@@ -166,6 +559,26 @@ public final class SpaceScanner
                         _av.visitElement( name, value instanceof Type ? ( (Type) value ).getClassName() : value );
                     }
 
+                    @Override
+                    public org.eclipse.sisu.space.asm.AnnotationVisitor visitArray( final String name )
+                    {
+                        final List<Object> values = new ArrayList<Object>();
+                        return new org.eclipse.sisu.space.asm.AnnotationVisitor( Opcodes.ASM6 )
+                        {
+                            @Override
+                            public void visit( final String unused, final Object value )
+                            {
+                                values.add( value instanceof Type ? ( (Type) value ).getClassName() : value );
+                            }
+
+                            @Override
+                            public void visitEnd()
+                            {
+                                _av.visitElement( name, values.toArray() );
+                            }
+                        };
+                    }
+
                     @Override
                     public void visitEnd()
                     {
@@ -181,4 +594,80 @@ public final class SpaceScanner
             }
         };
     }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Parses a batch of class resources into {@link ClassRecord}s.
+     */
+    private static final class ClassParser
+        implements Callable<ClassRecord[]>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final List<URL> urls;
+
+        private final boolean prefilter;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        ClassParser( final List<URL> urls, final boolean prefilter )
+        {
+            this.urls = urls;
+            this.prefilter = prefilter;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public ClassRecord[] call()
+        {
+            final ClassRecord[] records = new ClassRecord[urls.size()];
+            final ZipEntryOpener opener = new ZipEntryOpener();
+            try
+            {
+                for ( int i = 0; i < records.length; i++ )
+                {
+                    records[i] = new ClassRecord( urls.get( i ) );
+                    accept( records[i], records[i].url, opener, prefilter );
+                }
+            }
+            finally
+            {
+                opener.close();
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Creates daemon threads for parsing class headers and manifests.
+     */
+    static final class ScannerThreadFactory
+        implements ThreadFactory
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public Thread newThread( final Runnable task )
+        {
+            final Thread thread = new Thread( task, "Sisu-Scanner-" + threadCount.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
 }
@@ -23,14 +23,24 @@ import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 
 import org.eclipse.sisu.inject.DeferredClass;
+import org.eclipse.sisu.inject.Soft;
 
 /**
- * {@link ClassSpace} backed by a strongly-referenced {@link ClassLoader} and a {@link URL} class path.
+ * {@link ClassSpace} backed by a strongly-referenced {@link ClassLoader} and a {@link URL} class path.<br>
+ * <br>
+ * Manifest Class-Path entries are followed breadth-first; manifests at the same depth are read by a pool of threads.
+ * Set the 'sisu.manifest.threads' system property to change the default. Class-Path entries of local jars and
+ * directories are remembered across instances until the manifest changes.
  */
 public class URLClassSpace
     implements ClassSpace
@@ -60,6 +70,17 @@ public class URLClassSpace
         }
         SYSTEM_LOADER = systemLoader;
         SYSTEM_CLASSPATH = classPath;
+
+        int threads;
+        try
+        {
+            threads = Integer.parseInt( System.getProperty( "sisu.manifest.threads", "4" ) );
+        }
+        catch ( final RuntimeException e )
+        {
+            threads = 1;
+        }
+        MANIFEST_THREADS = Math.max( threads, 1 );
     }
 
     // ----------------------------------------------------------------------
@@ -78,6 +99,13 @@ public class URLClassSpace
 
     private static final String SYSTEM_CLASSPATH;
 
+    private static final int MANIFEST_THREADS;
+
+    /**
+     * Class-Path entries of local jars and directories, keyed by location and last modified time.
+     */
+    private static final ConcurrentMap<String, String[]> MANIFEST_CACHE = Soft.concurrentValues();
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
@@ -280,44 +308,165 @@ public class URLClassSpace
      */
     private static URL[] expandClassPath( final URL[] classPath )
     {
-        final List<URL> searchPath = new ArrayList<URL>();
-        Collections.addAll( searchPath, classPath );
-
         final List<URL> expandedPath = new ArrayList<URL>();
         final Set<String> visited = new HashSet<String>();
 
-        // search path may grow, so use index not iterator
-        for ( int i = 0; i < searchPath.size(); i++ )
+        // breadth-first search, one level at a time, keeps the same order as a sequential search
+        List<URL> searchPath = Arrays.asList( classPath );
+        while ( !searchPath.isEmpty() )
         {
-            final URL url = normalizeEntry( searchPath.get( i ) );
-            if ( null == url || !visited.add( url.toString() ) )
+            final List<URL> level = new ArrayList<URL>();
+            for ( final URL entry : searchPath )
             {
-                continue; // already processed
+                final URL url = normalizeEntry( entry );
+                if ( null != url && visited.add( url.toString() ) )
+                {
+                    level.add( url );
+                }
             }
-            expandedPath.add( url );
-            final String[] classPathEntries;
-            try
+            expandedPath.addAll( level );
+
+            final String[][] levelEntries = getClassPathEntries( level );
+            searchPath = new ArrayList<URL>();
+            for ( int i = 0; i < levelEntries.length; i++ )
             {
-                classPathEntries = getClassPathEntries( url );
+                for ( final String entry : levelEntries[i] )
+                {
+                    try
+                    {
+                        searchPath.add( new URL( level.get( i ), entry ) );
+                    }
+                    catch ( final MalformedURLException e ) // NOPMD
+                    {
+                        // invalid Class-Path entry
+                    }
+                }
             }
-            catch ( final IOException e )
+        }
+
+        return expandedPath.toArray( new URL[expandedPath.size()] );
+    }
+
+    /**
+     * Looks for Class-Path entries in the given jars and directories; reads uncached manifests in parallel.
+     * 
+     * @param urls The jars and directories to inspect
+     * @return Array of Class-Path entries for each jar or directory
+     */
+    private static String[][] getClassPathEntries( final List<URL> urls )
+    {
+        final String[][] entries = new String[urls.size()][];
+        final List<Integer> uncached = new ArrayList<Integer>();
+        for ( int i = 0; i < entries.length; i++ )
+        {
+            final String key = manifestKey( urls.get( i ) );
+            entries[i] = null != key ? MANIFEST_CACHE.get( key ) : null;
+            if ( null == entries[i] )
             {
-                continue; // missing manifest
+                uncached.add( Integer.valueOf( i ) );
             }
-            for ( final String entry : classPathEntries )
+        }
+        if ( MANIFEST_THREADS > 1 && uncached.size() > 1 )
+        {
+            readInParallel( urls, uncached, entries );
+        }
+        for ( final Integer i : uncached )
+        {
+            if ( null == entries[i.intValue()] )
             {
-                try
+                entries[i.intValue()] = getCachedClassPathEntries( urls.get( i.intValue() ) );
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the Class-Path entries of the selected jars and directories on a pool of threads.
+     */
+    private static void readInParallel( final List<URL> urls, final List<Integer> selected, final String[][] entries )
+    {
+        try
+        {
+            final ExecutorService executor =
+                Executors.newFixedThreadPool( Math.min( MANIFEST_THREADS, selected.size() ),
+                                              new SpaceScanner.ScannerThreadFactory() );
+            try
+            {
+                final List<Future<String[]>> results = new ArrayList<Future<String[]>>( selected.size() );
+                for ( final Integer i : selected )
                 {
-                    searchPath.add( new URL( url, entry ) );
+                    final URL url = urls.get( i.intValue() );
+                    results.add( executor.submit( new Callable<String[]>()
+                    {
+                        public String[] call()
+                        {
+                            return getCachedClassPathEntries( url );
+                        }
+                    } ) );
                 }
-                catch ( final MalformedURLException e ) // NOPMD
+                for ( int n = 0; n < results.size(); n++ )
                 {
-                    // invalid Class-Path entry
+                    entries[selected.get( n ).intValue()] = results.get( n ).get();
                 }
             }
+            finally
+            {
+                executor.shutdownNow();
+            }
         }
+        catch ( final Exception e ) // InterruptedException + SecurityException + etc...
+        {
+            // fall back to reading any remaining manifests on this thread
+        }
+    }
 
-        return expandedPath.toArray( new URL[expandedPath.size()] );
+    /**
+     * Returns the Class-Path entries of the given jar or directory, remembering them for local files.
+     */
+    private static String[] getCachedClassPathEntries( final URL url )
+    {
+        String[] entries;
+        try
+        {
+            entries = getClassPathEntries( url );
+        }
+        catch ( final IOException e )
+        {
+            entries = EMPTY_CLASSPATH; // missing manifest
+        }
+        final String key = manifestKey( url );
+        if ( null != key )
+        {
+            MANIFEST_CACHE.put( key, entries );
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the key used to remember Class-Path entries of the given jar or directory.
+     * 
+     * @param url The jar or directory
+     * @return Location plus last modified time; {@code null} if the entries shouldn't be remembered
+     */
+    private static String manifestKey( final URL url )
+    {
+        if ( !"file".equals( url.getProtocol() ) )
+        {
+            return null; // can't cheaply detect changes
+        }
+        if ( url.getPath().endsWith( "/" ) )
+        {
+            try
+            {
+                final File manifest = new File( FileEntryIterator.toFile( url ), MANIFEST_ENTRY );
+                return url + "|" + manifest.lastModified();
+            }
+            catch ( final RuntimeException e ) // SecurityException + etc...
+            {
+                return null;
+            }
+        }
+        return ScanCache.localFingerprint( url );
     }
 
     /**
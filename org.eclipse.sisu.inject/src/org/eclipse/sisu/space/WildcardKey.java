@@ -17,6 +17,8 @@ import java.lang.annotation.RetentionPolicy;
 import javax.inject.Provider;
 import javax.inject.Qualifier;
 
+import org.eclipse.sisu.inject.DeferredClass;
+
 import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
 
@@ -56,6 +58,14 @@ final class WildcardKey
         return Key.get( OBJECT_TYPE_LITERAL, new QualifiedImpl( type, qualifier ) );
     }
 
+    /**
+     * @return Wildcard key for the given deferred implementation type and qualifier
+     */
+    public static Key<Object> get( final DeferredClass<?> type, final Annotation qualifier )
+    {
+        return Key.get( OBJECT_TYPE_LITERAL, new QualifiedImpl( type, qualifier ) );
+    }
+
     // ----------------------------------------------------------------------
     // Implementation types
     // ----------------------------------------------------------------------
@@ -80,7 +90,7 @@ final class WildcardKey
         // Implementation fields
         // ----------------------------------------------------------------------
 
-        private final Class<?> value;
+        private final Object value; // Class or DeferredClass
 
         private final Annotation qualifier;
 
@@ -88,7 +98,7 @@ final class WildcardKey
         // Constructors
         // ----------------------------------------------------------------------
 
-        QualifiedImpl( final Class<?> value, final Annotation qualifier )
+        QualifiedImpl( final Object value, final Annotation qualifier )
         {
             this.value = value;
             this.qualifier = qualifier;
@@ -100,7 +110,7 @@ final class WildcardKey
 
         public Class<?> value()
         {
-            return value;
+            return value instanceof DeferredClass<?> ? ( (DeferredClass<?>) value ).load() : (Class<?>) value;
         }
 
         public Annotation get()
@@ -128,7 +138,7 @@ final class WildcardKey
             }
             if ( rhs instanceof QualifiedImpl )
             {
-                return value == ( (QualifiedImpl) rhs ).value;
+                return value.equals( ( (QualifiedImpl) rhs ).value );
             }
             return false;
         }
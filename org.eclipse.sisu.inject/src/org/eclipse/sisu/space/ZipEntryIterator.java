@@ -11,27 +11,70 @@
 package org.eclipse.sisu.space;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
- * {@link Iterator} that iterates over named entries inside JAR or ZIP resources.
+ * {@link Iterator} that iterates over named entries inside JAR or ZIP resources.<br>
+ * <br>
+ * Local multi-release JARs are seen as they would be by the running release: entries under META-INF/versions/N/ are
+ * listed by their base name and replace the base entry, using the highest N that doesn't exceed the running release.
  */
 final class ZipEntryIterator
     implements Iterator<String>
 {
+    // ----------------------------------------------------------------------
+    // Static initialization
+    // ----------------------------------------------------------------------
+
+    static
+    {
+        int release;
+        try
+        {
+            final String version = System.getProperty( "java.specification.version", "1.6" );
+            release = Integer.parseInt( version.startsWith( "1." ) ? version.substring( 2 ) : version );
+        }
+        catch ( final RuntimeException e )
+        {
+            release = 6;
+        }
+        RUNTIME_RELEASE = release;
+    }
+
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final int RUNTIME_RELEASE;
+
+    private static final String VERSIONS_FOLDER = "META-INF/versions/";
+
+    private static final String MANIFEST_ENTRY = "META-INF/MANIFEST.MF";
+
+    private static final int FIRST_VERSIONED_RELEASE = 9;
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
 
     private String[] entryNames;
 
+    private Map<String, String> versionedEntries = Collections.emptyMap();
+
     private int index;
 
     // ----------------------------------------------------------------------
@@ -80,13 +123,25 @@ final class ZipEntryIterator
     // Implementation methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Returns the actual entry that should be used for the given entry name.
+     * 
+     * @param name The entry name
+     * @return Versioned entry name for multi-release JARs; otherwise the given name
+     */
+    String entryPath( final String name )
+    {
+        final String path = versionedEntries.get( name );
+        return null != path ? path : name;
+    }
+
     /**
      * Returns a string array listing the entries in the given zip file.
      * 
      * @param zipFile The zip file
      * @return Array of entry names
      */
-    private static String[] getEntryNames( final ZipFile zipFile )
+    private String[] getEntryNames( final ZipFile zipFile )
         throws IOException
     {
         try
@@ -97,6 +152,10 @@ final class ZipEntryIterator
             {
                 names[i] = e.nextElement().getName();
             }
+            if ( RUNTIME_RELEASE >= FIRST_VERSIONED_RELEASE && isMultiRelease( zipFile ) )
+            {
+                return applyVersions( names );
+            }
             return names;
         }
         finally
@@ -105,6 +164,93 @@ final class ZipEntryIterator
         }
     }
 
+    /**
+     * Checks the main attributes of the given zip file to see if it is a multi-release JAR.
+     */
+    private static boolean isMultiRelease( final ZipFile zipFile )
+    {
+        final ZipEntry entry = zipFile.getEntry( MANIFEST_ENTRY );
+        if ( null != entry )
+        {
+            try
+            {
+                final InputStream in = zipFile.getInputStream( entry );
+                try
+                {
+                    final String multiRelease = new Manifest( in ).getMainAttributes().getValue( "Multi-Release" );
+                    return "true".equalsIgnoreCase( multiRelease );
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch ( final IOException e ) // NOPMD
+            {
+                // fall-through, treat as normal jar
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hides versioned entries behind their base names, picking the highest version that applies to this release.
+     * 
+     * @param names The raw entry names
+     * @return Array of entry names, as seen by the running release
+     */
+    private String[] applyVersions( final String[] names )
+    {
+        final List<String> baseNames = new ArrayList<String>( names.length );
+        final Map<String, String> versioned = new HashMap<String, String>();
+        final Map<String, Integer> releases = new HashMap<String, Integer>();
+        for ( final String name : names )
+        {
+            if ( !name.startsWith( VERSIONS_FOLDER ) )
+            {
+                baseNames.add( name );
+                continue;
+            }
+            final int slash = name.indexOf( '/', VERSIONS_FOLDER.length() );
+            if ( slash < 0 || slash + 1 == name.length() )
+            {
+                continue;
+            }
+            final int release;
+            try
+            {
+                release = Integer.parseInt( name.substring( VERSIONS_FOLDER.length(), slash ) );
+            }
+            catch ( final NumberFormatException e )
+            {
+                continue;
+            }
+            if ( release >= FIRST_VERSIONED_RELEASE && release <= RUNTIME_RELEASE )
+            {
+                final String baseName = name.substring( slash + 1 );
+                final Integer previous = releases.get( baseName );
+                if ( null == previous || previous.intValue() < release )
+                {
+                    releases.put( baseName, Integer.valueOf( release ) );
+                    versioned.put( baseName, name );
+                }
+            }
+        }
+        if ( !versioned.isEmpty() )
+        {
+            final Set<String> known = new HashSet<String>( baseNames );
+            for ( final String baseName : versioned.keySet() )
+            {
+                if ( known.add( baseName ) )
+                {
+                    baseNames.add( baseName ); // only exists in versioned form
+                }
+            }
+            versionedEntries = versioned;
+        }
+        return baseNames.toArray( new String[baseNames.size()] );
+    }
+
     /**
      * Returns a string array listing the entries in the given zip stream.
      * 
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.space;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Opens streams to "jar:file:...!/entry" resources by keeping the current {@link ZipFile} open between calls.<br>
+ * <br>
+ * Scanning visits many consecutive entries from the same jar; reading them all through one {@link ZipFile} avoids
+ * going through {@link java.net.JarURLConnection} for each entry (which re-opens the jar when caching is disabled).
+ * Other resources are opened using {@link Streams#open(URL)}. Not thread-safe; {@link #close()} when done.
+ */
+final class ZipEntryOpener
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final String JAR_FILE_PREFIX = "jar:file:";
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private String currentPath;
+
+    private ZipFile currentZip;
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Opens an input stream to the given resource; re-uses the open jar when the entry belongs to it.
+     *
+     * @param url The resource URL
+     * @return Input stream
+     */
+    public InputStream open( final URL url )
+        throws IOException
+    {
+        final String spec = url.toString();
+        final int entryIndex = spec.indexOf( "!/" );
+        if ( entryIndex > 0 && spec.startsWith( JAR_FILE_PREFIX ) && spec.indexOf( "!/", entryIndex + 2 ) < 0 )
+        {
+            final ZipFile zip = zipFile( spec.substring( 4, entryIndex ) );
+            if ( null != zip )
+            {
+                final ZipEntry entry = zip.getEntry( spec.substring( entryIndex + 2 ) );
+                if ( null != entry )
+                {
+                    return zip.getInputStream( entry );
+                }
+            }
+        }
+        return Streams.open( url );
+    }
+
+    /**
+     * Closes the currently open jar, if any.
+     */
+    public void close()
+    {
+        if ( null != currentZip )
+        {
+            try
+            {
+                currentZip.close();
+            }
+            catch ( final IOException e ) // NOPMD
+            {
+                // ignore
+            }
+            currentZip = null;
+        }
+        currentPath = null;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Returns the open {@link ZipFile} for the given jar path, switching jars if necessary.
+     *
+     * @param path The jar path
+     * @return Open zip file; {@code null} if it cannot be opened
+     */
+    private ZipFile zipFile( final String path )
+    {
+        if ( !path.equals( currentPath ) )
+        {
+            close();
+            currentPath = path;
+            try
+            {
+                currentZip = new ZipFile( FileEntryIterator.toFile( new URL( path ) ) );
+            }
+            catch ( final Exception e ) // IOException + SecurityException + etc...
+            {
+                currentZip = null; // fall back to URL streams for this jar
+            }
+        }
+        return currentZip;
+    }
+}
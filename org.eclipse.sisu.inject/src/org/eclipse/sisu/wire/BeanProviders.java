@@ -162,6 +162,14 @@ final class BeanProviders
         };
     }
 
+    /**
+     * Provides single qualified beans/providers that can be cached by dynamic proxies.
+     */
+    <V> CachingBeanProvider<V> cachingFirstOf( final Key<V> key )
+    {
+        return new CachingBeanProvider<V>( locator, key, firstOf( key ) );
+    }
+
     /**
      * Provides placeholder beans/providers.
      */
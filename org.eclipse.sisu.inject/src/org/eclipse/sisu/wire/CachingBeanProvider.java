@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2010-present Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   Stuart McCulloch (Sonatype, Inc.) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.sisu.wire;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.sisu.BeanEntry;
+import org.eclipse.sisu.Mediator;
+import org.eclipse.sisu.inject.BeanLocator;
+
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+/**
+ * Provides the first bean for a caching dynamic proxy; the bean is cached in the proxy until the watched beans change.
+ * <p>
+ * Each {@link BeanEntry} only creates its bean once, so the proxy target can only change when beans are added to or
+ * removed from the sequence.
+ */
+final class CachingBeanProvider<V>
+    implements Provider<V>
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    @SuppressWarnings( "rawtypes" )
+    private static final Mediator INVALIDATOR = new Invalidator();
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final Provider<BeanLocator> locator;
+
+    private final Key<V> key;
+
+    private final Provider<V> delegate;
+
+    private volatile boolean isWatching;
+
+    private final AtomicReference<Object> target = new AtomicReference<Object>();
+
+    private int version;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    CachingBeanProvider( final Provider<BeanLocator> locator, final Key<V> key, final Provider<V> delegate )
+    {
+        this.locator = locator;
+        this.key = key;
+        this.delegate = delegate;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    public V get()
+    {
+        watchIfNecessary();
+
+        final int expectedVersion;
+        synchronized ( this )
+        {
+            expectedVersion = version;
+        }
+        final V bean = delegate.get();
+        if ( null != bean )
+        {
+            cache( bean, expectedVersion );
+        }
+        return bean;
+    }
+
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @return Reference to the cached bean, shared with caching proxies
+     */
+    AtomicReference<Object> target()
+    {
+        return target;
+    }
+
+    /**
+     * Clears the cached bean so the next proxy call asks this provider again.
+     */
+    synchronized void invalidate()
+    {
+        version++;
+        target.set( null );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    @SuppressWarnings( "unchecked" )
+    private void watchIfNecessary()
+    {
+        if ( !isWatching )
+        {
+            synchronized ( this )
+            {
+                if ( !isWatching )
+                {
+                    // can't watch while wiring, so start on first use; the locator only holds us weakly
+                    locator.get().watch( key, INVALIDATOR, this );
+                    isWatching = true;
+                }
+            }
+        }
+    }
+
+    private synchronized void cache( final V bean, final int expectedVersion )
+    {
+        if ( expectedVersion == version )
+        {
+            target.set( bean ); // only cache when nothing changed during lookup
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * {@link Mediator} that invalidates the cached bean whenever the watched beans change.
+     */
+    private static final class Invalidator
+        implements Mediator<Annotation, Object, CachingBeanProvider<?>>
+    {
+        public void add( final BeanEntry<Annotation, Object> entry, final CachingBeanProvider<?> watcher )
+        {
+            watcher.invalidate();
+        }
+
+        public void remove( final BeanEntry<Annotation, Object> entry, final CachingBeanProvider<?> watcher )
+        {
+            watcher.invalidate();
+        }
+    }
+}
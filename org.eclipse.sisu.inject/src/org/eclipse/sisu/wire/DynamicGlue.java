@@ -15,6 +15,7 @@ import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Provider;
 
@@ -39,6 +40,16 @@ final class DynamicGlue
 
     private static final String PROVIDER_HANDLE = "__sisu__";
 
+    static final String TARGET_HANDLE = "__sisu__target";
+
+    private static final String TARGET_NAME = Type.getInternalName( AtomicReference.class );
+
+    private static final String TARGET_DESC = Type.getDescriptor( AtomicReference.class );
+
+    // target field is private and transient, so it can't be changed from outside or picked up by serializers
+    private static final int TARGET_MODIFIERS =
+        Modifier.PRIVATE | Modifier.FINAL | Modifier.TRANSIENT | Opcodes.ACC_SYNTHETIC;
+
     private static final String OBJECT_NAME = Type.getInternalName( Object.class );
 
     private static final String OBJECT_DESC = Type.getDescriptor( Object.class );
@@ -78,13 +89,18 @@ final class DynamicGlue
     // ----------------------------------------------------------------------
 
     /**
-     * Generates a dynamic {@link Provider}-based proxy that reflects the given facade.
+     * Generates a dynamic {@link Provider}-based proxy that reflects the given facade.<br>
+     * <br>
+     * Caching proxies also accept an {@link AtomicReference} that can hold the current target; the {@link Provider} is
+     * only used when this reference is {@code null}. Whoever owns the reference is responsible for clearing it when the
+     * target changes.
      * 
      * @param proxyName The proxy name
      * @param facade The expected facade
+     * @param caching {@code true} if the proxy should use a cached target; otherwise {@code false}
      * @return Generated proxy bytes
      */
-    public static byte[] generateProxyClass( final String proxyName, final Class<?> facade )
+    public static byte[] generateProxyClass( final String proxyName, final Class<?> facade, final boolean caching )
     {
         final String facadeName = Type.getInternalName( facade );
 
@@ -104,11 +120,11 @@ final class DynamicGlue
 
         final ClassWriter cw = new ClassWriter( ClassWriter.COMPUTE_MAXS );
         cw.visit( Opcodes.V1_6, Modifier.PUBLIC | Modifier.FINAL, proxyName, null, superName, apiNames );
-        init( cw, superName, proxyName );
+        init( cw, superName, proxyName, caching );
 
         for ( final Method m : getWrappableMethods( facade ) )
         {
-            wrap( cw, proxyName, m );
+            wrap( cw, proxyName, m, caching );
         }
 
         cw.visitEnd();
@@ -121,19 +137,32 @@ final class DynamicGlue
     // ----------------------------------------------------------------------
 
     /**
-     * Generates a constructor that accepts a {@link Provider} and stores it in an internal field.
+     * Generates a constructor that accepts a {@link Provider} and stores it in an internal field.<br>
+     * Caching constructors also accept an {@link AtomicReference} to the cached target.
      */
-    private static void init( final ClassWriter cw, final String superName, final String proxyName )
+    private static void init( final ClassWriter cw, final String superName, final String proxyName,
+                              final boolean caching )
     {
         cw.visitField( Modifier.PRIVATE | Modifier.FINAL, PROVIDER_HANDLE, PROVIDER_DESC, null, null ).visitEnd();
+        if ( caching )
+        {
+            cw.visitField( TARGET_MODIFIERS, TARGET_HANDLE, TARGET_DESC, null, null ).visitEnd();
+        }
 
-        final MethodVisitor v = cw.visitMethod( Modifier.PUBLIC, "<init>", '(' + PROVIDER_DESC + ")V", null, null );
+        final String descriptor = '(' + PROVIDER_DESC + ( caching ? TARGET_DESC : "" ) + ")V";
+        final MethodVisitor v = cw.visitMethod( Modifier.PUBLIC, "<init>", descriptor, null, null );
 
         v.visitCode();
         v.visitVarInsn( Opcodes.ALOAD, 0 );
         v.visitInsn( Opcodes.DUP );
         v.visitVarInsn( Opcodes.ALOAD, 1 );
         v.visitFieldInsn( Opcodes.PUTFIELD, proxyName, PROVIDER_HANDLE, PROVIDER_DESC );
+        if ( caching )
+        {
+            v.visitInsn( Opcodes.DUP );
+            v.visitVarInsn( Opcodes.ALOAD, 2 );
+            v.visitFieldInsn( Opcodes.PUTFIELD, proxyName, TARGET_HANDLE, TARGET_DESC );
+        }
         v.visitMethodInsn( Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false );
         v.visitInsn( Opcodes.RETURN );
         v.visitMaxs( 0, 0 );
@@ -141,14 +170,16 @@ final class DynamicGlue
     }
 
     /**
-     * Generates a wrapper that dereferences the stored {@link Provider} and invokes the given method.
+     * Generates a wrapper that dereferences the stored {@link Provider} and invokes the given method.<br>
+     * Caching wrappers use the cached target when it is set and only dereference the {@link Provider} when it isn't.
      */
-    private static void wrap( final ClassWriter cw, final String proxyName, final Method method )
+    private static void wrap( final ClassWriter cw, final String proxyName, final Method method, final boolean caching )
     {
         final String methodName = method.getName();
         final String descriptor = Type.getMethodDescriptor( method );
         final String[] exceptions = getInternalNames( method.getExceptionTypes() );
         final Label handleNullTarget = new Label();
+        final Label handleCachedTarget = new Label();
 
         // simple delegating proxy, so don't need synchronization on wrapper method
         final int modifiers = method.getModifiers() & ~( Modifier.ABSTRACT | Modifier.NATIVE | Modifier.SYNCHRONIZED );
@@ -164,6 +195,17 @@ final class DynamicGlue
         // delegate all non-Object methods as well as 'toString'
         if ( !isObjectMethod || "toString".equals( methodName ) )
         {
+            if ( caching )
+            {
+                // use cached target if available
+                v.visitVarInsn( Opcodes.ALOAD, 0 );
+                v.visitFieldInsn( Opcodes.GETFIELD, proxyName, TARGET_HANDLE, TARGET_DESC );
+                v.visitMethodInsn( Opcodes.INVOKEVIRTUAL, TARGET_NAME, "get", "()" + OBJECT_DESC, false );
+                v.visitInsn( Opcodes.DUP );
+                v.visitJumpInsn( Opcodes.IFNONNULL, handleCachedTarget );
+                v.visitInsn( Opcodes.POP );
+            }
+
             // dereference and check target
             v.visitVarInsn( Opcodes.ALOAD, 0 );
             v.visitFieldInsn( Opcodes.GETFIELD, proxyName, PROVIDER_HANDLE, PROVIDER_DESC );
@@ -172,6 +214,8 @@ final class DynamicGlue
             v.visitInsn( Opcodes.DUP );
             v.visitJumpInsn( Opcodes.IFNULL, handleNullTarget );
 
+            v.visitLabel( handleCachedTarget );
+
             final boolean isInterface = declaringClazz.isInterface();
             if ( !isInterface && Object.class != declaringClazz )
             {
@@ -13,10 +13,11 @@ package org.eclipse.sisu.wire;
 import java.lang.reflect.InvocationTargetException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Provider;
 
+import org.eclipse.sisu.inject.MildConcurrentLongValues;
 import org.eclipse.sisu.inject.Weak;
 
 import com.google.inject.ProvisionException;
@@ -40,11 +41,13 @@ final class GlueLoader
 
     private static final String DYNAMIC = "dyn";
 
+    private static final String CACHING = "dyc";
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
 
-    private static final ConcurrentMap<Integer, GlueLoader> cachedGlue = Weak.concurrentValues();
+    private static final MildConcurrentLongValues<GlueLoader> cachedGlue = Weak.concurrentLongValues();
 
     // ----------------------------------------------------------------------
     // Constructors
@@ -76,7 +79,37 @@ final class GlueLoader
     {
         try
         {
-            return (T) dynamicGlue( type.getRawType() ).getConstructor( Provider.class ).newInstance( provider );
+            final Class<?> proxyClazz = dynamicGlue( type.getRawType(), DYNAMIC );
+            return (T) proxyClazz.getConstructor( Provider.class ).newInstance( provider );
+        }
+        catch ( final Exception e )
+        {
+            final Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            throw new ProvisionException( "Error proxying: " + type, cause );
+        }
+        catch ( final LinkageError e )
+        {
+            throw new ProvisionException( "Error proxying: " + type, e );
+        }
+    }
+
+    /**
+     * Generates a new dynamic proxy instance for the given facade type and caching provider.<br>
+     * <br>
+     * The proxy keeps using the last bean supplied by the provider until the provider invalidates it.
+     * 
+     * @param type The facade type
+     * @param provider The caching provider
+     * @return Generated proxy instance
+     */
+    @SuppressWarnings( "unchecked" )
+    public static <T> T cachingGlue( final TypeLiteral<T> type, final CachingBeanProvider<T> provider )
+    {
+        try
+        {
+            final Class<?> proxyClazz = dynamicGlue( type.getRawType(), CACHING );
+            return (T) proxyClazz.getConstructor( Provider.class, AtomicReference.class ) //
+                .newInstance( provider, provider.target() );
         }
         catch ( final Exception e )
         {
@@ -110,10 +143,11 @@ final class GlueLoader
     protected Class<?> findClass( final String name )
         throws ClassNotFoundException
     {
-        if ( name.endsWith( GLUE_SUFFIX + DYNAMIC ) )
+        final boolean caching = name.endsWith( GLUE_SUFFIX + CACHING );
+        if ( caching || name.endsWith( GLUE_SUFFIX + DYNAMIC ) )
         {
             final Class<?> facade = loadClass( unwrap( name ) );
-            final byte[] code = DynamicGlue.generateProxyClass( name.replace( '.', '/' ), facade );
+            final byte[] code = DynamicGlue.generateProxyClass( name.replace( '.', '/' ), facade, caching );
             return defineClass( name, code, 0, code.length );
         }
         throw new ClassNotFoundException( name );
@@ -124,12 +158,12 @@ final class GlueLoader
     // ----------------------------------------------------------------------
 
     /**
-     * Loads the dynamic proxy class for the given facade class.
+     * Loads the dynamic proxy class of the given kind for the given facade class.
      */
-    private static Class<?> dynamicGlue( final Class<?> facade )
+    private static Class<?> dynamicGlue( final Class<?> facade, final String kind )
         throws ClassNotFoundException
     {
-        return glue( facade.getClassLoader() ).loadClass( wrap( facade.getName(), DYNAMIC ) );
+        return glue( facade.getClassLoader() ).loadClass( wrap( facade.getName(), kind ) );
     }
 
     /**
@@ -159,7 +193,6 @@ final class GlueLoader
     /**
      * Returns the {@link GlueLoader} associated with the given {@link ClassLoader}.
      */
-    @SuppressWarnings( "boxing" )
     private static GlueLoader glue( final ClassLoader parent )
     {
         int id = System.identityHashCode( parent );
@@ -209,8 +209,8 @@ public final class LocatorWiring
         }
         else if ( qualifier instanceof Dynamic )
         {
-            final Provider<T> delegate = beanProviders.firstOf( Key.get( key.getTypeLiteral() ) );
-            binder.bind( key ).toInstance( GlueLoader.dynamicGlue( key.getTypeLiteral(), delegate ) );
+            final CachingBeanProvider<T> delegate = beanProviders.cachingFirstOf( Key.get( key.getTypeLiteral() ) );
+            binder.bind( key ).toInstance( GlueLoader.cachingGlue( key.getTypeLiteral(), delegate ) );
         }
         else
         {